@@ -0,0 +1,118 @@
+package voot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.Assert;
+import voot.valueobject.Group;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Immutable snapshot of all groups that is rebuilt in the background every refreshIntervalMillis and swapped in
+ * atomically, so that readers never wait for - or repeat - the crawl of all groups. A failing loader or an incomplete
+ * result is never swapped in: it does not replace the current snapshot and, when there is none yet, readers keep
+ * querying the providers live.
+ */
+public class AllGroupsSnapshot implements PublicMetrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AllGroupsSnapshot.class);
+
+  private final Supplier<ExternalGroupsService.Result<List<Group>>> loader;
+  private final long refreshIntervalMillis;
+  private final AtomicLong refreshFailures = new AtomicLong();
+  private ScheduledExecutorService scheduler;
+
+  private volatile Snapshot snapshot;
+  private volatile long refreshDurationMillis;
+
+  public AllGroupsSnapshot(Supplier<ExternalGroupsService.Result<List<Group>>> loader, long refreshIntervalMillis) {
+    Assert.isTrue(refreshIntervalMillis > 0, "Refresh interval must be positive");
+    this.loader = loader;
+    this.refreshIntervalMillis = refreshIntervalMillis;
+  }
+
+  public synchronized void start() {
+    if (scheduler == null) {
+      scheduler = newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "all-groups-snapshot");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public synchronized void shutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * @return the current snapshot or the empty Optional when the first refresh has not succeeded yet
+   */
+  public Optional<ExternalGroupsService.Result<List<Group>>> current() {
+    return Optional.ofNullable(snapshot).map(current -> current.result);
+  }
+
+  void refresh() {
+    long start = System.nanoTime();
+    try {
+      ExternalGroupsService.Result<List<Group>> result = loader.get();
+      swap(new Snapshot(result.map(Collections::unmodifiableList), System.currentTimeMillis()));
+    } catch (Throwable t) {
+      refreshFailures.incrementAndGet();
+      LOG.error("Error in refreshing the snapshot of all groups", t);
+      //we don't rethrow as this would stop the subsequent scheduled refreshes
+    } finally {
+      refreshDurationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+  }
+
+  private synchronized void swap(Snapshot next) {
+    Snapshot current = snapshot;
+    if (!next.result.isComplete()) {
+      refreshFailures.incrementAndGet();
+      if (current == null) {
+        LOG.warn("Not installing a first snapshot of all groups, providers {} did not return", next.result.omittedProviders);
+      } else {
+        LOG.warn("Keeping the snapshot of all groups of {} ms ago, providers {} did not return", next.createdMillis - current.createdMillis, next.result.omittedProviders);
+      }
+      return;
+    }
+    LOG.debug("Swapping in a snapshot of {} groups", next.result.value.size());
+    snapshot = next;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    Snapshot current = snapshot;
+    return Arrays.asList(
+      new Metric<>("allGroups.snapshot.ageMillis", current == null ? -1L : System.currentTimeMillis() - current.createdMillis),
+      new Metric<>("allGroups.snapshot.size", current == null ? 0 : current.result.value.size()),
+      new Metric<>("allGroups.snapshot.refreshDurationMillis", refreshDurationMillis),
+      new Metric<>("allGroups.snapshot.refreshFailures", refreshFailures.get()));
+  }
+
+  private static class Snapshot {
+    final ExternalGroupsService.Result<List<Group>> result;
+    final long createdMillis;
+
+    Snapshot(ExternalGroupsService.Result<List<Group>> result, long createdMillis) {
+      this.result = result;
+      this.createdMillis = createdMillis;
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package voot;
+
+import voot.provider.AsyncProvider;
+
+import java.util.concurrent.CompletionStage;
+
+public interface AsyncProviderCallback<T> {
+
+  CompletionStage<T> execute(AsyncProvider provider);
+
+}
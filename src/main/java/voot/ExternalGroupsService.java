@@ -2,87 +2,416 @@ package voot;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.util.Assert;
+import voot.provider.AsyncProvider;
+import voot.provider.CallContext;
 import voot.provider.Provider;
+import voot.provider.ProviderExecutor;
+import voot.util.SingleFlight;
 import voot.valueobject.Group;
 import voot.valueobject.Member;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
 
-public class ExternalGroupsService {
+public class ExternalGroupsService implements PublicMetrics {
 
   private static final Logger LOG = LoggerFactory.getLogger(ExternalGroupsService.class);
 
+  private static final long DEFAULT_ALL_GROUPS_REBUILD_DEADLINE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
   private final List<Provider> providers;
-  private final ForkJoinPool forkJoinPool;
+  private final ProviderIndex providerIndex;
+  private final ProviderExecutor executor;
+  private final long deadlineMillis;
+  private final long allGroupsRebuildDeadlineMillis;
+  private final MembershipCache membershipCache;
+  private final Optional<AllGroupsSnapshot> allGroupsSnapshot;
+  private final PeerClient peerClient;
+
+  /*
+   * Concurrent identical lookups - e.g. during a login storm - share one fan-out to the providers
+   */
+  private final SingleFlight<List<String>, Result<List<Group>>> myGroupsFlight = new SingleFlight<>();
+  private final SingleFlight<List<String>, Result<List<Group>>> myExternalGroupsFlight = new SingleFlight<>();
+  /*
+   * Separate from our own lookups: while the nodes disagree about the ring - e.g. during a rolling deploy - two nodes
+   * may each forward a uid to the other, sharing a flight they would wait for each other until the timeout
+   */
+  private final SingleFlight<List<String>, Result<List<Group>>> asOwnerFlight = new SingleFlight<>();
+  private final SingleFlight<String, Result<List<Member>>> membersFlight = new SingleFlight<>();
+  private final SingleFlight<Boolean, Result<List<Group>>> allGroupsFlight = new SingleFlight<>();
 
+  public ExternalGroupsService(List<Provider> providers, ProviderExecutor executor, long deadlineMillis) {
+    this(providers, executor, deadlineMillis, MembershipCache.disabled());
+  }
+
+  public ExternalGroupsService(List<Provider> providers, ProviderExecutor executor, long deadlineMillis, MembershipCache membershipCache) {
+    this(providers, executor, deadlineMillis, membershipCache, 0L);
+  }
+
+  /**
+   * @param allGroupsRefreshMillis when positive all groups are served from a snapshot refreshed at this interval
+   */
+  public ExternalGroupsService(List<Provider> providers, ProviderExecutor executor, long deadlineMillis, MembershipCache membershipCache,
+                               long allGroupsRefreshMillis) {
+    this(providers, executor, deadlineMillis, membershipCache, allGroupsRefreshMillis, PeerClient.disabled());
+  }
+
+  /**
+   * @param peerClient fetches the memberships of uids owned by another node from that node
+   */
+  public ExternalGroupsService(List<Provider> providers, ProviderExecutor executor, long deadlineMillis, MembershipCache membershipCache,
+                               long allGroupsRefreshMillis, PeerClient peerClient) {
+    this(providers, executor, deadlineMillis, membershipCache, allGroupsRefreshMillis, DEFAULT_ALL_GROUPS_REBUILD_DEADLINE_MILLIS, peerClient);
+  }
 
-  public ExternalGroupsService(List<Provider> providers) {
+  /**
+   * @param allGroupsRebuildDeadlineMillis the deadline of the background rebuild of all groups, which unlike the
+   *                                       interactive deadlineMillis has to wait for the slowest provider
+   */
+  public ExternalGroupsService(List<Provider> providers, ProviderExecutor executor, long deadlineMillis, MembershipCache membershipCache,
+                               long allGroupsRefreshMillis, long allGroupsRebuildDeadlineMillis, PeerClient peerClient) {
     Assert.isTrue(providers.size() > 0, "No clients configured");
+    Assert.isTrue(deadlineMillis > 0, "Deadline must be positive");
+    Assert.isTrue(allGroupsRebuildDeadlineMillis > 0, "Rebuild deadline must be positive");
     this.providers = providers;
-    this.forkJoinPool = new ForkJoinPool(providers.size() * 20); // we're I/O bound.
+    this.providerIndex = new ProviderIndex(providers);
+    this.executor = executor;
+    this.deadlineMillis = deadlineMillis;
+    this.allGroupsRebuildDeadlineMillis = allGroupsRebuildDeadlineMillis;
+    this.membershipCache = membershipCache;
+    this.allGroupsSnapshot = allGroupsRefreshMillis > 0 ?
+      Optional.of(new AllGroupsSnapshot(this::buildAllGroupsSnapshot, allGroupsRefreshMillis)) : Optional.empty();
+    this.allGroupsSnapshot.ifPresent(AllGroupsSnapshot::start);
+    this.peerClient = peerClient;
   }
 
-  public List<Group> getMyGroups(String uid, String schacHomeOrganization) {
-    return this.execute(
-      provider -> provider.shouldBeQueriedForMemberships(schacHomeOrganization),
-      provider -> provider.getGroupMemberships(uid),
-      Collections::<Group>emptyList).flatMap(Collection::stream).collect(toList());
+  public void shutdown() {
+    allGroupsSnapshot.ifPresent(AllGroupsSnapshot::shutdown);
+    membershipCache.close();
+  }
+
+  /*
+   * The owner of the uid gets at most half of the deadline, the rest is left for querying the providers ourselves
+   * when it does not answer in time
+   */
+  public Result<List<Group>> getMyGroups(String uid, String schacHomeOrganization) {
+    return myGroupsFlight.execute(Arrays.asList(uid, schacHomeOrganization), () -> {
+      CallContext request = new CallContext(deadlineMillis);
+      return peerClient.getMyGroups(uid, schacHomeOrganization, false, deadlineMillis / 2)
+        .orElseGet(() -> loadMyGroups(uid, schacHomeOrganization, request.remainingMillis()));
+    });
+  }
+
+  public Result<List<Group>> getMyExternalGroups(String uid, String schacHomeOrganization) {
+    return myExternalGroupsFlight.execute(Arrays.asList(uid, schacHomeOrganization), () -> {
+      CallContext request = new CallContext(deadlineMillis);
+      return peerClient.getMyGroups(uid, schacHomeOrganization, true, deadlineMillis / 2)
+        .orElseGet(() -> loadMyExternalGroups(uid, schacHomeOrganization, request.remainingMillis()));
+    });
   }
 
-  public List<Group> getMyExternalGroups(String uid, String schacHomeOrganization) {
+  /**
+   * The memberships as known by this node, for peers that regard this node as the owner of the uid
+   *
+   * @param peerDeadlineMillis the time the peer can wait for the answer, capped by our own deadline
+   */
+  public Result<List<Group>> getMyGroupsAsOwner(String uid, String schacHomeOrganization, boolean external, long peerDeadlineMillis) {
+    long budgetMillis = Math.min(deadlineMillis, peerDeadlineMillis);
+    return asOwnerFlight.execute(Arrays.asList(uid, schacHomeOrganization, String.valueOf(external)), () -> external ?
+      loadMyExternalGroups(uid, schacHomeOrganization, budgetMillis) :
+      loadMyGroups(uid, schacHomeOrganization, budgetMillis));
+  }
+
+  private Result<List<Group>> loadMyGroups(String uid, String schacHomeOrganization, long budgetMillis) {
+    List<Provider> targets = providerIndex.forMemberships(schacHomeOrganization);
     return this.execute(
-      provider -> provider.isExternalGroupProvider() && provider.shouldBeQueriedForMemberships(schacHomeOrganization),
-      provider -> provider.getGroupMemberships(uid),
-      Collections::<Group>emptyList).flatMap(Collection::stream).collect(toList());
+      budgetMillis,
+      targets,
+      provider -> membershipCache.get(provider, uid, () -> provider.getGroupMemberships(uid)),
+      provider -> membershipCache.getAsync(provider, uid, () -> provider.getGroupMembershipsAsync(uid)),
+      Collections::<Group>emptyList,
+      staleMemberships(uid),
+      results -> false).map(results -> results.flatMap(Collection::stream).collect(toList()))
+      .withMaxAgeMillis(membershipCache.getMaxAgeMillis(targets, uid));
   }
 
-  public List<Member> getMembers(String groupId) {
+  private Result<List<Group>> loadMyExternalGroups(String uid, String schacHomeOrganization, long budgetMillis) {
+    List<Provider> targets = providerIndex.forExternalMemberships(schacHomeOrganization);
     return this.execute(
-      provider -> provider.shouldBeQueriedForMembers(groupId),
+      budgetMillis,
+      targets,
+      provider -> membershipCache.get(provider, uid, () -> provider.getGroupMemberships(uid)),
+      provider -> membershipCache.getAsync(provider, uid, () -> provider.getGroupMembershipsAsync(uid)),
+      Collections::<Group>emptyList,
+      staleMemberships(uid),
+      results -> false).map(results -> results.flatMap(Collection::stream).collect(toList()))
+      .withMaxAgeMillis(membershipCache.getMaxAgeMillis(targets, uid));
+  }
+
+  public Result<List<Member>> getMembers(String groupId) {
+    return membersFlight.execute(groupId, () -> this.execute(
+      filter(provider -> provider.shouldBeQueriedForMembers(groupId)),
       provider -> provider.getMembers(groupId),
-      Collections::<Member>emptyList).flatMap(Collection::stream).collect(toList());
+      Collections::<Member>emptyList).map(results -> results.flatMap(Collection::stream).collect(toList())));
   }
 
-  public Optional<Group> getMyGroupById(String uid, String groupId) {
-    List<Optional<Group>> groups = this.execute(
-      provider -> provider.shouldBeQueriedForGroup(groupId),
+  public Result<Optional<Group>> getMyGroupById(String uid, String groupId) {
+    return this.execute(
+      deadlineMillis,
+      providerIndex.forGroup(groupId),
       provider -> provider.getGroupMembership(uid, groupId),
-      Optional::<Group>empty).filter(Optional::isPresent).collect(toList());
-    return groups.isEmpty() ? Optional.empty() : groups.get(0);
+      provider -> provider.getGroupMembershipAsync(uid, groupId),
+      Optional::<Group>empty,
+      provider -> Optional.empty(),
+      Optional::isPresent).map(results -> results.filter(Optional::isPresent).findFirst().orElse(Optional.empty()));
+  }
+
+  public Result<List<Group>> getAllGroups() {
+    return allGroupsSnapshot.flatMap(AllGroupsSnapshot::current).orElseGet(this::loadAllGroups);
   }
 
-  public List<Group> getAllGroups() {
+  /*
+   * A provider that fails must not replace its part of the snapshot with nothing
+   */
+  private Result<List<Group>> buildAllGroupsSnapshot() {
     return this.execute(
-      provider -> !provider.isExternalGroupProvider(),
+      allGroupsRebuildDeadlineMillis,
+      filter(provider -> !provider.isExternalGroupProvider()),
       Provider::getAllGroups,
-      Collections::<Group>emptyList).flatMap(Collection::stream).collect(toList());
+      null,
+      () -> {
+        throw new IllegalStateException("Not all providers returned their groups");
+      },
+      provider -> Optional.empty(),
+      result -> false).map(results -> results.flatMap(Collection::stream).collect(toList()));
   }
 
-  private <T> Stream<T> execute(Predicate<Provider> providerFilter, ProviderCallback<T> callback, ExceptionProviderCallback<T> exceptionCallback) {
+  private Result<List<Group>> loadAllGroups() {
+    return allGroupsFlight.execute(Boolean.TRUE, () -> this.execute(
+      filter(provider -> !provider.isExternalGroupProvider()),
+      Provider::getAllGroups,
+      Collections::<Group>emptyList).map(results -> results.flatMap(Collection::stream).collect(toList())));
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = providers.stream()
+      .filter(provider -> provider instanceof PublicMetrics)
+      .flatMap(provider -> ((PublicMetrics) provider).metrics().stream())
+      .collect(toList());
+    metrics.addAll(membershipCache.metrics());
+    allGroupsSnapshot.ifPresent(snapshot -> metrics.addAll(snapshot.metrics()));
+    metrics.addAll(peerClient.metrics());
+    metrics.add(new Metric<>("externalGroups.myGroups.coalesced", myGroupsFlight.getCoalesced()));
+    metrics.add(new Metric<>("externalGroups.myExternalGroups.coalesced", myExternalGroupsFlight.getCoalesced()));
+    metrics.add(new Metric<>("externalGroups.asOwner.coalesced", asOwnerFlight.getCoalesced()));
+    metrics.add(new Metric<>("externalGroups.members.coalesced", membersFlight.getCoalesced()));
+    metrics.add(new Metric<>("externalGroups.allGroups.coalesced", allGroupsFlight.getCoalesced()));
+    return metrics;
+  }
+
+  /*
+   * The last known good memberships are served when a provider fails, while they are refreshed in the background
+   */
+  private StaleProviderCallback<List<Group>> staleMemberships(String uid) {
+    return provider -> membershipCache.getStale(provider, uid).map(groups -> {
+      membershipCache.refresh(provider, uid, () -> provider.getGroupMemberships(uid), executor);
+      return groups;
+    });
+  }
+
+  private List<Provider> filter(Predicate<Provider> providerFilter) {
+    return providers.stream().filter(providerFilter).collect(toList());
+  }
+
+  private <T> Result<Stream<T>> execute(List<Provider> targets, ProviderCallback<T> callback, ExceptionProviderCallback<T> exceptionCallback) {
+    return execute(deadlineMillis, targets, callback, null, exceptionCallback, provider -> Optional.empty(), result -> false);
+  }
+
+  /*
+   * Every target Provider is called in its own future. Non-blocking Providers are called directly when an asyncCallback is
+   * given, all others on the executor. We wait until all of them have returned, one of them has returned a sufficient
+   * result or the deadline has passed and return whatever has arrived by then. The calls still in flight are
+   * cancelled. When we did not stop at a sufficient result those Providers are reported as omitted - unless the
+   * staleCallback has a result for them. Stale results are also used for Providers that fail and are reported as such.
+   */
+  private <T> Result<Stream<T>> execute(long budgetMillis, List<Provider> targets, ProviderCallback<T> callback,
+                                        AsyncProviderCallback<T> asyncCallback, ExceptionProviderCallback<T> exceptionCallback,
+                                        StaleProviderCallback<T> staleCallback, Predicate<T> sufficient) {
+    CallContext callContext = new CallContext(budgetMillis);
+    Map<Provider, CallContext> callContexts = new LinkedHashMap<>();
+    Map<Provider, CompletableFuture<T>> futures = new LinkedHashMap<>();
+    Set<String> staleProviders = ConcurrentHashMap.newKeySet();
+    CompletableFuture<Boolean> done = new CompletableFuture<>();
+    targets.forEach(provider -> {
+      CallContext providerContext = callContext.fork();
+      Supplier<T> fallback = () -> this.fallback(provider, providerContext, exceptionCallback, staleCallback, staleProviders);
+      CompletableFuture<T> future = asyncCallback != null && isNonBlocking(provider) ?
+        providerContext.call(() -> this.invokeAsync((AsyncProvider) provider, asyncCallback, fallback)) :
+        CompletableFuture.supplyAsync(() -> providerContext.call(() -> this.invoke(provider, callback, fallback)), executor);
+      future.thenAccept(result -> {
+        if (sufficient.test(result)) {
+          done.complete(true);
+        }
+      });
+      callContexts.put(provider, providerContext);
+      futures.put(provider, future);
+    });
+    CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[futures.size()])).whenComplete((result, failure) -> done.complete(false));
+
+    boolean shortCircuited = false;
     try {
-      return forkJoinPool.submit(() -> providers.parallelStream()
-        .filter(providerFilter)
-        .map(provider -> {
-          try {
-            return callback.execute(provider);
-          } catch (RuntimeException e) {
-            LOG.warn("Provider {} threw exception: {} ", provider, e);
-            return exceptionCallback.result();
-          }
-        })).get();
+      shortCircuited = done.get(callContext.remainingMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      LOG.warn("Deadline of {} ms passed before all providers returned", budgetMillis);
     } catch (InterruptedException | ExecutionException e) {
       throw new RuntimeException("Unable to schedule querying of external group providers.", e);
     }
+
+    List<T> results = new ArrayList<>();
+    List<String> omittedProviders = new ArrayList<>();
+    for (Map.Entry<Provider, CompletableFuture<T>> entry : futures.entrySet()) {
+      Provider provider = entry.getKey();
+      CompletableFuture<T> future = entry.getValue();
+      if (future.isDone() && !future.isCancelled()) {
+        results.add(future.join());
+      } else {
+        //marked before the future is cancelled, the Provider decorators must know why it was aborted
+        if (shortCircuited) {
+          callContexts.get(provider).cancel();
+        } else {
+          callContexts.get(provider).timeOut();
+        }
+        future.cancel(true);
+        if (!shortCircuited) {
+          Optional<T> stale = staleCallback.result(provider);
+          if (stale.isPresent()) {
+            results.add(stale.get());
+            staleProviders.add(provider.getConfiguration().name);
+          } else {
+            omittedProviders.add(provider.getConfiguration().name);
+          }
+        }
+      }
+    }
+    return new Result<>(results.stream(), omittedProviders, new ArrayList<>(staleProviders));
+  }
+
+  private <T> T fallback(Provider provider, CallContext providerContext, ExceptionProviderCallback<T> exceptionCallback,
+                         StaleProviderCallback<T> staleCallback, Set<String> staleProviders) {
+    if (!providerContext.isCancelled()) {
+      Optional<T> stale = staleCallback.result(provider);
+      if (stale.isPresent()) {
+        staleProviders.add(provider.getConfiguration().name);
+        return stale.get();
+      }
+    }
+    return exceptionCallback.result();
+  }
+
+  private <T> T invoke(Provider provider, ProviderCallback<T> callback, Supplier<T> fallback) {
+    try {
+      return callback.execute(provider);
+    } catch (RuntimeException e) {
+      if (CallContext.current().map(CallContext::isCancelled).orElse(false)) {
+        LOG.debug("Cancelled call to provider {} aborted with: {} ", provider, e);
+      } else {
+        LOG.warn("Provider {} threw exception: {} ", provider, e);
+      }
+      return fallback.get();
+    }
+  }
+
+  private <T> CompletableFuture<T> invokeAsync(AsyncProvider provider, AsyncProviderCallback<T> callback, Supplier<T> fallback) {
+    CompletionStage<T> stage;
+    try {
+      stage = callback.execute(provider);
+    } catch (RuntimeException e) {
+      LOG.warn("Provider {} threw exception: {} ", provider, e);
+      return CompletableFuture.completedFuture(fallback.get());
+    }
+    return stage.toCompletableFuture().exceptionally(e -> {
+      LOG.warn("Provider {} threw exception: {} ", provider, e instanceof CompletionException ? e.getCause() : e);
+      return fallback.get();
+    });
+  }
+
+  private boolean isNonBlocking(Provider provider) {
+    return provider instanceof AsyncProvider && ((AsyncProvider) provider).isNonBlocking();
+  }
+
+  /**
+   * The combined outcome of querying the Providers
+   */
+  public static class Result<T> {
+
+    public final T value;
+    public final List<String> omittedProviders;
+    public final List<String> staleProviders;
+    /*
+     * How long the value may be reused, 0 when it must be revalidated
+     */
+    public final long maxAgeMillis;
+
+    public Result(T value, List<String> omittedProviders, List<String> staleProviders, long maxAgeMillis) {
+      this.value = value;
+      this.omittedProviders = omittedProviders;
+      this.staleProviders = staleProviders;
+      this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public Result(T value, List<String> omittedProviders, List<String> staleProviders) {
+      this(value, omittedProviders, staleProviders, 0L);
+    }
+
+    public Result(T value, List<String> omittedProviders) {
+      this(value, omittedProviders, Collections.emptyList());
+    }
+
+    public Result(T value) {
+      this(value, Collections.emptyList());
+    }
+
+    public <R> Result<R> map(Function<T, R> mapper) {
+      return new Result<>(mapper.apply(value), omittedProviders, staleProviders, maxAgeMillis);
+    }
+
+    public Result<T> withMaxAgeMillis(long maxAgeMillis) {
+      return new Result<>(value, omittedProviders, staleProviders, maxAgeMillis);
+    }
+
+    public boolean isComplete() {
+      return omittedProviders.isEmpty();
+    }
+
+    public boolean isStale() {
+      return !staleProviders.isEmpty();
+    }
+
   }
 
 }
@@ -0,0 +1,347 @@
+package voot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import voot.provider.Provider;
+import voot.valueobject.Group;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The group memberships of a user per Provider. Entries are fresh for the TTL configured for the Provider and are kept
+ * for another staleGraceMillis as the last known good result, to be served when the Provider fails. The least recently
+ * used entries are evicted once the estimated size of all entries exceeds maxWeightBytes.
+ *
+ * With a {@link MembershipFileStore} every entry is also written to the file, and entries that are no longer on the heap
+ * - evicted or from before a restart - are read back from it.
+ */
+public class MembershipCache implements PublicMetrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MembershipCache.class);
+
+  private final long maxWeightBytes;
+  private final Map<String, Long> ttlMillisByProvider;
+  private final long staleGraceMillis;
+  private final Optional<MembershipFileStore> fileStore;
+
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+  private long weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long staleServed;
+  private long fileHits;
+
+  public MembershipCache(long maxWeightBytes, Map<String, Long> ttlMillisByProvider, long staleGraceMillis) {
+    this(maxWeightBytes, ttlMillisByProvider, staleGraceMillis, Optional.empty());
+  }
+
+  public MembershipCache(long maxWeightBytes, Map<String, Long> ttlMillisByProvider, long staleGraceMillis,
+                         Optional<MembershipFileStore> fileStore) {
+    this.maxWeightBytes = maxWeightBytes;
+    this.ttlMillisByProvider = ttlMillisByProvider;
+    this.staleGraceMillis = staleGraceMillis;
+    this.fileStore = fileStore;
+  }
+
+  public static MembershipCache disabled() {
+    return new MembershipCache(0L, Collections.emptyMap(), 0L);
+  }
+
+  public boolean isCached(Provider provider) {
+    return maxWeightBytes > 0 && (ttlMillis(provider) > 0 || staleGraceMillis > 0);
+  }
+
+  /**
+   * @return the time left before the first of the entries of the uid at the Providers is no longer fresh, 0 when one
+   * of them is not cached or not fresh - e.g. it was fetched live or is served stale
+   */
+  public long getMaxAgeMillis(Collection<Provider> providers, String uid) {
+    return providers.stream().mapToLong(provider -> freshForMillis(provider, uid)).min().orElse(0L);
+  }
+
+  private long freshForMillis(Provider provider, String uid) {
+    if (!isCached(provider)) {
+      return 0L;
+    }
+    Key key = new Key(provider, uid);
+    Optional<Entry> entry = getEntry(key);
+    if (!entry.isPresent()) {
+      entry = fromFile(key);
+    }
+    return entry.map(e -> Math.max(0L, TimeUnit.NANOSECONDS.toMillis(e.freshUntilNanos - System.nanoTime()))).orElse(0L);
+  }
+
+  /**
+   * @return the last known good memberships if they are still within the grace window
+   */
+  public Optional<List<Group>> getStale(Provider provider, String uid) {
+    Key key = new Key(provider, uid);
+    Optional<Entry> entry = getEntry(key);
+    if (!entry.isPresent()) {
+      entry = fromFile(key);
+    }
+    if (!entry.isPresent() || entry.get().staleUntilNanos - System.nanoTime() <= 0) {
+      return Optional.empty();
+    }
+    synchronized (this) {
+      staleServed++;
+    }
+    return Optional.of(entry.get().groups);
+  }
+
+  /**
+   * Reloads the memberships in the background, unless a refresh for the same provider and uid is already running
+   */
+  public void refresh(Provider provider, String uid, Supplier<List<Group>> loader, Executor executor) {
+    Key key = new Key(provider, uid);
+    if (!isCached(provider) || !refreshing.add(key)) {
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          put(key, loader.get());
+        } catch (RuntimeException e) {
+          LOG.debug("Refresh of memberships of {} at {} failed: {}", uid, provider, e);
+        } finally {
+          refreshing.remove(key);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(key);
+    }
+  }
+
+  public List<Group> get(Provider provider, String uid, Supplier<List<Group>> loader) {
+    if (!isCached(provider)) {
+      return loader.get();
+    }
+    Optional<List<Group>> cached = get(new Key(provider, uid));
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    List<Group> groups = loader.get();
+    put(new Key(provider, uid), groups);
+    return groups;
+  }
+
+  public CompletionStage<List<Group>> getAsync(Provider provider, String uid, Supplier<CompletionStage<List<Group>>> loader) {
+    if (!isCached(provider)) {
+      return loader.get();
+    }
+    Optional<List<Group>> cached = get(new Key(provider, uid));
+    if (cached.isPresent()) {
+      return CompletableFuture.completedFuture(cached.get());
+    }
+    return loader.get().thenApply(groups -> {
+      put(new Key(provider, uid), groups);
+      return groups;
+    });
+  }
+
+  private Optional<List<Group>> get(Key key) {
+    Optional<List<Group>> groups = getFresh(key);
+    if (groups.isPresent() || !fileStore.isPresent() || getEntry(key).isPresent()) {
+      return groups;
+    }
+    Optional<Entry> entry = fromFile(key);
+    if (!entry.isPresent() || entry.get().freshUntilNanos - System.nanoTime() <= 0) {
+      return Optional.empty();
+    }
+    synchronized (this) {
+      fileHits++;
+    }
+    return Optional.of(entry.get().groups);
+  }
+
+  private synchronized Optional<Entry> getEntry(Key key) {
+    return Optional.ofNullable(entries.get(key));
+  }
+
+  /*
+   * The wall-clock expiry times of the file are converted back to nanoTime and the entry is promoted to the heap,
+   * unless it is past its stale window by now
+   */
+  private Optional<Entry> fromFile(Key key) {
+    return fileStore.flatMap(store -> store.get(key.fileKey())).flatMap(record -> {
+      long nowNanos = System.nanoTime();
+      long nowMillis = System.currentTimeMillis();
+      if (record.staleUntilMillis <= nowMillis) {
+        return Optional.empty();
+      }
+      Entry entry = new Entry(record.groups, weigh(key, record.groups),
+        nowNanos + TimeUnit.MILLISECONDS.toNanos(record.freshUntilMillis - nowMillis),
+        nowNanos + TimeUnit.MILLISECONDS.toNanos(record.staleUntilMillis - nowMillis));
+      putInHeap(key, entry);
+      return Optional.of(entry);
+    });
+  }
+
+  private synchronized Optional<List<Group>> getFresh(Key key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+      return Optional.empty();
+    }
+    long now = System.nanoTime();
+    if (entry.freshUntilNanos - now <= 0) {
+      if (entry.staleUntilNanos - now <= 0) {
+        remove(key);
+      }
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    return Optional.of(entry.groups);
+  }
+
+  private void put(Key key, List<Group> groups) {
+    long ttlMillis = ttlMillis(key.provider);
+    long freshUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    Entry entry = new Entry(Collections.unmodifiableList(groups), weigh(key, groups),
+      freshUntilNanos, freshUntilNanos + TimeUnit.MILLISECONDS.toNanos(staleGraceMillis));
+    putInHeap(key, entry);
+    fileStore.ifPresent(store -> {
+      long freshUntilMillis = System.currentTimeMillis() + ttlMillis;
+      store.putAsync(key.fileKey(), groups, freshUntilMillis, freshUntilMillis + staleGraceMillis);
+    });
+  }
+
+  private synchronized void putInHeap(Key key, Entry entry) {
+    if (entry.weight > maxWeightBytes) {
+      return;
+    }
+    Entry previous = entries.put(key, entry);
+    if (previous != null) {
+      weight -= previous.weight;
+    }
+    weight += entry.weight;
+    Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+    while (weight > maxWeightBytes && iterator.hasNext()) {
+      weight -= iterator.next().getValue().weight;
+      iterator.remove();
+      evictions++;
+    }
+  }
+
+  private void remove(Key key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  private long ttlMillis(Provider provider) {
+    return ttlMillisByProvider.getOrDefault(provider.getConfiguration().name, 0L);
+  }
+
+  /*
+   * Rough estimate of the retained heap: object headers and references plus two bytes per character
+   */
+  private long weigh(Key key, List<Group> groups) {
+    long weight = 96 + size(key.uid);
+    for (Group group : groups) {
+      weight += 64 + size(group.id) + size(group.displayName) + size(group.description) + size(group.sourceID);
+    }
+    return weight;
+  }
+
+  private long size(String s) {
+    return s == null ? 0 : 40 + 2L * s.length();
+  }
+
+  public void close() {
+    fileStore.ifPresent(store -> {
+      try {
+        store.close();
+      } catch (IOException e) {
+        LOG.warn("Unable to close the membership cache file", e);
+      }
+    });
+  }
+
+  @Override
+  public synchronized Collection<Metric<?>> metrics() {
+    long lookups = hits + misses;
+    return Arrays.asList(
+      new Metric<>("membershipCache.size", entries.size()),
+      new Metric<>("membershipCache.weightBytes", weight),
+      new Metric<>("membershipCache.hits", hits),
+      new Metric<>("membershipCache.misses", misses),
+      new Metric<>("membershipCache.evictions", evictions),
+      new Metric<>("membershipCache.staleServed", staleServed),
+      new Metric<>("membershipCache.fileHits", fileHits),
+      new Metric<>("membershipCache.file.compactions", fileStore.map(MembershipFileStore::getCompactions).orElse(0L)),
+      new Metric<>("membershipCache.file.droppedWrites", fileStore.map(MembershipFileStore::getDroppedWrites).orElse(0L)),
+      new Metric<>("membershipCache.staleServedRatio", lookups == 0 ? 0.0 : (double) staleServed / lookups));
+  }
+
+  private static class Key {
+    final Provider provider;
+    final String uid;
+
+    Key(Provider provider, String uid) {
+      this.provider = provider;
+      this.uid = uid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return provider == key.provider && Objects.equals(uid, key.uid);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(provider) + Objects.hashCode(uid);
+    }
+
+    /*
+     * Provider instances do not survive a restart, their names do
+     */
+    String fileKey() {
+      return provider.getConfiguration().name + ":" + uid;
+    }
+  }
+
+  private static class Entry {
+    final List<Group> groups;
+    final long weight;
+    final long freshUntilNanos;
+    final long staleUntilNanos;
+
+    Entry(List<Group> groups, long weight, long freshUntilNanos, long staleUntilNanos) {
+      this.groups = groups;
+      this.weight = weight;
+      this.freshUntilNanos = freshUntilNanos;
+      this.staleUntilNanos = staleUntilNanos;
+    }
+  }
+}
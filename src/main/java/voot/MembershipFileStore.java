@@ -0,0 +1,375 @@
+package voot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Second tier below the on-heap {@link MembershipCache}: group memberships appended to a memory-mapped file of
+ * maxBytes, so they live outside the GC heap and survive a restart. Only the index from key to offset is kept on the
+ * heap, it is rebuilt from the file on start up. Expiry times are stored as wall-clock time, so the TTLs stay in force
+ * after a restart.
+ *
+ * A file is a header - magic, version and generation - followed by records of
+ * [length][generation][freshUntil][staleUntil][key][groups]. The length is written last and a record of another
+ * generation ends the file, so a record that is only partially written or left behind by a compaction is never read.
+ * When there is no room for a record the live records are compacted in place, keeping the most recent ones if they
+ * do not fit in half the file. The appends of {@link #putAsync} - and so the compactions - run on a writer thread of
+ * the store.
+ */
+public class MembershipFileStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MembershipFileStore.class);
+
+  private static final int MAGIC = 0x564F4F54;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 12;
+  private static final int GENERATION_OFFSET = 8;
+  private static final int MAX_PENDING_WRITES = 1024;
+
+  private static final byte NO_MEMBERSHIP = -1;
+  private static final byte MEMBER = 0;
+  private static final byte MANAGER = 1;
+  private static final byte ADMIN = 2;
+  private static final byte OTHER_MEMBERSHIP = 3;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final Map<String, Integer> index = new HashMap<>();
+  private final ThreadPoolExecutor writer;
+  private final AtomicLong droppedWrites = new AtomicLong();
+  private int generation;
+  private int end;
+  private long compactions;
+
+  public MembershipFileStore(Path path, int maxBytes) throws IOException {
+    Assert.isTrue(maxBytes > HEADER_BYTES, "The file must be larger than its header");
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+    if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION) {
+      this.generation = buffer.getInt(GENERATION_OFFSET);
+      load();
+    } else {
+      LOG.info("Initializing membership cache file {}", path);
+      this.generation = 0;
+      reset(0);
+    }
+    this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(MAX_PENDING_WRITES), runnable -> {
+      Thread thread = new Thread(runnable, "membership-file-writer");
+      thread.setDaemon(true);
+      return thread;
+    }, (runnable, executor) -> droppedWrites.incrementAndGet());
+  }
+
+  public synchronized Optional<Record> get(String key) {
+    Integer offset = index.get(key);
+    if (offset == null) {
+      return Optional.empty();
+    }
+    Record record = read(offset);
+    if (record.staleUntilMillis <= System.currentTimeMillis()) {
+      index.remove(key);
+      return Optional.empty();
+    }
+    return Optional.of(record);
+  }
+
+  public synchronized void put(String key, List<Group> groups, long freshUntilMillis, long staleUntilMillis) {
+    byte[] record = encode(key, groups, freshUntilMillis, staleUntilMillis);
+    if (record.length + 4 > buffer.capacity() / 2) {
+      return;
+    }
+    if (end + 4 + record.length + 4 > buffer.capacity()) {
+      compact();
+    }
+    index.put(key, append(record));
+  }
+
+  /**
+   * Leaves the write to the writer thread, so the caller never waits for the file or a compaction. The write is dropped
+   * when too many are pending or the store is closed.
+   */
+  public void putAsync(String key, List<Group> groups, long freshUntilMillis, long staleUntilMillis) {
+    writer.execute(() -> {
+      try {
+        put(key, groups, freshUntilMillis, staleUntilMillis);
+      } catch (RuntimeException e) {
+        LOG.error("Unable to write memberships of {} to cache file {}", key, path, e);
+      }
+    });
+  }
+
+  public synchronized int size() {
+    return index.size();
+  }
+
+  public synchronized int usedBytes() {
+    return end;
+  }
+
+  public synchronized long getCompactions() {
+    return compactions;
+  }
+
+  public long getDroppedWrites() {
+    return droppedWrites.get();
+  }
+
+  /*
+   * The pending writes are finished first, outside of the lock they need
+   */
+  public void close() throws IOException {
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("Closing membership cache file {} with {} writes pending", path, writer.shutdownNow().size());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      buffer.force();
+      channel.close();
+    }
+  }
+
+  private void load() {
+    int position = HEADER_BYTES;
+    try {
+      while (position + 8 <= buffer.capacity()) {
+        int length = buffer.getInt(position);
+        if (length <= 0 || position + 4 + length > buffer.capacity() || buffer.getInt(position + 4) != generation) {
+          break;
+        }
+        index.put(read(position).key, position);
+        position += 4 + length;
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Ignoring the corrupt tail of membership cache file {} at {}", path, position);
+    }
+    end = position;
+    if (end + 4 <= buffer.capacity()) {
+      buffer.putInt(end, 0);
+    }
+    LOG.info("Loaded {} memberships from cache file {}", index.size(), path);
+  }
+
+  /*
+   * The live records are copied to the heap first, as they are written back over themselves in the next generation
+   */
+  private void compact() {
+    long now = System.currentTimeMillis();
+    List<Map.Entry<String, Integer>> live = new ArrayList<>(index.entrySet());
+    live.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+    List<byte[]> records = new ArrayList<>();
+    int bytes = 0;
+    for (Map.Entry<String, Integer> entry : live) {
+      Record record = read(entry.getValue());
+      if (record.staleUntilMillis <= now) {
+        continue;
+      }
+      byte[] encoded = encode(record.key, record.groups, record.freshUntilMillis, record.staleUntilMillis);
+      if (HEADER_BYTES + bytes + 4 + encoded.length > buffer.capacity() / 2) {
+        break;
+      }
+      records.add(encoded);
+      bytes += 4 + encoded.length;
+    }
+    reset(generation + 1);
+    Collections.reverse(records);
+    records.forEach(record -> index.put(keyOf(record), append(record)));
+    compactions++;
+    LOG.debug("Compacted membership cache file {} to {} records", path, index.size());
+  }
+
+  private void reset(int nextGeneration) {
+    index.clear();
+    generation = nextGeneration;
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(GENERATION_OFFSET, generation);
+    end = HEADER_BYTES;
+    buffer.putInt(end, 0);
+  }
+
+  /*
+   * The record may have been encoded before a compaction, so it always gets the current generation
+   */
+  private int append(byte[] record) {
+    ByteBuffer.wrap(record).putInt(0, generation);
+    int offset = end;
+    ByteBuffer target = buffer.duplicate();
+    target.position(offset + 4);
+    target.put(record);
+    end = offset + 4 + record.length;
+    if (end + 4 <= buffer.capacity()) {
+      buffer.putInt(end, 0);
+    }
+    buffer.putInt(offset, record.length);
+    return offset;
+  }
+
+  private byte[] encode(String key, List<Group> groups, long freshUntilMillis, long staleUntilMillis) {
+    Encoder encoder = new Encoder();
+    encoder.putInt(generation);
+    encoder.putLong(freshUntilMillis);
+    encoder.putLong(staleUntilMillis);
+    encoder.putString(key);
+    encoder.putInt(groups.size());
+    for (Group group : groups) {
+      encoder.putString(group.id);
+      encoder.putString(group.displayName);
+      encoder.putString(group.description);
+      encoder.putString(group.sourceID);
+      putMembership(encoder, group.membership);
+    }
+    return encoder.toByteArray();
+  }
+
+  private Record read(int offset) {
+    ByteBuffer source = buffer.duplicate();
+    source.position(offset + 8);
+    long freshUntilMillis = source.getLong();
+    long staleUntilMillis = source.getLong();
+    String key = getString(source);
+    int size = source.getInt();
+    List<Group> groups = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      groups.add(new Group(getString(source), getString(source), getString(source), getString(source), getMembership(source)));
+    }
+    return new Record(key, Collections.unmodifiableList(groups), freshUntilMillis, staleUntilMillis);
+  }
+
+  private String keyOf(byte[] record) {
+    ByteBuffer source = ByteBuffer.wrap(record);
+    source.position(20);
+    return getString(source);
+  }
+
+  private void putMembership(Encoder encoder, Membership membership) {
+    if (membership == null) {
+      encoder.put(NO_MEMBERSHIP);
+    } else if (membership.equals(Membership.MEMBER)) {
+      encoder.put(MEMBER);
+    } else if (membership.equals(Membership.MANAGER)) {
+      encoder.put(MANAGER);
+    } else if (membership.equals(Membership.ADMIN)) {
+      encoder.put(ADMIN);
+    } else {
+      encoder.put(OTHER_MEMBERSHIP);
+      encoder.putString(membership.getBasic());
+    }
+  }
+
+  private Membership getMembership(ByteBuffer source) {
+    byte code = source.get();
+    switch (code) {
+      case NO_MEMBERSHIP:
+        return null;
+      case MEMBER:
+        return Membership.MEMBER;
+      case MANAGER:
+        return Membership.MANAGER;
+      case ADMIN:
+        return Membership.ADMIN;
+      case OTHER_MEMBERSHIP:
+        return new Membership(getString(source));
+      default:
+        throw new IllegalArgumentException("Unknown membership code " + code);
+    }
+  }
+
+  private String getString(ByteBuffer source) {
+    int length = source.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > source.remaining()) {
+      throw new IllegalArgumentException("String of " + length + " bytes beyond the end of the record");
+    }
+    byte[] bytes = new byte[length];
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Memberships read back from the file
+   */
+  public static class Record {
+    public final String key;
+    public final List<Group> groups;
+    public final long freshUntilMillis;
+    public final long staleUntilMillis;
+
+    Record(String key, List<Group> groups, long freshUntilMillis, long staleUntilMillis) {
+      this.key = key;
+      this.groups = groups;
+      this.freshUntilMillis = freshUntilMillis;
+      this.staleUntilMillis = staleUntilMillis;
+    }
+  }
+
+  private static class Encoder {
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+
+    void put(byte b) {
+      ensure(1).put(b);
+    }
+
+    void putInt(int i) {
+      ensure(4).putInt(i);
+    }
+
+    void putLong(long l) {
+      ensure(8).putLong(l);
+    }
+
+    void putString(String s) {
+      if (s == null) {
+        putInt(-1);
+        return;
+      }
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      ensure(bytes.length).put(bytes);
+    }
+
+    byte[] toByteArray() {
+      byte[] bytes = new byte[buffer.position()];
+      System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+      return bytes;
+    }
+
+    private ByteBuffer ensure(int bytes) {
+      if (buffer.remaining() < bytes) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+      return buffer;
+    }
+  }
+}
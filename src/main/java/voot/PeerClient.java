@@ -0,0 +1,211 @@
+package voot;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import voot.provider.CallContext;
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+import voot.web.VootController;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Fetches the memberships of a uid from the peer node that owns it according to the {@link PeerRing}, so that every
+ * uid is cached - and its providers are queried - by one node only. A peer that can not be reached is skipped for
+ * retryMillis, in the meantime the providers are queried directly. The owner is waited for no longer than the budget
+ * of the caller, and is told to return what it has well within that budget.
+ */
+public class PeerClient implements PublicMetrics {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PeerClient.class);
+
+  public static final String PEER_SECRET_HEADER = "X-Peer-Secret";
+  public static final String MAX_AGE_HEADER = "X-Max-Age-Millis";
+  public static final String DEADLINE_HEADER = "X-Deadline-Millis";
+
+  private final Optional<PeerRing> ring;
+  private final String secret;
+  private final long retryNanos;
+  private final int connectTimeoutMillis;
+  private final long timeoutMillis;
+  private final RestTemplate restTemplate;
+
+  private final Map<String, Long> unavailableUntil = new ConcurrentHashMap<>();
+  private final AtomicLong forwarded = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  /**
+   * @param timeoutMillis the maximum wait for the owner - connecting included - further capped by the budget of the call
+   */
+  public PeerClient(PeerRing ring, String secret, int connectTimeoutMillis, long timeoutMillis, long retryMillis) {
+    this(Optional.of(ring), secret, connectTimeoutMillis, timeoutMillis, retryMillis);
+  }
+
+  private PeerClient(Optional<PeerRing> ring, String secret, int connectTimeoutMillis, long timeoutMillis, long retryMillis) {
+    Assert.isTrue(!ring.isPresent() || (connectTimeoutMillis > 0 && timeoutMillis > 0), "Timeouts must be positive");
+    this.ring = ring;
+    this.secret = secret;
+    this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMillis);
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    this.timeoutMillis = timeoutMillis;
+    this.restTemplate = ring.isPresent() ? restTemplate() : null;
+  }
+
+  public static PeerClient disabled() {
+    return new PeerClient(Optional.empty(), null, 0, 0, 0L);
+  }
+
+  public boolean isEnabled() {
+    return ring.isPresent();
+  }
+
+  public boolean isPeer(String presentedSecret) {
+    return isEnabled() && presentedSecret != null &&
+      MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param budgetMillis how long the caller can wait for the owner
+   * @return the memberships from the owner of the uid, empty when this node is the owner or the owner is unavailable
+   */
+  public Optional<ExternalGroupsService.Result<List<Group>>> getMyGroups(String uid, String schacHomeOrganization, boolean external,
+                                                                         long budgetMillis) {
+    Optional<String> owner = ring.map(peerRing -> peerRing.ownerOf(uid)).filter(node -> !ring.get().isSelf(node));
+    if (!owner.isPresent() || !isAvailable(owner.get())) {
+      return Optional.empty();
+    }
+    CallContext callContext = new CallContext(Math.min(timeoutMillis, budgetMillis));
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(PEER_SECRET_HEADER, secret);
+    headers.set(DEADLINE_HEADER, String.valueOf(ownerDeadlineMillis(callContext.remainingMillis())));
+    try {
+      ResponseEntity<List> response = callContext.call(() -> restTemplate.exchange(
+        owner.get() + "/peer/groups/{uid}?schacHomeOrganization={schacHome}&external={external}",
+        HttpMethod.GET, new HttpEntity<>(headers), List.class, uid, schacHomeOrganization, external));
+      forwarded.incrementAndGet();
+      return Optional.of(result(response));
+    } catch (RestClientException e) {
+      LOG.warn("Peer {} is unavailable for {} ms, querying the providers directly: {}", owner.get(), TimeUnit.NANOSECONDS.toMillis(retryNanos), e.toString());
+      failures.incrementAndGet();
+      unavailableUntil.put(owner.get(), System.nanoTime() + retryNanos);
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    if (!isEnabled()) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(
+      new Metric<>("peers.forwarded", forwarded.get()),
+      new Metric<>("peers.failures", failures.get()),
+      new Metric<>("peers.unavailable", unavailableUntil.keySet().stream().filter(node -> !isAvailable(node)).count()));
+  }
+
+  /*
+   * Waiting for a connection from the pool and connecting each get at most a quarter of the budget, reading the rest
+   */
+  private RestTemplate restTemplate() {
+    return new RestTemplate(new HttpComponentsClientHttpRequestFactory(HttpClients.custom().setMaxConnPerRoute(50).setMaxConnTotal(200).build()) {
+      @Override
+      protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+        long budgetMillis = CallContext.current().map(CallContext::remainingMillis).orElse(timeoutMillis);
+        int connectMillis = connectMillis(budgetMillis);
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.custom()
+          .setConnectionRequestTimeout(connectMillis)
+          .setConnectTimeout(connectMillis)
+          .setSocketTimeout(readMillis(budgetMillis))
+          .build());
+        return context;
+      }
+    });
+  }
+
+  private int connectMillis(long budgetMillis) {
+    return (int) Math.max(1L, Math.min(connectTimeoutMillis, budgetMillis / 4));
+  }
+
+  private int readMillis(long budgetMillis) {
+    return (int) Math.max(1L, budgetMillis - 2 * connectMillis(budgetMillis));
+  }
+
+  /*
+   * The owner needs some of the read timeout to send its answer
+   */
+  private long ownerDeadlineMillis(long budgetMillis) {
+    return Math.max(1L, readMillis(budgetMillis) * 4 / 5);
+  }
+
+  private boolean isAvailable(String node) {
+    Long until = unavailableUntil.get(node);
+    if (until == null) {
+      return true;
+    }
+    if (until - System.nanoTime() <= 0) {
+      unavailableUntil.remove(node, until);
+      return true;
+    }
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ExternalGroupsService.Result<List<Group>> result(ResponseEntity<List> response) {
+    List<Map<String, Object>> body = response.getBody();
+    List<Group> groups = body.stream().map(PeerClient::group).collect(toList());
+    HttpHeaders headers = response.getHeaders();
+    String maxAge = headers.getFirst(MAX_AGE_HEADER);
+    return new ExternalGroupsService.Result<>(groups,
+      providers(headers.getFirst(VootController.OMITTED_PROVIDERS_HEADER)),
+      providers(headers.getFirst(VootController.STALE_PROVIDERS_HEADER)),
+      maxAge != null ? Long.parseLong(maxAge) : 0L);
+  }
+
+  private static List<String> providers(String header) {
+    return StringUtils.hasText(header) ? Arrays.asList(header.split(",")) : Collections.emptyList();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Group group(Map<String, Object> map) {
+    Map<String, Object> membership = (Map<String, Object>) map.get("membership");
+    return new Group((String) map.get("id"), (String) map.get("displayName"), (String) map.get("description"),
+      (String) map.get("sourceID"), membership != null ? membership((String) membership.get("basic")) : null);
+  }
+
+  private static Membership membership(String basic) {
+    return Stream.of(Membership.MEMBER, Membership.MANAGER, Membership.ADMIN)
+      .filter(membership -> membership.getBasic().equals(basic))
+      .findFirst()
+      .orElseGet(() -> new Membership(basic));
+  }
+}
@@ -0,0 +1,58 @@
+package voot;
+
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent-hash ring of the voot nodes - identified by their base url - that assigns every uid to an owner node.
+ * Every node is placed virtualNodes times on the ring, so the uids are spread evenly and only the uids of a node are
+ * reassigned when it is added or removed.
+ */
+public class PeerRing {
+
+  private final List<String> nodes;
+  private final String self;
+  private final TreeMap<Integer, String> ring = new TreeMap<>();
+
+  public PeerRing(List<String> nodes, String self, int virtualNodes) {
+    Assert.isTrue(nodes.contains(self), String.format("This node %s must be one of the peers %s", self, nodes));
+    Assert.isTrue(virtualNodes > 0, "virtualNodes must be positive");
+    this.nodes = Collections.unmodifiableList(nodes);
+    this.self = self;
+    nodes.forEach(node -> {
+      for (int i = 0; i < virtualNodes; i++) {
+        ring.put(hash(node + "#" + i), node);
+      }
+    });
+  }
+
+  public String ownerOf(String uid) {
+    Map.Entry<Integer, String> owner = ring.ceilingEntry(hash(uid));
+    return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+  }
+
+  public boolean isSelf(String node) {
+    return self.equals(node);
+  }
+
+  public List<String> getNodes() {
+    return nodes;
+  }
+
+  private static int hash(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+      return ByteBuffer.wrap(digest).getInt();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package voot;
+
+import voot.provider.Provider;
+import voot.provider.Provider.Routing;
+import voot.util.UrnUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Immutable index from (case-folded) schacHomeOrganization to the Providers to query, so that routing a request takes
+ * one lookup instead of asking every configured Provider. Providers with {@link Routing#CUSTOM} routing are part of
+ * every candidate list and are still asked.
+ */
+public class ProviderIndex {
+
+  private final Map<String, List<Provider>> membershipProviders;
+  private final List<Provider> defaultMembershipProviders;
+  private final Map<String, List<Provider>> externalMembershipProviders;
+  private final List<Provider> defaultExternalMembershipProviders;
+  private final Map<String, List<Provider>> groupProviders;
+  private final List<Provider> defaultGroupProviders;
+
+  public ProviderIndex(List<Provider> providers) {
+    List<Provider> externalProviders = providers.stream().filter(Provider::isExternalGroupProvider).collect(toList());
+    this.membershipProviders = index(providers, Provider::getMembershipRouting);
+    this.defaultMembershipProviders = candidates(providers, Provider::getMembershipRouting, null);
+    this.externalMembershipProviders = index(externalProviders, Provider::getMembershipRouting);
+    this.defaultExternalMembershipProviders = candidates(externalProviders, Provider::getMembershipRouting, null);
+    this.groupProviders = index(providers, Provider::getGroupRouting);
+    this.defaultGroupProviders = candidates(providers, Provider::getGroupRouting, null);
+  }
+
+  public List<Provider> forMemberships(String schacHomeOrganization) {
+    return route(membershipProviders, defaultMembershipProviders, Optional.ofNullable(schacHomeOrganization),
+      Provider::getMembershipRouting, provider -> provider.shouldBeQueriedForMemberships(schacHomeOrganization));
+  }
+
+  public List<Provider> forExternalMemberships(String schacHomeOrganization) {
+    return route(externalMembershipProviders, defaultExternalMembershipProviders, Optional.ofNullable(schacHomeOrganization),
+      Provider::getMembershipRouting, provider -> provider.shouldBeQueriedForMemberships(schacHomeOrganization));
+  }
+
+  public List<Provider> forGroup(String groupId) {
+    return route(groupProviders, defaultGroupProviders, UrnUtils.getSchacHomeFromGroupUrn(groupId),
+      Provider::getGroupRouting, provider -> provider.shouldBeQueriedForGroup(groupId));
+  }
+
+  private List<Provider> route(Map<String, List<Provider>> index, List<Provider> defaultProviders, Optional<String> schacHomeOrganization,
+                               Function<Provider, Routing> routing, Predicate<Provider> custom) {
+    List<Provider> candidates = schacHomeOrganization.map(key -> index.get(fold(key))).orElse(null);
+    candidates = candidates == null ? defaultProviders : candidates;
+    if (candidates.stream().noneMatch(provider -> routing.apply(provider) == Routing.CUSTOM)) {
+      return candidates;
+    }
+    return candidates.stream().filter(provider -> routing.apply(provider) != Routing.CUSTOM || custom.test(provider)).collect(toList());
+  }
+
+  private Map<String, List<Provider>> index(List<Provider> providers, Function<Provider, Routing> routing) {
+    Map<String, List<Provider>> index = new HashMap<>();
+    providers.stream()
+      .filter(provider -> routing.apply(provider) == Routing.SCHAC_HOME)
+      .map(provider -> fold(provider.getConfiguration().schacHomeOrganization))
+      .distinct()
+      .forEach(key -> index.put(key, candidates(providers, routing, key)));
+    return Collections.unmodifiableMap(index);
+  }
+
+  /*
+   * The candidates in the configured order: all Providers that are always queried or have a custom routing, and the
+   * Providers for the schacHomeOrganization key (if any)
+   */
+  private List<Provider> candidates(List<Provider> providers, Function<Provider, Routing> routing, String key) {
+    return Collections.unmodifiableList(providers.stream()
+      .filter(provider -> routing.apply(provider) != Routing.SCHAC_HOME || fold(provider.getConfiguration().schacHomeOrganization).equals(key))
+      .collect(toList()));
+  }
+
+  private static String fold(String schacHomeOrganization) {
+    return schacHomeOrganization.toLowerCase(Locale.ROOT);
+  }
+}
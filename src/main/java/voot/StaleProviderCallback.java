@@ -0,0 +1,11 @@
+package voot;
+
+import voot.provider.Provider;
+
+import java.util.Optional;
+
+public interface StaleProviderCallback<T> {
+
+  Optional<T> result(Provider provider);
+
+}
@@ -1,11 +1,17 @@
 package voot;
 
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.actuate.autoconfigure.MetricFilterAutoConfiguration;
 import org.springframework.boot.actuate.autoconfigure.TraceWebFilterAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ResourceLoader;
@@ -19,28 +25,51 @@ import org.springframework.security.oauth2.config.annotation.web.configurers.Res
 import org.springframework.security.oauth2.provider.authentication.BearerTokenExtractor;
 import org.springframework.security.oauth2.provider.authentication.TokenExtractor;
 import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.web.header.writers.CacheControlHeadersWriter;
+import org.springframework.security.web.header.writers.DelegatingRequestMatcherHeaderWriter;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
 import org.springframework.util.StringUtils;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.SafeConstructor;
 import voot.authz.AuthzResourceServerTokenServices;
 import voot.authz.AuthzSchacHomeAwareUserAuthenticationConverter;
 import voot.oauth.CachedRemoteTokenServices;
+import voot.oauth.ClientRateLimiter;
 import voot.oauth.CompositeDecisionResourceServerTokenServices;
 import voot.oauth.DecisionResourceServerTokenServices;
+import voot.oauth.ExpiringAccessTokenConverter;
+import voot.oauth.InMemoryTokenCacheStore;
+import voot.oauth.IntrospectionHttpClient;
+import voot.oauth.InvalidTokenCache;
+import voot.oauth.JdbcTokenCacheStore;
+import voot.oauth.RateLimitedTokenServices;
+import voot.oauth.TieredTokenCacheStore;
+import voot.oauth.TokenCacheStore;
+import voot.oidc.JsonWebKeySet;
+import voot.oidc.JwtTokenServices;
 import voot.oidc.OidcRemoteTokenServices;
 import voot.provider.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @SpringBootApplication(exclude = {TraceWebFilterAutoConfiguration.class, MetricFilterAutoConfiguration.class})
 public class VootServiceApplication {
 
+  private static final Logger LOG = LoggerFactory.getLogger(VootServiceApplication.class);
+
   @Autowired
   private ResourceLoader resourceLoader;
 
@@ -52,16 +81,83 @@ public class VootServiceApplication {
   }
 
 
+  @Bean(destroyMethod = "shutdown")
+  public ProviderExecutor providerExecutor(
+    @Value("${externalProviders.executor.type}") final String type,
+    @Value("${externalProviders.executor.maxThreads}") final int maxThreads) {
+    switch (type.toLowerCase()) {
+      case "platform":
+        return new PlatformThreadProviderExecutor(maxThreads);
+      case "virtual":
+        return VirtualThreadProviderExecutor.create().orElseGet(() -> {
+          LOG.warn("Virtual threads are not supported by this JVM, falling back to {} platform threads", maxThreads);
+          return new PlatformThreadProviderExecutor(maxThreads);
+        });
+      default:
+        throw new IllegalArgumentException("Unknown provider executor-type: " + type);
+    }
+  }
+
+  @Bean(destroyMethod = "close")
+  public CloseableHttpAsyncClient providerHttpAsyncClient(
+    @Value("${externalProviders.async.maxConnections}") final int maxConnections,
+    @Value("${externalProviders.async.maxConnectionsPerRoute}") final int maxConnectionsPerRoute) {
+    CloseableHttpAsyncClient httpAsyncClient = HttpAsyncClients.custom()
+      //timeouts are only checked once per select interval, the default of a second is too coarse for our deadline
+      .setDefaultIOReactorConfig(IOReactorConfig.custom().setSelectInterval(100).build())
+      .setMaxConnTotal(maxConnections)
+      .setMaxConnPerRoute(maxConnectionsPerRoute)
+      .build();
+    httpAsyncClient.start();
+    return httpAsyncClient;
+  }
+
   @Bean
+  public PeerClient peerClient(
+    @Value("${externalProviders.peers.nodes}") final String nodes,
+    @Value("${externalProviders.peers.self}") final String self,
+    @Value("${externalProviders.peers.secret}") final String secret,
+    @Value("${externalProviders.peers.virtualNodes}") final int virtualNodes,
+    @Value("${externalProviders.peers.connectTimeoutMillis}") final int connectTimeoutMillis,
+    @Value("${externalProviders.peers.timeoutMillis}") final long timeoutMillis,
+    @Value("${externalProviders.peers.retryMillis}") final long retryMillis) {
+    if (!StringUtils.hasText(nodes)) {
+      return PeerClient.disabled();
+    }
+    //the peers endpoint serves the memberships of every user without a token
+    if (!StringUtils.hasText(secret) || "secret".equals(secret.trim())) {
+      throw new IllegalArgumentException("A peers secret other than the default is required when peers are configured");
+    }
+    List<String> peers = Arrays.stream(StringUtils.commaDelimitedListToStringArray(nodes))
+      .map(node -> StringUtils.trimTrailingCharacter(node.trim(), '/'))
+      .collect(Collectors.toList());
+    PeerRing ring = new PeerRing(peers, StringUtils.trimTrailingCharacter(self.trim(), '/'), virtualNodes);
+    LOG.info("Sharing the membership cache with peers {}", peers);
+    return new PeerClient(ring, secret, connectTimeoutMillis, timeoutMillis, retryMillis);
+  }
+
+  @Bean(destroyMethod = "shutdown")
   @Autowired
   public ExternalGroupsService externalGroupsService(
-    @Value("${externalProviders.config.path}") final String configFileLocation) throws IOException {
+    ProviderExecutor providerExecutor,
+    CloseableHttpAsyncClient providerHttpAsyncClient,
+    PeerClient peerClient,
+    @Value("${externalProviders.async.enabled}") final boolean asyncEnabled,
+    @Value("${externalProviders.cache.maxWeightBytes}") final long cacheMaxWeightBytes,
+    @Value("${externalProviders.cache.staleGraceMillis}") final long cacheStaleGraceMillis,
+    @Value("${externalProviders.cache.file.path}") final String cacheFilePath,
+    @Value("${externalProviders.cache.file.maxBytes}") final int cacheFileMaxBytes,
+    @Value("${externalProviders.allGroups.refreshMillis}") final long allGroupsRefreshMillis,
+    @Value("${externalProviders.allGroups.rebuildDeadlineMillis}") final long allGroupsRebuildDeadlineMillis,
+    @Value("${externalProviders.config.path}") final String configFileLocation,
+    @Value("${externalProviders.deadline.milliSeconds}") final long deadlineMilliseconds) throws IOException {
 
     Yaml yaml = new Yaml(new SafeConstructor());
 
     @SuppressWarnings("unchecked")
     Map<String, List<Map<String, Object>>> config = (Map<String, List<Map<String, Object>>>) yaml.load(resourceLoader.getResource(configFileLocation).getInputStream());
     final List<Map<String, Object>> externalGroupProviders = config.get("externalGroupProviders");
+    final Map<String, Long> cacheTtlMillis = new HashMap<>();
 
     final List<Provider> groupClients = externalGroupProviders.stream().map(entryMap -> {
       final String type = (String) entryMap.get("type");
@@ -77,18 +173,54 @@ public class VootServiceApplication {
       GroupProviderType groupProviderType = GroupProviderType.valueOf(type.toUpperCase());
 
       final Provider.Configuration configuration = new Provider.Configuration(groupProviderType, url, new Provider.Configuration.Credentials(username, secret), timeoutMillis, schacHomeOrganization, name);
-      switch (groupProviderType) {
-        case VOOT2:
-          return new Voot2Provider(configuration);
-        case OPEN_SOCIAL:
-          return new OpenSocialClient(configuration);
-        case GROUPER:
-          return new GrouperSoapClient(configuration, dataSource);
-        default:
-          throw new IllegalArgumentException("Unknown external provider-type: " + type);
+
+      if (entryMap.containsKey("cacheTtlMillis")) {
+        cacheTtlMillis.put(name, ((Number) entryMap.get("cacheTtlMillis")).longValue());
       }
+
+      @SuppressWarnings("unchecked")
+      final Map<String, Object> rawCircuitBreaker = (Map<String, Object>) entryMap.getOrDefault("circuitBreaker", Collections.emptyMap());
+      CircuitBreaker circuitBreaker = new CircuitBreaker(name,
+        (Integer) rawCircuitBreaker.getOrDefault("failureThreshold", 5),
+        ((Number) rawCircuitBreaker.getOrDefault("openMillis", 30000)).longValue(),
+        (Integer) rawCircuitBreaker.getOrDefault("halfOpenMaxCalls", 1));
+
+      @SuppressWarnings("unchecked")
+      final Map<String, Object> rawBulkhead = (Map<String, Object>) entryMap.getOrDefault("bulkhead", Collections.emptyMap());
+      AimdLimiter limiter = new AimdLimiter(
+        (Integer) rawBulkhead.getOrDefault("initialLimit", 20),
+        (Integer) rawBulkhead.getOrDefault("minLimit", 2),
+        (Integer) rawBulkhead.getOrDefault("maxLimit", 200),
+        ((Number) rawBulkhead.getOrDefault("latencyThresholdMillis", Math.max(1, timeoutMillis / 2))).longValue());
+
+      return new BulkheadProvider(new CircuitBreakingProvider(provider(groupProviderType, configuration, asyncEnabled ? providerHttpAsyncClient : null, entryMap), circuitBreaker), limiter);
     }).collect(Collectors.toList());
-    return new ExternalGroupsService(groupClients);
+    return new ExternalGroupsService(groupClients, providerExecutor, deadlineMilliseconds, new MembershipCache(cacheMaxWeightBytes, cacheTtlMillis, cacheStaleGraceMillis, membershipFileStore(cacheFilePath, cacheFileMaxBytes)),
+      allGroupsRefreshMillis, allGroupsRebuildDeadlineMillis, peerClient);
+  }
+
+  private Optional<MembershipFileStore> membershipFileStore(String path, int maxBytes) throws IOException {
+    if (!StringUtils.hasText(path)) {
+      return Optional.empty();
+    }
+    return Optional.of(new MembershipFileStore(Paths.get(path), maxBytes));
+  }
+
+  private Provider provider(GroupProviderType groupProviderType, Provider.Configuration configuration, CloseableHttpAsyncClient httpAsyncClient,
+                            Map<String, Object> entryMap) {
+    switch (groupProviderType) {
+      case VOOT2:
+        return new Voot2Provider(configuration, httpAsyncClient, (Integer) entryMap.getOrDefault("conditionalCacheMaxEntries", 0));
+      case OPEN_SOCIAL:
+        return new OpenSocialClient(configuration, httpAsyncClient, (Integer) entryMap.getOrDefault("conditionalCacheMaxEntries", 0));
+      case GROUPER:
+        return new GrouperSoapClient(configuration, dataSource,
+          ((Number) entryMap.getOrDefault("membersCacheMaxMembers", 0)).longValue(),
+          ((Number) entryMap.getOrDefault("notMemberCacheTtlMillis", 0)).longValue(),
+          (Integer) entryMap.getOrDefault("notMemberCacheMaxEntries", 10000));
+      default:
+        throw new IllegalArgumentException("Unknown external provider-type: " + groupProviderType);
+    }
   }
 
   @Configuration
@@ -114,6 +246,36 @@ public class VootServiceApplication {
     @Value("${oidc.checkToken.secret}")
     private String oidcCheckTokenSecret;
 
+    @Value("${oidc.jwt.jwksUrl}")
+    private String oidcJwksUrl;
+
+    @Value("${oidc.jwt.issuer}")
+    private String oidcJwtIssuer;
+
+    @Value("${oidc.jwt.audience}")
+    private String oidcJwtAudience;
+
+    @Value("${oidc.jwt.refreshIntervalMillis}")
+    private long oidcJwksRefreshIntervalMillis;
+
+    @Value("${oidc.jwt.minRefreshIntervalMillis}")
+    private long oidcJwksMinRefreshIntervalMillis;
+
+    @Value("${oidc.jwt.clockSkewSeconds}")
+    private long oidcJwtClockSkewSeconds;
+
+    @Value("${checkToken.http.maxConnections}")
+    private int checkTokenMaxConnections;
+
+    @Value("${checkToken.http.connectTimeoutMillis}")
+    private int checkTokenConnectTimeoutMillis;
+
+    @Value("${checkToken.http.readTimeoutMillis}")
+    private int checkTokenReadTimeoutMillis;
+
+    @Value("${checkToken.http.idleTimeoutMillis}")
+    private long checkTokenIdleTimeoutMillis;
+
     @Value("${checkToken.cache}")
     private boolean checkTokenCache;
 
@@ -123,28 +285,127 @@ public class VootServiceApplication {
     @Value("${checkToken.cache.expiryIntervalCheck.milliseconds}")
     private int expiryIntervalCheckMilliseconds;
 
+    @Value("${checkToken.cache.maximumSize}")
+    private int checkTokenCacheMaximumSize;
+
+    @Value("${checkToken.cache.refreshAhead.milliSeconds}")
+    private int checkTokenCacheRefreshAheadMilliseconds;
+
+    @Value("${checkToken.cache.invalid.ttlMillis}")
+    private long checkTokenInvalidTtlMillis;
+
+    @Value("${checkToken.cache.invalid.maximumSize}")
+    private int checkTokenInvalidMaximumSize;
+
+    @Value("${checkToken.rateLimit.perSecond}")
+    private double checkTokenRateLimitPerSecond;
+
+    @Value("${checkToken.rateLimit.burst}")
+    private int checkTokenRateLimitBurst;
+
+    @Value("${checkToken.rateLimit.maxClients}")
+    private int checkTokenRateLimitMaxClients;
+
+    @Value("${checkToken.cache.store}")
+    private String checkTokenCacheStore;
+
+    @Value("${checkToken.cache.jdbc.table}")
+    private String checkTokenCacheTable;
+
+    @Value("${checkToken.cache.jdbc.url}")
+    private String checkTokenCacheJdbcUrl;
+
+    @Value("${checkToken.cache.jdbc.username}")
+    private String checkTokenCacheJdbcUsername;
+
+    @Value("${checkToken.cache.jdbc.password}")
+    private String checkTokenCacheJdbcPassword;
+
+    @Value("${checkToken.cache.jdbc.driverClassName}")
+    private String checkTokenCacheJdbcDriverClassName;
+
     @Override
     public void configure(ResourceServerSecurityConfigurer resources) {
       resources.resourceId("groups").tokenServices(resourceServerTokenServices()).tokenExtractor(tokenExtractor());
     }
 
     private DecisionResourceServerTokenServices resourceServerTokenServices() {
-      CompositeDecisionResourceServerTokenServices tokenServices = new CompositeDecisionResourceServerTokenServices(
-        Arrays.asList(oidcResourceServerTokenServices(), authzResourceServerTokenServices())
-      );
+      List<DecisionResourceServerTokenServices> delegates = new ArrayList<>();
+      //signed JWTs are validated locally, the other tokens are introspected
+      if (StringUtils.hasText(oidcJwksUrl)) {
+        delegates.add(new JwtTokenServices(
+          new JsonWebKeySet(oidcJwksUrl, oidcJwksRefreshIntervalMillis, oidcJwksMinRefreshIntervalMillis, 5000),
+          oidcJwtIssuer, oidcJwtAudience, oidcJwtClockSkewSeconds));
+      }
+      //only the introspections count against the budget of the caller
+      delegates.add(new RateLimitedTokenServices(new CompositeDecisionResourceServerTokenServices(
+        Arrays.asList(oidcResourceServerTokenServices(), authzResourceServerTokenServices())), clientRateLimiter()));
+      CompositeDecisionResourceServerTokenServices tokenServices = new CompositeDecisionResourceServerTokenServices(delegates);
       return checkTokenCache ?
-        new CachedRemoteTokenServices(tokenServices, checkTokenCacheDurationMilliseconds, expiryIntervalCheckMilliseconds) :
+        new CachedRemoteTokenServices(tokenServices, checkTokenCacheDurationMilliseconds, checkTokenCacheRefreshAheadMilliseconds,
+          tokenCacheStore(), invalidTokenCache()) :
         tokenServices;
     }
 
+    @Bean
+    public InMemoryTokenCacheStore localTokenCacheStore() {
+      return new InMemoryTokenCacheStore(checkTokenCacheMaximumSize);
+    }
+
+    @Bean
+    public InvalidTokenCache invalidTokenCache() {
+      return new InvalidTokenCache(checkTokenInvalidMaximumSize, checkTokenInvalidTtlMillis);
+    }
+
+    @Bean
+    public ClientRateLimiter clientRateLimiter() {
+      return new ClientRateLimiter(checkTokenRateLimitPerSecond, checkTokenRateLimitBurst, checkTokenRateLimitMaxClients);
+    }
+
+    private TokenCacheStore tokenCacheStore() {
+      InMemoryTokenCacheStore local = localTokenCacheStore();
+      switch (checkTokenCacheStore.toLowerCase()) {
+        case "memory":
+          return local;
+        case "jdbc":
+          return new TieredTokenCacheStore(local,
+            new JdbcTokenCacheStore(new JdbcTemplate(tokenCacheDataSource()), checkTokenCacheTable, expiryIntervalCheckMilliseconds));
+        default:
+          throw new IllegalArgumentException("Unknown checkToken cache store: " + checkTokenCacheStore);
+      }
+    }
+
+    /*
+     * Not a bean, that would replace the Grouper datasource
+     */
+    private DataSource tokenCacheDataSource() {
+      if (!StringUtils.hasText(checkTokenCacheJdbcUrl)) {
+        throw new IllegalArgumentException("The jdbc checkToken cache store requires checkToken.cache.jdbc.url");
+      }
+      DataSource tokenCacheDataSource = DataSourceBuilder.create()
+        .url(checkTokenCacheJdbcUrl)
+        .username(checkTokenCacheJdbcUsername)
+        .password(checkTokenCacheJdbcPassword)
+        .driverClassName(checkTokenCacheJdbcDriverClassName)
+        .build();
+      JdbcTokenCacheStore.migrate(tokenCacheDataSource, checkTokenCacheTable);
+      return tokenCacheDataSource;
+    }
+
+    @Bean
+    public IntrospectionHttpClient introspectionHttpClient() {
+      return new IntrospectionHttpClient(checkTokenMaxConnections, checkTokenConnectTimeoutMillis, checkTokenReadTimeoutMillis, checkTokenIdleTimeoutMillis);
+    }
+
     private DecisionResourceServerTokenServices oidcResourceServerTokenServices() {
-      return new OidcRemoteTokenServices(oidcCheckTokenEndpointUrl, oidcCheckTokenClientId, oidcCheckTokenSecret);
+      return new OidcRemoteTokenServices(oidcCheckTokenEndpointUrl, oidcCheckTokenClientId, oidcCheckTokenSecret, introspectionHttpClient().restTemplate());
     }
 
     private DecisionResourceServerTokenServices authzResourceServerTokenServices() {
-      final DefaultAccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+      final DefaultAccessTokenConverter accessTokenConverter = new ExpiringAccessTokenConverter();
       accessTokenConverter.setUserTokenConverter(new AuthzSchacHomeAwareUserAuthenticationConverter());
-      return new AuthzResourceServerTokenServices(authzCheckTokenClientId, authzCheckTokenSecret, authzCheckTokenEndpointUrl, accessTokenConverter);
+      return new AuthzResourceServerTokenServices(authzCheckTokenClientId, authzCheckTokenSecret, authzCheckTokenEndpointUrl, accessTokenConverter,
+        introspectionHttpClient().restTemplate());
     }
 
     /*
@@ -164,11 +425,19 @@ public class VootServiceApplication {
       http
         .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.NEVER)
         .and()
+        //the VootController sets the Cache-Control of its responses, the headers are written before it is invoked and
+        //would otherwise be sent alongside its own. All other responses - including the OAuth errors - are not cached
+        .headers().cacheControl().disable()
+        .addHeaderWriter(new DelegatingRequestMatcherHeaderWriter(new NegatedRequestMatcher(new OrRequestMatcher(
+          new AntPathRequestMatcher("/me/**"), new AntPathRequestMatcher("/internal/**"), new AntPathRequestMatcher("/members/**"))),
+          new CacheControlHeadersWriter()))
+        .and()
         .authorizeRequests()
         .antMatchers("/me/**", "groups/**", "internal/**").access("#oauth2.hasScope('groups')")
         .antMatchers("/members/**").access("#oauth2.hasScope('members')")
         .antMatchers("/internal/all-groups").access("#oauth2.hasScope('all-groups')")
-        .antMatchers("/public/**", "/health/**", "/info/**").permitAll()
+        //peers authenticate with the shared secret, checked by the PeerController
+        .antMatchers("/public/**", "/health/**", "/info/**", "/peer/**").permitAll()
         .antMatchers("/**").hasRole("USER");
 
     }
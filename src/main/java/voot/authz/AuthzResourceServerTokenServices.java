@@ -1,20 +1,82 @@
 package voot.authz;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
-import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
-import org.springframework.security.oauth2.provider.token.RemoteTokenServices;
+import org.springframework.util.Assert;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
 import voot.oauth.DecisionResourceServerTokenServices;
 
-public class AuthzResourceServerTokenServices extends RemoteTokenServices implements DecisionResourceServerTokenServices {
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+public class AuthzResourceServerTokenServices implements DecisionResourceServerTokenServices {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AuthzResourceServerTokenServices.class);
+
+  private final String checkTokenEndpointUrl;
+  private final AccessTokenConverter accessTokenConverter;
+  private final RestTemplate restTemplate;
+  private final HttpHeaders headers;
 
   public AuthzResourceServerTokenServices(String authzCheckTokenClientId, String authzCheckTokenSecret, String authzCheckTokenEndpointUrl, AccessTokenConverter accessTokenConverter) {
-    super();
-    setCheckTokenEndpointUrl(authzCheckTokenEndpointUrl);
-    setClientId(authzCheckTokenClientId);
-    setClientSecret(authzCheckTokenSecret);
+    this(authzCheckTokenClientId, authzCheckTokenSecret, authzCheckTokenEndpointUrl, accessTokenConverter, new RestTemplate());
+  }
+
+  public AuthzResourceServerTokenServices(String authzCheckTokenClientId, String authzCheckTokenSecret, String authzCheckTokenEndpointUrl,
+                                          AccessTokenConverter accessTokenConverter, RestTemplate restTemplate) {
+    this.checkTokenEndpointUrl = authzCheckTokenEndpointUrl;
+    this.accessTokenConverter = accessTokenConverter;
+    this.restTemplate = restTemplate;
+    //the authorization server answers an unknown token with a 400 and an error in the body
+    this.restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
+      @Override
+      public void handleError(ClientHttpResponse response) throws IOException {
+        if (response.getRawStatusCode() != HttpStatus.BAD_REQUEST.value()) {
+          super.handleError(response);
+        }
+      }
+    });
+    HttpHeaders headers = new HttpHeaders();
+    String basicAuthz = authzCheckTokenClientId + ":" + authzCheckTokenSecret;
+    headers.set("Authorization", "Basic " + new String(Base64.encode(basicAuthz.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+    this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+  }
 
-    setAccessTokenConverter(accessTokenConverter);
+  @Override
+  @SuppressWarnings("unchecked")
+  public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
+    MultiValueMap<String, String> formData = new LinkedMultiValueMap<>();
+    formData.add("token", accessToken);
+    Map<String, Object> map = restTemplate.exchange(checkTokenEndpointUrl, HttpMethod.POST, new HttpEntity<>(formData, headers), Map.class).getBody();
 
+    if (map.containsKey("error")) {
+      LOG.debug("check_token returned error: " + map.get("error"));
+      throw new InvalidTokenException(accessToken);
+    }
+    Assert.state(map.containsKey("client_id"), "Client id must be present in response from auth server");
+    return accessTokenConverter.extractAuthentication(map);
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    throw new UnsupportedOperationException("Not supported: read access token");
   }
 
   @Override
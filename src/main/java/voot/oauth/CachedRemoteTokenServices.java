@@ -7,82 +7,173 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
-
-import java.util.Map;
+import voot.util.SingleFlight;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import static java.util.concurrent.Executors.newScheduledThreadPool;
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
-
 public class CachedRemoteTokenServices implements DecisionResourceServerTokenServices {
 
   private static final Logger LOG = LoggerFactory.getLogger(CachedRemoteTokenServices.class);
 
-  private final Map<String, CachedOAuth2Authentication> authentications = new ConcurrentHashMap<>();
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final TokenCacheStore store;
 
   private final long duration;
 
   private final DecisionResourceServerTokenServices tokenServices;
 
-  public CachedRemoteTokenServices(DecisionResourceServerTokenServices tokenServices, long durationMilliseconds, long expiryIntervalCheckMilliseconds) {
+  private final InvalidTokenCache invalidTokens;
+
+  private final SingleFlight<String, OAuth2Authentication> introspections = new SingleFlight<>();
+
+  private final long refreshAhead;
+
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+  private final ThreadPoolExecutor refreshExecutor;
+
+  public CachedRemoteTokenServices(DecisionResourceServerTokenServices tokenServices, long durationMilliseconds, TokenCacheStore store) {
+    this(tokenServices, durationMilliseconds, 0L, store, InvalidTokenCache.disabled());
+  }
+
+  public CachedRemoteTokenServices(DecisionResourceServerTokenServices tokenServices, long durationMilliseconds, long refreshAheadMilliseconds,
+                                   TokenCacheStore store, InvalidTokenCache invalidTokens) {
     this.tokenServices = tokenServices;
     Assert.isTrue(durationMilliseconds > 0 && durationMilliseconds < 1000 * 60 * 61);
-    Assert.isTrue(expiryIntervalCheckMilliseconds > 0 && expiryIntervalCheckMilliseconds < 1000 * 60 * 61);
+    Assert.isTrue(refreshAheadMilliseconds >= 0 && refreshAheadMilliseconds < durationMilliseconds, "refreshAhead must be shorter than the duration");
     this.duration = durationMilliseconds;
-    newSingleThreadScheduledExecutor().scheduleAtFixedRate(this::clearExpiredAuthentications, 0, expiryIntervalCheckMilliseconds, TimeUnit.MILLISECONDS);
+    this.refreshAhead = refreshAheadMilliseconds;
+    this.refreshExecutor = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1000), runnable -> {
+      Thread thread = new Thread(runnable, "token-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.refreshExecutor.allowCoreThreadTimeOut(true);
+    this.store = store;
+    this.invalidTokens = invalidTokens;
   }
 
   @Override
   public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
-    CachedOAuth2Authentication cachedAuthentication = authentications.get(accessToken);
-    long now = System.currentTimeMillis();
-    if (cachedAuthentication != null && cachedAuthentication.timestamp + duration > now) {
-      LOG.debug("Returning OAuth2Authentication from cache {}", cachedAuthentication.authentication);
-      return cachedAuthentication.authentication;
+    String tokenDigest = digest(accessToken);
+    Optional<TokenCacheStore.Entry> cachedAuthentication = store.get(tokenDigest);
+    if (cachedAuthentication.isPresent()) {
+      OAuth2Authentication oAuth2Authentication = cachedAuthentication.get().authentication();
+      LOG.debug("Returning OAuth2Authentication from cache {}", oAuth2Authentication);
+      refreshAhead(accessToken, tokenDigest, cachedAuthentication.get());
+      return oAuth2Authentication;
     }
-    OAuth2Authentication oAuth2Authentication = tokenServices.loadAuthentication(accessToken);
-    //will not happen, but just to ensure this does not cause memory problems
-    int size = authentications.size();
-    if (size < 10000) {
-      LOG.debug("Putting OAuth2Authentication in cache {} current size: {}", oAuth2Authentication, size + 1);
-      authentications.put(accessToken, new CachedOAuth2Authentication(now, oAuth2Authentication));
+    if (invalidTokens.contains(tokenDigest)) {
+      LOG.debug("Token {} was found invalid recently", tokenDigest);
+      throw new InvalidTokenException(accessToken);
     }
-    return oAuth2Authentication;
+    //a burst of calls with a fresh token shares one introspection - and its InvalidTokenException
+    return introspections.execute(tokenDigest, () -> introspect(accessToken, tokenDigest));
   }
 
-  @Override
-  public OAuth2AccessToken readAccessToken(String accessToken) {
-    return tokenServices.readAccessToken(accessToken);
+  private OAuth2Authentication introspect(String accessToken, String tokenDigest) {
+    OAuth2Authentication oAuth2Authentication;
+    try {
+      oAuth2Authentication = tokenServices.loadAuthentication(accessToken);
+    } catch (InvalidTokenException e) {
+      invalidTokens.put(tokenDigest);
+      throw e;
+    }
+    cache(tokenDigest, oAuth2Authentication);
+    return oAuth2Authentication;
   }
 
-  private void clearExpiredAuthentications() {
+  /*
+   * A token used within refreshAhead of the expiry of its entry is introspected again in the background, so a token
+   * in use does not drop out of the cache and every entry is still validated at least once per duration. An entry that
+   * ends with the expiry of the token itself is not refreshed, that can not be extended.
+   */
+  private void refreshAhead(String accessToken, String tokenDigest, TokenCacheStore.Entry entry) {
+    if (refreshAhead == 0 || entry.expiresAtMillis - System.currentTimeMillis() > refreshAhead) {
+      return;
+    }
+    if (entry.tokenExpiresAtMillis().filter(exp -> exp <= entry.expiresAtMillis).isPresent()) {
+      return;
+    }
+    if (!refreshing.add(tokenDigest)) {
+      return;
+    }
     try {
-      long now = System.currentTimeMillis();
-      authentications.forEach((accessToken, authentication) -> {
-        if (authentication.timestamp + duration < now) {
-          LOG.debug("Removing expired authentication with access token {}", accessToken);
-          authentications.remove(accessToken);
+      refreshExecutor.execute(() -> {
+        try {
+          refresh(accessToken, tokenDigest);
+        } finally {
+          refreshing.remove(tokenDigest);
         }
       });
-    } catch (Throwable t) {
-      LOG.error("Error in clearExpiredAuthentications", t);
-      //we don't rethrow as this would stop the subsequent scheduled clearing
+    } catch (RejectedExecutionException e) {
+      //the entry expires and the next call introspects synchronously
+      refreshing.remove(tokenDigest);
+    }
+  }
+
+  private void refresh(String accessToken, String tokenDigest) {
+    try {
+      cache(tokenDigest, tokenServices.loadAuthentication(accessToken));
+      LOG.debug("Refreshed token {}", tokenDigest);
+    } catch (InvalidTokenException e) {
+      LOG.info("Token {} is no longer valid, removing it from the cache", tokenDigest);
+      store.remove(tokenDigest);
+      invalidTokens.put(tokenDigest);
+    } catch (RuntimeException e) {
+      LOG.warn("Unable to refresh token {}: {}", tokenDigest, e.toString());
+    }
+  }
+
+  private void cache(String tokenDigest, OAuth2Authentication oAuth2Authentication) {
+    //never cached beyond the expiry of the token itself
+    long expiresAtMillis = Math.min(System.currentTimeMillis() + duration,
+      ExpiringAccessTokenConverter.expiresAtMillis(oAuth2Authentication).orElse(Long.MAX_VALUE));
+    try {
+      store.put(tokenDigest, new TokenCacheStore.Entry(oAuth2Authentication, expiresAtMillis));
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unable to cache token {}: {}", tokenDigest, e.getMessage());
     }
   }
 
+  SingleFlight<String, OAuth2Authentication> getIntrospections() {
+    return introspections;
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    return tokenServices.readAccessToken(accessToken);
+  }
+
   @Override
   public boolean canHandle(String accessToken) {
     return tokenServices.canHandle(accessToken);
   }
 
-  private class CachedOAuth2Authentication {
-    long timestamp;
-    OAuth2Authentication authentication;
-
-    public CachedOAuth2Authentication(long timestamp, OAuth2Authentication authentication) {
-      this.timestamp = timestamp;
-      this.authentication = authentication;
+  /*
+   * The hex SHA-256 of the token, so the tokens themselves are not kept in - possibly shared - caches
+   */
+  static String digest(String accessToken) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(accessToken.getBytes(StandardCharsets.UTF_8));
+      char[] hex = new char[digest.length * 2];
+      for (int i = 0; i < digest.length; i++) {
+        hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+        hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+      }
+      return new String(hex);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
     }
   }
 
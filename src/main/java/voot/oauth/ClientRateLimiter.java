@@ -0,0 +1,82 @@
+package voot.oauth;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket per client - see {@link RateLimitedTokenServices} for how clients are identified: a client may have
+ * burst introspections at once and permitsPerSecond on average, the introspections above that budget are shed. The
+ * buckets of at most maxClients clients are kept, a client whose bucket is evicted starts with a full one. A
+ * permitsPerSecond of 0 disables it.
+ */
+public class ClientRateLimiter implements PublicMetrics {
+
+  private final double permitsPerNano;
+  private final int burst;
+  private final int maxClients;
+  private final LinkedHashMap<String, Bucket> buckets;
+
+  private long permitted;
+  private long rejected;
+
+  public ClientRateLimiter(double permitsPerSecond, int burst, int maxClients) {
+    Assert.isTrue(permitsPerSecond >= 0, "permitsPerSecond must not be negative");
+    Assert.isTrue(burst > 0, "burst must be positive");
+    Assert.isTrue(maxClients > 0, "maxClients must be positive");
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.burst = burst;
+    this.maxClients = maxClients;
+    this.buckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+        return size() > ClientRateLimiter.this.maxClients;
+      }
+    };
+  }
+
+  public static ClientRateLimiter disabled() {
+    return new ClientRateLimiter(0, 1, 1);
+  }
+
+  public synchronized boolean tryAcquire(String clientId) {
+    if (permitsPerNano == 0) {
+      return true;
+    }
+    long now = System.nanoTime();
+    Bucket bucket = buckets.computeIfAbsent(clientId, key -> new Bucket(burst, now));
+    bucket.permits = Math.min(burst, bucket.permits + (now - bucket.refilledAt) * permitsPerNano);
+    bucket.refilledAt = now;
+    if (bucket.permits < 1) {
+      rejected++;
+      return false;
+    }
+    bucket.permits--;
+    permitted++;
+    return true;
+  }
+
+  @Override
+  public synchronized Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+      new Metric<>("checkToken.rateLimit.clients", buckets.size()),
+      new Metric<>("checkToken.rateLimit.permitted", permitted),
+      new Metric<>("checkToken.rateLimit.rejected", rejected));
+  }
+
+  private static class Bucket {
+    private double permits;
+    private long refilledAt;
+
+    private Bucket(double permits, long refilledAt) {
+      this.permits = permits;
+      this.refilledAt = refilledAt;
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package voot.oauth;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Compact binary form of a {@link TokenCacheStore.Entry}, field by field. The expiry of the entry itself is not part of
+ * it: stores keep that where they can query it.
+ */
+final class EntryCodec {
+
+  private static final byte VERSION = 3;
+
+  private EntryCodec() {
+  }
+
+  static byte[] encode(TokenCacheStore.Entry entry) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION);
+      writeString(out, entry.clientId);
+      writeString(out, entry.grantType);
+      writeStrings(out, entry.scopes);
+      writeStrings(out, entry.resourceIds);
+      writeStrings(out, entry.authorities);
+      out.writeLong(entry.tokenExpiresAtMillis);
+      out.writeByte(entry.userType);
+      writeString(out, entry.principal);
+      writeString(out, entry.schacHome);
+      writeString(out, entry.credentials);
+      writeStrings(out, entry.userAuthorities);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static TokenCacheStore.Entry decode(byte[] encoded, long expiresAtMillis) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+      byte version = in.readByte();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unknown version " + version);
+      }
+      return new TokenCacheStore.Entry(readString(in), readString(in), readStrings(in), readStrings(in), readStrings(in),
+        in.readLong(), in.readByte(), readString(in), readString(in), readString(in), readStrings(in), expiresAtMillis);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Corrupt entry", e);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+    out.writeShort(strings.length);
+    for (String string : strings) {
+      writeString(out, string);
+    }
+  }
+
+  private static String[] readStrings(DataInputStream in) throws IOException {
+    String[] strings = new String[in.readShort()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = readString(in);
+    }
+    return strings;
+  }
+
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    out.writeBoolean(string != null);
+    if (string != null) {
+      out.writeUTF(string);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -0,0 +1,37 @@
+package voot.oauth;
+
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps the expiry - the exp claim in seconds - of an introspected token with its authentication, so that it is not
+ * cached any longer than the token is valid
+ */
+public class ExpiringAccessTokenConverter extends DefaultAccessTokenConverter {
+
+  static final String EXPIRES_AT_MILLIS = "expires_at_millis";
+
+  @Override
+  public OAuth2Authentication extractAuthentication(Map<String, ?> map) {
+    OAuth2Authentication authentication = super.extractAuthentication(map);
+    Object exp = map.get(EXP);
+    if (!(exp instanceof Number)) {
+      return authentication;
+    }
+    OAuth2Request request = authentication.getOAuth2Request();
+    Map<String, Serializable> extensions = Collections.singletonMap(EXPIRES_AT_MILLIS, ((Number) exp).longValue() * 1000L);
+    OAuth2Request expiringRequest = new OAuth2Request(request.getRequestParameters(), request.getClientId(), request.getAuthorities(),
+      request.isApproved(), request.getScope(), request.getResourceIds(), request.getRedirectUri(), request.getResponseTypes(), extensions);
+    return new OAuth2Authentication(expiringRequest, authentication.getUserAuthentication());
+  }
+
+  public static Optional<Long> expiresAtMillis(OAuth2Authentication authentication) {
+    return Optional.ofNullable((Long) authentication.getOAuth2Request().getExtensions().get(EXPIRES_AT_MILLIS));
+  }
+}
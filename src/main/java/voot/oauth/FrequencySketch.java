@@ -0,0 +1,75 @@
+package voot.oauth;
+
+/**
+ * Count-min sketch of 4-bit counters estimating how often a key was seen recently. All counters are halved after
+ * 10 * maximumSize increments, so the estimate follows changes in popularity.
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final long[] table;
+  private final int tableMask;
+  private final int sampleSize;
+  private int additions;
+
+  FrequencySketch(int maximumSize) {
+    int size = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+    this.table = new long[size];
+    this.tableMask = size - 1;
+    this.sampleSize = 10 * Math.max(maximumSize, 1);
+  }
+
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int frequency = 15;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long h = mix(hash, i);
+      frequency = Math.min(frequency, (int) ((table[index(h)] >>> shift(h)) & 0xfL));
+    }
+    return frequency;
+  }
+
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      long h = mix(hash, i);
+      int index = index(h);
+      int shift = shift(h);
+      if (((table[index] >>> shift) & 0xfL) != 0xfL) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      reset();
+    }
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions /= 2;
+  }
+
+  private long mix(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    return h + (h >>> 32);
+  }
+
+  private int index(long h) {
+    return (int) h & tableMask;
+  }
+
+  private int shift(long h) {
+    return (int) ((h >>> 40) & 15L) << 2;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
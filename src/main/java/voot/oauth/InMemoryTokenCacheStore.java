@@ -0,0 +1,171 @@
+package voot.oauth;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Keeps at most maximumSize entries of this node on the heap.
+ *
+ * New entries enter a small LRU window. Whoever drops out of the window only replaces the least recently used entry of
+ * the main region when it has been asked for more often according to a {@link FrequencySketch}, so a burst of
+ * one-off tokens can not push out the tokens that are used all the time.
+ *
+ * Entries are also filed in a timing wheel of one-second buckets by their expiry. Every call removes the expired
+ * entries of the buckets that passed since the previous call, instead of scanning all entries.
+ */
+public class InMemoryTokenCacheStore implements TokenCacheStore, PublicMetrics {
+
+  private static final long TICK_MILLIS = 1000L;
+  /*
+   * Spans more than the maximum cache duration of 61 minutes, so no bucket holds entries of different rounds
+   */
+  private static final int WHEEL_SIZE = 4096;
+
+  private final int windowSize;
+  private final int mainSize;
+  private final LinkedHashMap<String, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<String, Node> main = new LinkedHashMap<>(16, 0.75f, true);
+  private final FrequencySketch sketch;
+  private final List<Set<Node>> wheel = new ArrayList<>(WHEEL_SIZE);
+  private long currentTick = -1;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+
+  public InMemoryTokenCacheStore(int maximumSize) {
+    Assert.isTrue(maximumSize > 1, "maximumSize must be larger than 1");
+    this.windowSize = Math.max(1, maximumSize / 100);
+    this.mainSize = maximumSize - windowSize;
+    this.sketch = new FrequencySketch(maximumSize);
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel.add(new HashSet<>());
+    }
+  }
+
+  @Override
+  public synchronized Optional<Entry> get(String tokenDigest) {
+    long now = System.currentTimeMillis();
+    expire(now);
+    sketch.increment(tokenDigest);
+    Node node = window.get(tokenDigest);
+    if (node == null) {
+      node = main.get(tokenDigest);
+    }
+    if (node == null || node.entry.isExpired(now)) {
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    return Optional.of(node.entry);
+  }
+
+  @Override
+  public synchronized void put(String tokenDigest, Entry entry) {
+    long now = System.currentTimeMillis();
+    expire(now);
+    remove(tokenDigest);
+    if (entry.isExpired(now)) {
+      return;
+    }
+    Node node = new Node(tokenDigest, entry);
+    window.put(tokenDigest, node);
+    bucket(node).add(node);
+    if (window.size() > windowSize) {
+      admit(window.remove(eldest(window).key));
+    }
+  }
+
+  public synchronized int size() {
+    return window.size() + main.size();
+  }
+
+  @Override
+  public synchronized Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+      new Metric<>("checkToken.cache.size", size()),
+      new Metric<>("checkToken.cache.hits", hits),
+      new Metric<>("checkToken.cache.misses", misses),
+      new Metric<>("checkToken.cache.evictions", evictions),
+      new Metric<>("checkToken.cache.expirations", expirations));
+  }
+
+  private void admit(Node candidate) {
+    if (main.size() < mainSize) {
+      main.put(candidate.key, candidate);
+      return;
+    }
+    Node victim = eldest(main);
+    if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+      main.remove(victim.key);
+      bucket(victim).remove(victim);
+      main.put(candidate.key, candidate);
+    } else {
+      bucket(candidate).remove(candidate);
+    }
+    evictions++;
+  }
+
+  @Override
+  public synchronized void remove(String tokenDigest) {
+    Node node = window.remove(tokenDigest);
+    if (node == null) {
+      node = main.remove(tokenDigest);
+    }
+    if (node != null) {
+      bucket(node).remove(node);
+    }
+  }
+
+  /*
+   * The bucket of the current tick is visited again on the next call, it may hold entries that expire later this tick
+   */
+  private void expire(long now) {
+    long nowTick = now / TICK_MILLIS;
+    long fromTick = currentTick < 0 ? nowTick : Math.max(currentTick, nowTick - WHEEL_SIZE + 1);
+    for (long tick = fromTick; tick <= nowTick; tick++) {
+      Iterator<Node> iterator = wheel.get((int) (tick & (WHEEL_SIZE - 1))).iterator();
+      while (iterator.hasNext()) {
+        Node node = iterator.next();
+        if (node.entry.isExpired(now)) {
+          iterator.remove();
+          if (window.remove(node.key) == null) {
+            main.remove(node.key);
+          }
+          expirations++;
+        }
+      }
+    }
+    currentTick = nowTick;
+  }
+
+  private Set<Node> bucket(Node node) {
+    return wheel.get((int) ((node.entry.expiresAtMillis / TICK_MILLIS) & (WHEEL_SIZE - 1)));
+  }
+
+  private static Node eldest(LinkedHashMap<String, Node> region) {
+    return region.values().iterator().next();
+  }
+
+  private static class Node {
+    final String key;
+    final Entry entry;
+
+    Node(String key, Entry entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package voot.oauth;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pool of keep-alive connections shared by the introspections of all the token services, so that checking a token
+ * does not cost a TCP - and TLS - handshake. Waiting for a pooled connection is bounded by the connect timeout.
+ */
+public class IntrospectionHttpClient implements PublicMetrics {
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+  private final HttpComponentsClientHttpRequestFactory requestFactory;
+
+  public IntrospectionHttpClient(int maxConnections, int connectTimeoutMillis, int readTimeoutMillis, long idleTimeoutMillis) {
+    Assert.isTrue(maxConnections > 0, "maxConnections must be positive");
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    //all connections go to one or two authorization servers
+    this.connectionManager.setMaxTotal(maxConnections);
+    this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+    this.httpClient = HttpClients.custom()
+      .setConnectionManager(connectionManager)
+      //introspection is a read, a request on a connection the server has closed in the meantime is safe to retry
+      .setRetryHandler(new DefaultHttpRequestRetryHandler(1, true))
+      .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+      .evictExpiredConnections()
+      .build();
+    this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    this.requestFactory.setConnectTimeout(connectTimeoutMillis);
+    this.requestFactory.setConnectionRequestTimeout(connectTimeoutMillis);
+    this.requestFactory.setReadTimeout(readTimeoutMillis);
+  }
+
+  public RestTemplate restTemplate() {
+    return new RestTemplate(requestFactory);
+  }
+
+  public void close() throws IOException {
+    httpClient.close();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    PoolStats stats = connectionManager.getTotalStats();
+    return Arrays.asList(
+      new Metric<>("checkToken.pool.leased", stats.getLeased()),
+      new Metric<>("checkToken.pool.available", stats.getAvailable()),
+      new Metric<>("checkToken.pool.pending", stats.getPending()),
+      new Metric<>("checkToken.pool.max", stats.getMax()));
+  }
+}
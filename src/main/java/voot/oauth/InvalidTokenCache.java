@@ -0,0 +1,49 @@
+package voot.oauth;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.util.Assert;
+import voot.util.ExpiringSet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers for ttlMillis the digests of the tokens that were found invalid, so a client retrying with a revoked or
+ * expired token does not cause an introspection per request. Bounded to maximumSize, the least recently used digests
+ * are evicted first. A ttlMillis of 0 disables it.
+ */
+public class InvalidTokenCache implements PublicMetrics {
+
+  private final ExpiringSet<String> digests;
+  private final AtomicLong hits = new AtomicLong();
+
+  public InvalidTokenCache(int maximumSize, long ttlMillis) {
+    Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+    this.digests = new ExpiringSet<>(maximumSize, ttlMillis);
+  }
+
+  public static InvalidTokenCache disabled() {
+    return new InvalidTokenCache(1, 0L);
+  }
+
+  public boolean contains(String tokenDigest) {
+    if (!digests.contains(tokenDigest)) {
+      return false;
+    }
+    hits.incrementAndGet();
+    return true;
+  }
+
+  public void put(String tokenDigest) {
+    digests.add(tokenDigest);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+      new Metric<>("checkToken.invalidCache.size", digests.size()),
+      new Metric<>("checkToken.invalidCache.hits", hits.get()));
+  }
+}
@@ -0,0 +1,111 @@
+package voot.oauth;
+
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * Shares the entries between all nodes through a database table, created by {@link #migrate}. The entries are
+ * stored in the compact form of {@link EntryCodec}. Every node checks the expiry on read and periodically
+ * deletes the expired rows. The database being unavailable is treated as a miss, the token is then introspected.
+ */
+public class JdbcTokenCacheStore implements TokenCacheStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JdbcTokenCacheStore.class);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final String selectSql;
+  private final String updateSql;
+  private final String insertSql;
+  private final String deleteSql;
+  private final String deleteExpiredSql;
+
+  public JdbcTokenCacheStore(JdbcTemplate jdbcTemplate, String table, long expiryIntervalCheckMilliseconds) {
+    Assert.isTrue(table.matches("[A-Za-z0-9_.]+"), "Illegal table name " + table);
+    Assert.isTrue(expiryIntervalCheckMilliseconds > 0 && expiryIntervalCheckMilliseconds < 1000 * 60 * 61);
+    this.jdbcTemplate = jdbcTemplate;
+    this.selectSql = "select authentication, expires_at from " + table + " where token_digest = ? and expires_at > ?";
+    this.updateSql = "update " + table + " set authentication = ?, expires_at = ? where token_digest = ?";
+    this.insertSql = "insert into " + table + " (token_digest, authentication, expires_at) values (?, ?, ?)";
+    this.deleteSql = "delete from " + table + " where token_digest = ?";
+    this.deleteExpiredSql = "delete from " + table + " where expires_at <= ?";
+    newSingleThreadScheduledExecutor().scheduleAtFixedRate(this::deleteExpired, expiryIntervalCheckMilliseconds, expiryIntervalCheckMilliseconds, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates - and later on upgrades - the table with the migrations in db/token_cache. They are tracked in a schema
+   * history table of their own, so the database may be shared with other applications.
+   */
+  public static void migrate(DataSource dataSource, String table) {
+    Assert.isTrue(table.matches("[A-Za-z0-9_]+"), "Illegal table name " + table);
+    Flyway flyway = new Flyway();
+    flyway.setDataSource(dataSource);
+    flyway.setLocations("classpath:db/token_cache");
+    flyway.setTable(table + "_schema_version");
+    flyway.setPlaceholders(Collections.singletonMap("table", table));
+    //a database that is not empty gets our history table before the first migration
+    flyway.setBaselineVersionAsString("0");
+    flyway.setBaselineOnMigrate(true);
+    flyway.migrate();
+  }
+
+  @Override
+  public Optional<Entry> get(String tokenDigest) {
+    try {
+      List<Entry> entries = jdbcTemplate.query(selectSql, (rs, rowNum) ->
+        EntryCodec.decode(rs.getBytes(1), rs.getLong(2)), tokenDigest, System.currentTimeMillis());
+      return entries.stream().findFirst();
+    } catch (DataAccessException | IllegalArgumentException e) {
+      LOG.warn("Unable to read cached authentication {}: {}", tokenDigest, e.toString());
+      return Optional.empty();
+    }
+  }
+
+  /*
+   * Another node may insert the same token concurrently, they both have introspected it so either row will do
+   */
+  @Override
+  public void put(String tokenDigest, Entry entry) {
+    try {
+      byte[] authentication = EntryCodec.encode(entry);
+      if (jdbcTemplate.update(updateSql, authentication, entry.expiresAtMillis, tokenDigest) == 0) {
+        jdbcTemplate.update(insertSql, tokenDigest, authentication, entry.expiresAtMillis);
+      }
+    } catch (DuplicateKeyException e) {
+      LOG.debug("Authentication {} was cached concurrently by another node", tokenDigest);
+    } catch (DataAccessException | IllegalArgumentException e) {
+      LOG.warn("Unable to cache authentication {}: {}", tokenDigest, e.toString());
+    }
+  }
+
+  @Override
+  public void remove(String tokenDigest) {
+    try {
+      jdbcTemplate.update(deleteSql, tokenDigest);
+    } catch (DataAccessException e) {
+      LOG.warn("Unable to remove cached authentication {}: {}", tokenDigest, e.toString());
+    }
+  }
+
+  private void deleteExpired() {
+    try {
+      int deleted = jdbcTemplate.update(deleteExpiredSql, System.currentTimeMillis());
+      LOG.debug("Deleted {} expired authentications", deleted);
+    } catch (Throwable t) {
+      LOG.error("Error in deleteExpired", t);
+      //we don't rethrow as this would stop the subsequent scheduled deletes
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package voot.oauth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Optional;
+
+/**
+ * Charges the introspections of the decorated - remote - token services to the address of the caller, the only
+ * identity we know before the token is introspected: the claims of a token can not be trusted until then. A caller
+ * over its budget gets a 429, its token may well be valid. Introspections outside of a request, like the refreshes of
+ * {@link CachedRemoteTokenServices}, are not charged.
+ */
+public class RateLimitedTokenServices implements DecisionResourceServerTokenServices {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RateLimitedTokenServices.class);
+
+  private final DecisionResourceServerTokenServices tokenServices;
+  private final ClientRateLimiter rateLimiter;
+
+  public RateLimitedTokenServices(DecisionResourceServerTokenServices tokenServices, ClientRateLimiter rateLimiter) {
+    this.tokenServices = tokenServices;
+    this.rateLimiter = rateLimiter;
+  }
+
+  @Override
+  public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
+    Optional<String> caller = callerAddress();
+    if (caller.isPresent() && !rateLimiter.tryAcquire(caller.get())) {
+      LOG.warn("Caller {} exceeds its introspection budget", caller.get());
+      throw new OverBudgetException("Too many new tokens from " + caller.get());
+    }
+    return tokenServices.loadAuthentication(accessToken);
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    return tokenServices.readAccessToken(accessToken);
+  }
+
+  @Override
+  public boolean canHandle(String accessToken) {
+    return tokenServices.canHandle(accessToken);
+  }
+
+  private static Optional<String> callerAddress() {
+    RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+    return requestAttributes instanceof ServletRequestAttributes ?
+      Optional.ofNullable(((ServletRequestAttributes) requestAttributes).getRequest().getRemoteAddr()) :
+      Optional.empty();
+  }
+
+  public static class OverBudgetException extends OAuth2Exception {
+
+    public OverBudgetException(String msg) {
+      super(msg);
+    }
+
+    @Override
+    public String getOAuth2ErrorCode() {
+      return "temporarily_unavailable";
+    }
+
+    @Override
+    public int getHttpErrorCode() {
+      return HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package voot.oauth;
+
+import java.util.Optional;
+
+/**
+ * A store of this node in front of a store shared by all nodes. Entries found in the shared store are copied to the
+ * local one with their original expiry.
+ */
+public class TieredTokenCacheStore implements TokenCacheStore {
+
+  private final TokenCacheStore local;
+  private final TokenCacheStore shared;
+
+  public TieredTokenCacheStore(TokenCacheStore local, TokenCacheStore shared) {
+    this.local = local;
+    this.shared = shared;
+  }
+
+  @Override
+  public Optional<Entry> get(String tokenDigest) {
+    Optional<Entry> entry = local.get(tokenDigest);
+    if (entry.isPresent()) {
+      return entry;
+    }
+    entry = shared.get(tokenDigest);
+    entry.ifPresent(sharedEntry -> local.put(tokenDigest, sharedEntry));
+    return entry;
+  }
+
+  @Override
+  public void put(String tokenDigest, Entry entry) {
+    local.put(tokenDigest, entry);
+    shared.put(tokenDigest, entry);
+  }
+
+  @Override
+  public void remove(String tokenDigest) {
+    local.remove(tokenDigest);
+    shared.remove(tokenDigest);
+  }
+}
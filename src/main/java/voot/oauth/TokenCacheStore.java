@@ -0,0 +1,179 @@
+package voot.oauth;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Where {@link CachedRemoteTokenServices} keeps the authentications of introspected tokens. Entries are keyed by the
+ * digest of the token, never by the token itself, and are not returned after their expiresAtMillis.
+ */
+public interface TokenCacheStore {
+
+  Optional<Entry> get(String tokenDigest);
+
+  void put(String tokenDigest, Entry entry);
+
+  void remove(String tokenDigest);
+
+  /**
+   * Only the parts of an authentication that our token services fill - principal, schacHome, clientId, scopes,
+   * authorities and expiry - instead of the whole OAuth2Authentication graph. The scopes, authorities and audiences
+   * come from a small vocabulary, so all entries share their arrays. The authentication is rebuilt on every hit.
+   */
+  final class Entry {
+
+    private static final String[] NONE = new String[0];
+    private static final int MAX_CANONICAL_ARRAYS = 1024;
+    private static final ConcurrentMap<List<String>, String[]> CANONICAL_ARRAYS = new ConcurrentHashMap<>();
+
+    static final byte NO_USER = 0;
+    static final byte SCHAC_HOME_USER = 1;
+    static final byte CLIENT_CREDENTIALS_USER = 2;
+
+    /*
+     * Package-private for the EntryCodec, which writes exactly these fields
+     */
+    final String clientId;
+    final String grantType;
+    final String[] scopes;
+    final String[] resourceIds;
+    final String[] authorities;
+    final byte userType;
+    final String principal;
+    final String schacHome;
+    final String credentials;
+    final String[] userAuthorities;
+    /*
+     * The exp of the token itself, -1 when unknown
+     */
+    final long tokenExpiresAtMillis;
+    /*
+     * Wall-clock time, so it holds on every node sharing the store
+     */
+    public final long expiresAtMillis;
+
+    public Entry(OAuth2Authentication authentication, long expiresAtMillis) {
+      OAuth2Request request = authentication.getOAuth2Request();
+      Map<String, String> parameters = request.getRequestParameters();
+      this.clientId = intern(request.getClientId());
+      this.grantType = intern(parameters.get("grant_type"));
+      this.scopes = canonical(request.getScope());
+      this.resourceIds = canonical(request.getResourceIds());
+      this.authorities = canonical(AuthorityUtils.authorityListToSet(request.getAuthorities()));
+      this.tokenExpiresAtMillis = ExpiringAccessTokenConverter.expiresAtMillis(authentication).orElse(-1L);
+      this.expiresAtMillis = expiresAtMillis;
+
+      Authentication user = authentication.getUserAuthentication();
+      if (user == null) {
+        this.userType = NO_USER;
+        this.principal = null;
+        this.schacHome = null;
+        this.credentials = null;
+        this.userAuthorities = NONE;
+      } else if (user instanceof SchacHomeAuthentication && user.getPrincipal() instanceof String && user.getCredentials() instanceof String) {
+        this.userType = SCHAC_HOME_USER;
+        this.principal = (String) user.getPrincipal();
+        this.schacHome = intern(((SchacHomeAuthentication) user).getSchacHomeAuthentication());
+        this.credentials = intern((String) user.getCredentials());
+        this.userAuthorities = canonical(AuthorityUtils.authorityListToSet(user.getAuthorities()));
+      } else if (user instanceof ClientCredentialsAuthentication) {
+        this.userType = CLIENT_CREDENTIALS_USER;
+        this.principal = intern((String) user.getPrincipal());
+        this.schacHome = null;
+        this.credentials = null;
+        this.userAuthorities = canonical(AuthorityUtils.authorityListToSet(user.getAuthorities()));
+      } else {
+        throw new IllegalArgumentException("Unable to cache user authentication " + user.getClass());
+      }
+    }
+
+    Entry(String clientId, String grantType, String[] scopes, String[] resourceIds, String[] authorities, long tokenExpiresAtMillis,
+          byte userType, String principal, String schacHome, String credentials, String[] userAuthorities, long expiresAtMillis) {
+      if (userType != NO_USER && userType != SCHAC_HOME_USER && userType != CLIENT_CREDENTIALS_USER) {
+        throw new IllegalArgumentException("Unknown user authentication type " + userType);
+      }
+      this.clientId = intern(clientId);
+      this.grantType = intern(grantType);
+      this.scopes = canonical(Arrays.asList(scopes));
+      this.resourceIds = canonical(Arrays.asList(resourceIds));
+      this.authorities = canonical(Arrays.asList(authorities));
+      this.tokenExpiresAtMillis = tokenExpiresAtMillis;
+      this.userType = userType;
+      this.principal = userType == CLIENT_CREDENTIALS_USER ? intern(principal) : principal;
+      this.schacHome = intern(schacHome);
+      this.credentials = intern(credentials);
+      this.userAuthorities = canonical(Arrays.asList(userAuthorities));
+      this.expiresAtMillis = expiresAtMillis;
+    }
+
+    public OAuth2Authentication authentication() {
+      Map<String, String> parameters = new HashMap<>(4);
+      if (clientId != null) {
+        parameters.put("client_id", clientId);
+      }
+      if (grantType != null) {
+        parameters.put("grant_type", grantType);
+      }
+      Map<String, Serializable> extensions = tokenExpiresAtMillis == -1 ? null :
+        Collections.singletonMap(ExpiringAccessTokenConverter.EXPIRES_AT_MILLIS, tokenExpiresAtMillis);
+      OAuth2Request request = new OAuth2Request(parameters, clientId, AuthorityUtils.createAuthorityList(authorities), true,
+        set(scopes), set(resourceIds), null, null, extensions);
+      return new OAuth2Authentication(request, user());
+    }
+
+    public Optional<Long> tokenExpiresAtMillis() {
+      return tokenExpiresAtMillis == -1 ? Optional.empty() : Optional.of(tokenExpiresAtMillis);
+    }
+
+    public boolean isExpired(long nowMillis) {
+      return expiresAtMillis <= nowMillis;
+    }
+
+    private Authentication user() {
+      List<GrantedAuthority> grantedAuthorities = AuthorityUtils.createAuthorityList(userAuthorities);
+      switch (userType) {
+        case SCHAC_HOME_USER:
+          return new SchacHomeAuthentication(schacHome, principal, credentials, grantedAuthorities);
+        case CLIENT_CREDENTIALS_USER:
+          return new ClientCredentialsAuthentication(principal, grantedAuthorities);
+        default:
+          return null;
+      }
+    }
+
+    private static Set<String> set(String[] strings) {
+      return new LinkedHashSet<>(Arrays.asList(strings));
+    }
+
+    private static String intern(String string) {
+      return string == null ? null : string.intern();
+    }
+
+    private static String[] canonical(Collection<String> strings) {
+      if (strings == null || strings.isEmpty()) {
+        return NONE;
+      }
+      String[] array = strings.stream().map(String::intern).toArray(String[]::new);
+      if (CANONICAL_ARRAYS.size() >= MAX_CANONICAL_ARRAYS) {
+        return array;
+      }
+      return CANONICAL_ARRAYS.computeIfAbsent(Arrays.asList(array), key -> array);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+package voot.oidc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+
+/**
+ * The RSA signing keys of the OIDC server, fetched from its JWKS endpoint and refreshed in the background every
+ * refreshIntervalMillis. A key id that is not known triggers an early refresh - at most once per minRefreshIntervalMillis
+ * - as the keys may have been rotated. When a refresh fails the keys fetched before are kept.
+ */
+public class JsonWebKeySet {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JsonWebKeySet.class);
+
+  private final String jwksUrl;
+  private final long minRefreshIntervalMillis;
+  private final RestTemplate restTemplate;
+  private final ScheduledExecutorService scheduler = newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "jwks-refresh");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final AtomicLong lastRefresh = new AtomicLong();
+  private volatile Map<String, RSAPublicKey> keys = Collections.emptyMap();
+
+  public JsonWebKeySet(String jwksUrl, long refreshIntervalMillis, long minRefreshIntervalMillis, int timeoutMillis) {
+    Assert.isTrue(refreshIntervalMillis > 0, "refreshIntervalMillis must be positive");
+    this.jwksUrl = jwksUrl;
+    this.minRefreshIntervalMillis = minRefreshIntervalMillis;
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(timeoutMillis);
+    requestFactory.setReadTimeout(timeoutMillis);
+    this.restTemplate = new RestTemplate(requestFactory);
+    //an unreachable OIDC server must not prevent us from starting, until then all tokens are introspected
+    refresh();
+    scheduler.scheduleWithFixedDelay(this::refresh, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param keyId the kid of the token, when absent the only key of the set is used
+   */
+  public Optional<RSAPublicKey> getKey(String keyId) {
+    Map<String, RSAPublicKey> current = keys;
+    if (keyId == null) {
+      return current.size() == 1 ? Optional.of(current.values().iterator().next()) : Optional.empty();
+    }
+    RSAPublicKey key = current.get(keyId);
+    if (key == null) {
+      refreshSoon();
+    }
+    return Optional.ofNullable(key);
+  }
+
+  public int size() {
+    return keys.size();
+  }
+
+  void refreshSoon() {
+    long last = lastRefresh.get();
+    if (System.currentTimeMillis() - last >= minRefreshIntervalMillis && lastRefresh.compareAndSet(last, System.currentTimeMillis())) {
+      scheduler.execute(this::refresh);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  synchronized void refresh() {
+    lastRefresh.set(System.currentTimeMillis());
+    try {
+      Map<String, Object> jwks = restTemplate.getForObject(jwksUrl, Map.class);
+      keys = parse((List<Map<String, Object>>) jwks.get("keys"));
+      LOG.debug("Fetched {} signing keys from {}", keys.size(), jwksUrl);
+    } catch (RuntimeException e) {
+      //we don't rethrow as this would stop the subsequent scheduled refreshes
+      LOG.warn("Unable to fetch the signing keys from {}, keeping the {} keys we have: {}", jwksUrl, keys.size(), e.toString());
+    }
+  }
+
+  static Map<String, RSAPublicKey> parse(List<Map<String, Object>> jwks) {
+    Assert.notNull(jwks, "No keys in the JWKS");
+    Map<String, RSAPublicKey> parsed = new HashMap<>();
+    jwks.stream()
+      .filter(jwk -> "RSA".equals(jwk.get("kty")) && !"enc".equals(jwk.get("use")))
+      //a kid that is not a string can not match the kid of a token
+      .filter(jwk -> !jwk.containsKey("kid") || jwk.get("kid") instanceof String)
+      .forEach(jwk -> parsed.put(jwk.containsKey("kid") ? (String) jwk.get("kid") : "", rsaPublicKey(jwk)));
+    return Collections.unmodifiableMap(parsed);
+  }
+
+  private static RSAPublicKey rsaPublicKey(Map<String, Object> jwk) {
+    Base64.Decoder decoder = Base64.getUrlDecoder();
+    BigInteger modulus = new BigInteger(1, decoder.decode((String) jwk.get("n")));
+    BigInteger exponent = new BigInteger(1, decoder.decode((String) jwk.get("e")));
+    try {
+      return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalArgumentException("Invalid RSA key " + jwk.get("kid"), e);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package voot.oidc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.util.Assert;
+import voot.oauth.DecisionResourceServerTokenServices;
+import voot.oauth.ExpiringAccessTokenConverter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Validates the signed JWT access tokens of the OIDC server locally - against the keys of its {@link JsonWebKeySet} -
+ * instead of introspecting them. Tokens signed with a key that is not (yet) known are left to the
+ * {@link OidcRemoteTokenServices}, as are opaque tokens.
+ */
+public class JwtTokenServices implements DecisionResourceServerTokenServices {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JwtTokenServices.class);
+
+  private static final Map<String, String> ALGORITHMS = new HashMap<>();
+
+  static {
+    ALGORITHMS.put("RS256", "SHA256withRSA");
+    ALGORITHMS.put("RS384", "SHA384withRSA");
+    ALGORITHMS.put("RS512", "SHA512withRSA");
+  }
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final JsonWebKeySet keySet;
+  private final String issuer;
+  private final String audience;
+  private final long clockSkewSeconds;
+  private final DefaultAccessTokenConverter accessTokenConverter;
+
+  public JwtTokenServices(JsonWebKeySet keySet, String issuer, String audience, long clockSkewSeconds) {
+    Assert.hasText(issuer, "The issuer of the access tokens is required");
+    Assert.hasText(audience, "The audience of the access tokens is required");
+    this.keySet = keySet;
+    this.issuer = issuer;
+    this.audience = audience;
+    this.clockSkewSeconds = clockSkewSeconds;
+    this.accessTokenConverter = new ExpiringAccessTokenConverter();
+    this.accessTokenConverter.setUserTokenConverter(new OidcSchacHomeAwareUserAuthenticationConverter());
+  }
+
+  @Override
+  public boolean canHandle(String accessToken) {
+    return signingKey(accessToken).isPresent();
+  }
+
+  @Override
+  public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
+    String[] parts = accessToken.split("\\.");
+    if (parts.length != 3) {
+      throw new InvalidTokenException("Not a signed JWT: " + accessToken);
+    }
+    Map<String, Object> header = json(parts[0], accessToken);
+    RSAPublicKey key = signingKey(header).orElseThrow(() -> new InvalidTokenException("Unknown signing key: " + accessToken));
+    if (!verify(ALGORITHMS.get(header.get("alg")), key, parts)) {
+      LOG.warn("Invalid signature of access_token: " + accessToken);
+      throw new InvalidTokenException(accessToken);
+    }
+    Map<String, Object> claims = json(parts[1], accessToken);
+    validate(claims, accessToken);
+
+    //the claims the introspection endpoint returns
+    if (claims.containsKey("azp")) {
+      claims.putIfAbsent("client_id", claims.get("azp"));
+    }
+    Object scope = claims.get("scope");
+    if (scope instanceof String) {
+      claims.put("scope", Arrays.asList(((String) scope).split(" ")));
+    }
+    LOG.debug("Client {} has scopes {} for JWT {}", claims.get("client_id"), claims.get("scope"), claims);
+    return accessTokenConverter.extractAuthentication(claims);
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    return new DefaultOAuth2AccessToken(accessToken);
+  }
+
+  private void validate(Map<String, Object> claims, String accessToken) {
+    //the same keys may well sign the tokens of other issuers
+    if (!issuer.equals(claims.get("iss"))) {
+      LOG.warn("access_token of issuer {} instead of {}: {}", claims.get("iss"), issuer, accessToken);
+      throw new InvalidTokenException(accessToken);
+    }
+    long now = System.currentTimeMillis() / 1000L;
+    Object exp = claims.get("exp");
+    if (!(exp instanceof Number) || ((Number) exp).longValue() + clockSkewSeconds <= now) {
+      LOG.warn("Expired access_token: " + accessToken);
+      throw new InvalidTokenException(accessToken);
+    }
+    Object nbf = claims.get("nbf");
+    if (nbf instanceof Number && ((Number) nbf).longValue() - clockSkewSeconds > now) {
+      LOG.warn("Not yet valid access_token: " + accessToken);
+      throw new InvalidTokenException(accessToken);
+    }
+    Object aud = claims.get("aud");
+    boolean intended = aud instanceof Collection ? ((Collection<?>) aud).contains(audience) : audience.equals(aud);
+    if (!intended) {
+      LOG.warn("access_token for audience {} instead of {}: {}", aud, audience, accessToken);
+      throw new InvalidTokenException(accessToken);
+    }
+  }
+
+  private Optional<RSAPublicKey> signingKey(String accessToken) {
+    int firstDot = accessToken.indexOf('.');
+    if (firstDot < 0 || accessToken.indexOf('.', firstDot + 1) < 0) {
+      return Optional.empty();
+    }
+    try {
+      return signingKey(json(accessToken.substring(0, firstDot), accessToken));
+    } catch (InvalidTokenException e) {
+      return Optional.empty();
+    }
+  }
+
+  /*
+   * A kid that is not a string can not be in the key set
+   */
+  private Optional<RSAPublicKey> signingKey(Map<String, Object> header) {
+    Object kid = header.get("kid");
+    if (!ALGORITHMS.containsKey(header.get("alg")) || (kid != null && !(kid instanceof String))) {
+      return Optional.empty();
+    }
+    return keySet.getKey((String) kid);
+  }
+
+  private static boolean verify(String algorithm, RSAPublicKey key, String[] parts) {
+    try {
+      Signature signature = Signature.getInstance(algorithm);
+      signature.initVerify(key);
+      signature.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+      return signature.verify(Base64.getUrlDecoder().decode(parts[2]));
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Object> json(String part, String accessToken) {
+    Map<String, Object> json;
+    try {
+      json = objectMapper.readValue(Base64.getUrlDecoder().decode(part), Map.class);
+    } catch (IOException | IllegalArgumentException e) {
+      throw new InvalidTokenException("Malformed JWT: " + accessToken);
+    }
+    //a JSON null
+    if (json == null) {
+      throw new InvalidTokenException("Malformed JWT: " + accessToken);
+    }
+    return json;
+  }
+}
@@ -14,10 +14,10 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
 import org.springframework.util.Assert;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import voot.oauth.DecisionResourceServerTokenServices;
+import voot.oauth.ExpiringAccessTokenConverter;
 
 import java.nio.charset.Charset;
 import java.util.Arrays;
@@ -27,21 +27,26 @@ public class OidcRemoteTokenServices implements DecisionResourceServerTokenServi
 
   private static Logger LOG = LoggerFactory.getLogger(OidcRemoteTokenServices.class);
 
-  private String checkTokenEndpointUrl;
-  private String clientId;
-  private String clientSecret;
+  private final String introspectUriPrefix;
+  private final HttpEntity<Object> introspectionEntity;
 
   private AccessTokenConverter accessTokenConverter;
 
   private RestTemplate restTemplate;
 
   public OidcRemoteTokenServices(String checkTokenEndpointUrl, String clientId, String clientSecret) {
-    this.checkTokenEndpointUrl = checkTokenEndpointUrl;
-    this.clientId = clientId;
-    this.clientSecret = clientSecret;
+    this(checkTokenEndpointUrl, clientId, clientSecret, new RestTemplate());
+  }
+
+  public OidcRemoteTokenServices(String checkTokenEndpointUrl, String clientId, String clientSecret, RestTemplate restTemplate) {
+    //the token is the only part of the request that differs
+    this.introspectUriPrefix = UriComponentsBuilder.fromHttpUrl(checkTokenEndpointUrl)
+      .queryParam("token", "")
+      .build().toUriString();
+    this.introspectionEntity = new HttpEntity<>(headersForIntrospection(clientId, clientSecret));
 
-    this.restTemplate = new RestTemplate();
-    accessTokenConverter = new DefaultAccessTokenConverter();
+    this.restTemplate = restTemplate;
+    accessTokenConverter = new ExpiringAccessTokenConverter();
     ((DefaultAccessTokenConverter) accessTokenConverter).setUserTokenConverter(new OidcSchacHomeAwareUserAuthenticationConverter());
 
   }
@@ -49,12 +54,8 @@ public class OidcRemoteTokenServices implements DecisionResourceServerTokenServi
   @Override
   @SuppressWarnings("unchecked")
   public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException, InvalidTokenException {
-    String introspectUri = UriComponentsBuilder.fromHttpUrl(checkTokenEndpointUrl)
-      .queryParam("token", accessToken)
-      .build().toUriString();
-
-    HttpEntity<Object> entity = new HttpEntity<>(headersForIntrospection());
-    Map<String, Object> map = restTemplate.exchange(introspectUri, HttpMethod.GET, entity, Map.class).getBody();
+    String introspectUri = introspectUriPrefix + accessToken;
+    Map<String, Object> map = restTemplate.exchange(introspectUri, HttpMethod.GET, introspectionEntity, Map.class).getBody();
 
     if (map.containsKey("error")) {
       LOG.warn("introspect returned error: " + map.get("error"));
@@ -86,13 +87,13 @@ public class OidcRemoteTokenServices implements DecisionResourceServerTokenServi
     this.restTemplate = restTemplate;
   }
 
-  private MultiValueMap<String, String> headersForIntrospection() {
+  private static HttpHeaders headersForIntrospection(String clientId, String clientSecret) {
     HttpHeaders headers = new HttpHeaders();
     String basicAuthz = clientId + ":" + clientSecret;
     String authenticationCredentials = "Basic " + new String(Base64.encode(basicAuthz.getBytes(Charset.forName("UTF-8"))));
     headers.add("Authorization", authenticationCredentials);
     headers.add("Accept", "application/json");
-    return headers;
+    return HttpHeaders.readOnlyHttpHeaders(headers);
   }
 
   @Override
@@ -5,13 +5,16 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 import voot.util.UrnUtils;
 import voot.valueobject.Group;
@@ -33,6 +36,8 @@ public abstract class AbstractProvider implements Provider {
    */
   protected final RestTemplate restTemplate;
   protected final Configuration configuration;
+  protected final RequestConfig requestConfig;
+  protected final CredentialsProvider credentialsProvider;
   protected final String groupIdPrefix;
 
   /*
@@ -45,6 +50,10 @@ public abstract class AbstractProvider implements Provider {
 
   public AbstractProvider(Configuration configuration) {
     this.configuration = configuration;
+    this.requestConfig = RequestConfig.custom().setConnectionRequestTimeout(configuration.timeOutMillis).setConnectTimeout(configuration.timeOutMillis).setSocketTimeout(configuration.timeOutMillis).build();
+    BasicCredentialsProvider basicCredentialsProvider = new BasicCredentialsProvider();
+    basicCredentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(configuration.credentials.username, configuration.credentials.password));
+    this.credentialsProvider = basicCredentialsProvider;
     try {
       this.restTemplate = new RestTemplate(getRequestFactory());
     } catch (MalformedURLException e) {
@@ -54,6 +63,11 @@ public abstract class AbstractProvider implements Provider {
     LOG.debug("Initializing {} {}", getClass(), configuration);
   }
 
+  @Override
+  public Configuration getConfiguration() {
+    return configuration;
+  }
+
   @Override
   public boolean isExternalGroupProvider() {
     return !configuration.type.equals(GroupProviderType.GROUPER);
@@ -65,7 +79,12 @@ public abstract class AbstractProvider implements Provider {
     /*
      * For unqualified group names we do NOT query External Group Providers. This is a design decision discussed with SURFnet
      */
-    return matcher.matches() && matcher.group(1).equals(configuration.schacHomeOrganization);
+    return matcher.matches() && matcher.group(1).equalsIgnoreCase(configuration.schacHomeOrganization);
+  }
+
+  @Override
+  public Routing getGroupRouting() {
+    return Routing.SCHAC_HOME;
   }
 
   @Override
@@ -83,13 +102,22 @@ public abstract class AbstractProvider implements Provider {
 
   private ClientHttpRequestFactory getRequestFactory() throws MalformedURLException {
     HttpClientBuilder httpClientBuilder = HttpClientBuilder.create().evictExpiredConnections().evictIdleConnections(10l, TimeUnit.SECONDS);
-    BasicCredentialsProvider basicCredentialsProvider = new BasicCredentialsProvider();
-    basicCredentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(configuration.credentials.username, configuration.credentials.password));
-    httpClientBuilder.setDefaultCredentialsProvider(basicCredentialsProvider);
-    httpClientBuilder.setDefaultRequestConfig(RequestConfig.custom().setConnectionRequestTimeout(configuration.timeOutMillis).setConnectTimeout(configuration.timeOutMillis).setSocketTimeout(configuration.timeOutMillis).build());
+    httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
+    httpClientBuilder.setDefaultRequestConfig(requestConfig);
 
     CloseableHttpClient httpClient = httpClientBuilder.build();
-    return new PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(httpClient, configuration.url);
+    return new PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(httpClient, configuration.url, credentialsProvider, requestConfig);
+  }
+
+  /*
+   * The HttpAsyncClient is shared among Providers, the Provider specific credentials and timeouts are set per request
+   */
+  protected AsyncRestTemplate createAsyncRestTemplate(CloseableHttpAsyncClient httpAsyncClient) {
+    try {
+      return new AsyncRestTemplate(new PreemptiveAuthenticationHttpComponentsAsyncClientHttpRequestFactory(httpAsyncClient, configuration.url, credentialsProvider, requestConfig));
+    } catch (MalformedURLException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   @Override
@@ -0,0 +1,78 @@
+package voot.provider;
+
+import org.springframework.util.Assert;
+
+/**
+ * Concurrency limit that adapts to the observed latency using additive increase / multiplicative decrease. Calls that
+ * fail or take longer than latencyThresholdMillis are taken as a sign of congestion and shrink the limit, fast calls
+ * grow it again - but only when the current limit is actually being used.
+ */
+public class AimdLimiter {
+
+  private static final double BACKOFF_RATIO = 0.9;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+
+  private double limit;
+  private int inFlight;
+  private long rejected;
+
+  public AimdLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis) {
+    Assert.isTrue(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit, "Required: 0 < minLimit <= initialLimit <= maxLimit");
+    Assert.isTrue(latencyThresholdMillis > 0, "latencyThresholdMillis must be positive");
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThresholdNanos = latencyThresholdMillis * 1000 * 1000;
+  }
+
+  /**
+   * @return true if the call may proceed, in which case it must be followed by one of the release methods
+   */
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) {
+      rejected++;
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  public synchronized void onSuccess(long latencyNanos) {
+    if (latencyNanos > latencyThresholdNanos) {
+      limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    } else if (inFlight * 2 >= limit) {
+      limit = Math.min(maxLimit, limit + 1);
+    }
+    inFlight--;
+  }
+
+  public synchronized void onDropped() {
+    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    inFlight--;
+  }
+
+  public synchronized void onIgnored() {
+    inFlight--;
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  public static class LimitExceededException extends RuntimeException {
+    public LimitExceededException(String name, int limit) {
+      super(String.format("Concurrency limit of %s calls for %s exceeded", limit, name));
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package voot.provider;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+import voot.valueobject.Group;
+
+/**
+ * Provider that can query for memberships without blocking the calling thread. Invalid input is rejected immediately
+ * with an IllegalArgumentException, all other failures complete the returned CompletionStage exceptionally.
+ */
+public interface AsyncProvider extends Provider {
+
+  /**
+   *
+   * @return true if the async methods do not block, false if they merely wrap the blocking calls
+   */
+  default boolean isNonBlocking() {
+    return true;
+  }
+
+  /**
+   *
+   * @param uid the fully qualified uid
+   * @see Provider#getGroupMemberships(String)
+   */
+  CompletionStage<List<Group>> getGroupMembershipsAsync(String uid);
+
+  /**
+   *
+   * @param uid the fully qualified uid
+   * @param groupId the fully qualified uid groupId
+   * @see Provider#getGroupMembership(String, String)
+   */
+  CompletionStage<Optional<Group>> getGroupMembershipAsync(String uid, String groupId);
+
+}
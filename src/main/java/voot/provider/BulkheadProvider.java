@@ -0,0 +1,80 @@
+package voot.provider;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of concurrent calls to the decorated Provider with an {@link AimdLimiter}, so that a single slow
+ * provider can not claim all the threads querying providers. Calls over the limit are rejected immediately with a
+ * {@link AimdLimiter.LimitExceededException}.
+ */
+public class BulkheadProvider extends DelegatingProvider {
+
+  private final AimdLimiter limiter;
+
+  public BulkheadProvider(Provider delegate, AimdLimiter limiter) {
+    super(delegate);
+    this.limiter = limiter;
+  }
+
+  @Override
+  protected <T> T invoke(Supplier<T> call) {
+    acquire();
+    Optional<CallContext> callContext = CallContext.current();
+    long start = System.nanoTime();
+    try {
+      T result = call.get();
+      release(start, null, callContext);
+      return result;
+    } catch (RuntimeException e) {
+      release(start, e, callContext);
+      throw e;
+    }
+  }
+
+  @Override
+  protected <T> CompletionStage<T> invokeAsync(Supplier<CompletionStage<T>> call) {
+    return start(() -> {
+      acquire();
+      Optional<CallContext> callContext = CallContext.current();
+      long start = System.nanoTime();
+      return start(call).whenComplete((result, failure) -> release(start, unwrap(failure), callContext));
+    });
+  }
+
+  private void acquire() {
+    if (!limiter.tryAcquire()) {
+      throw new AimdLimiter.LimitExceededException(getConfiguration().name, limiter.getLimit());
+    }
+  }
+
+  private void release(long start, Throwable failure, Optional<CallContext> callContext) {
+    if (isTimedOut(callContext)) {
+      limiter.onDropped();
+    } else if (failure == null || isClientError(failure)) {
+      limiter.onSuccess(System.nanoTime() - start);
+    } else if (!isProviderFailure(failure) || isCancelled(failure, callContext)) {
+      //the provider has not been contacted, is not to blame or we are no longer interested in the answer
+      limiter.onIgnored();
+    } else {
+      limiter.onDropped();
+    }
+  }
+
+  public AimdLimiter getLimiter() {
+    return limiter;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    Collection<Metric<?>> metrics = super.metrics();
+    metrics.add(new Metric<>(metricName("bulkhead.limit"), limiter.getLimit()));
+    metrics.add(new Metric<>(metricName("bulkhead.inFlight"), limiter.getInFlight()));
+    metrics.add(new Metric<>(metricName("bulkhead.rejected"), limiter.getRejected()));
+    return metrics;
+  }
+}
@@ -0,0 +1,138 @@
+package voot.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The time budget of one (fanned-out) request to the Providers. The context is bound to the thread executing a
+ * Provider call, so that the HTTP and JDBC layers can shrink their timeouts to whatever is left of the budget and
+ * register a hook to abort their work when the call is no longer needed.
+ */
+public class CallContext {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CallContext.class);
+
+  private static final ThreadLocal<CallContext> CURRENT = new ThreadLocal<>();
+
+  private final long deadlineNanos;
+  private final List<Runnable> cancelHooks = new ArrayList<>();
+  private boolean cancelled;
+  private boolean timedOut;
+
+  public CallContext(long budgetMillis) {
+    this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+  }
+
+  private CallContext(CallContext parent) {
+    this.deadlineNanos = parent.deadlineNanos;
+  }
+
+  /**
+   * @return a context with the same deadline that can be cancelled independently of this one
+   */
+  public CallContext fork() {
+    return new CallContext(this);
+  }
+
+  public static Optional<CallContext> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /**
+   * @param configuredMillis the timeout configured for the Provider
+   * @return the configured timeout, capped by the remaining budget of the current context if there is one
+   */
+  public static int timeoutMillis(int configuredMillis) {
+    return current().map(context -> (int) Math.max(1L, Math.min(configuredMillis, context.remainingMillis()))).orElse(configuredMillis);
+  }
+
+  public long remainingMillis() {
+    return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+  }
+
+  public boolean isExpired() {
+    return deadlineNanos - System.nanoTime() <= 0;
+  }
+
+  /**
+   * @param hook aborts the ongoing work, runs immediately if the context is already cancelled
+   */
+  public void onCancel(Runnable hook) {
+    synchronized (cancelHooks) {
+      if (!cancelled) {
+        cancelHooks.add(hook);
+        return;
+      }
+    }
+    runQuietly(hook);
+  }
+
+  /**
+   * Cancels the call because we are no longer interested in its result, e.g. another Provider returned a sufficient one
+   */
+  public void cancel() {
+    cancel(false);
+  }
+
+  /**
+   * Cancels the call because the deadline has passed: unlike a plain cancel this is held against the Provider
+   */
+  public void timeOut() {
+    cancel(true);
+  }
+
+  private void cancel(boolean deadlinePassed) {
+    List<Runnable> hooks;
+    synchronized (cancelHooks) {
+      if (cancelled) {
+        return;
+      }
+      cancelled = true;
+      timedOut = deadlinePassed;
+      hooks = new ArrayList<>(cancelHooks);
+      cancelHooks.clear();
+    }
+    hooks.forEach(CallContext::runQuietly);
+  }
+
+  public boolean isCancelled() {
+    synchronized (cancelHooks) {
+      return cancelled;
+    }
+  }
+
+  public boolean isTimedOut() {
+    synchronized (cancelHooks) {
+      return timedOut;
+    }
+  }
+
+  private static void runQuietly(Runnable hook) {
+    try {
+      hook.run();
+    } catch (RuntimeException e) {
+      LOG.debug("Cancel hook failed", e);
+    }
+  }
+
+  public <T> T call(Supplier<T> supplier) {
+    CallContext previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return supplier.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+package voot.provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Classic closed / open / half-open circuit breaker. After failureThreshold consecutive failures the breaker opens and
+ * denies all calls for openMillis. Then at most halfOpenMaxCalls trial calls are let through: one success closes the
+ * breaker again, one failure re-opens it.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  public enum State {CLOSED, OPEN, HALF_OPEN}
+
+  private final String name;
+  private final int failureThreshold;
+  private final long openMillis;
+  private final int halfOpenMaxCalls;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private int halfOpenCalls;
+  private long openedAt;
+
+  public CircuitBreaker(String name, int failureThreshold, long openMillis, int halfOpenMaxCalls) {
+    Assert.isTrue(failureThreshold > 0, "failureThreshold must be positive");
+    Assert.isTrue(openMillis > 0, "openMillis must be positive");
+    Assert.isTrue(halfOpenMaxCalls > 0, "halfOpenMaxCalls must be positive");
+    this.name = name;
+    this.failureThreshold = failureThreshold;
+    this.openMillis = openMillis;
+    this.halfOpenMaxCalls = halfOpenMaxCalls;
+  }
+
+  /**
+   * @return true if the call may proceed. Every permitted call must be followed by exactly one of
+   * {@link #onSuccess()}, {@link #onFailure()} or {@link #onIgnored()}
+   */
+  public synchronized boolean tryAcquirePermission() {
+    if (state == State.OPEN) {
+      if (System.currentTimeMillis() - openedAt < openMillis) {
+        return false;
+      }
+      LOG.info("Circuit breaker for {} is half-open", name);
+      state = State.HALF_OPEN;
+      halfOpenCalls = 0;
+    }
+    if (state == State.HALF_OPEN) {
+      if (halfOpenCalls >= halfOpenMaxCalls) {
+        return false;
+      }
+      halfOpenCalls++;
+    }
+    return true;
+  }
+
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      LOG.info("Circuit breaker for {} is closed", name);
+    }
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+  }
+
+  public synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+      LOG.warn("Circuit breaker for {} is open after {} consecutive failures", name, consecutiveFailures);
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * The call did not tell us anything about the health of the provider (e.g. it was rejected because of bad input)
+   */
+  public synchronized void onIgnored() {
+    if (state == State.HALF_OPEN && halfOpenCalls > 0) {
+      halfOpenCalls--;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public static class OpenException extends RuntimeException {
+    public OpenException(String name) {
+      super(String.format("Circuit breaker for %s is open", name));
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package voot.provider;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * Fails fast with a {@link CircuitBreaker.OpenException} while the circuit breaker of the decorated Provider is open,
+ * instead of waiting for yet another timeout of a provider that is down.
+ */
+public class CircuitBreakingProvider extends DelegatingProvider {
+
+  private final CircuitBreaker circuitBreaker;
+
+  public CircuitBreakingProvider(Provider delegate, CircuitBreaker circuitBreaker) {
+    super(delegate);
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  @Override
+  protected <T> T invoke(Supplier<T> call) {
+    acquirePermission();
+    Optional<CallContext> callContext = CallContext.current();
+    try {
+      T result = call.get();
+      record(null, callContext);
+      return result;
+    } catch (RuntimeException e) {
+      record(e, callContext);
+      throw e;
+    }
+  }
+
+  @Override
+  protected <T> CompletionStage<T> invokeAsync(Supplier<CompletionStage<T>> call) {
+    return start(() -> {
+      acquirePermission();
+      Optional<CallContext> callContext = CallContext.current();
+      return start(call).whenComplete((result, failure) -> record(unwrap(failure), callContext));
+    });
+  }
+
+  private void acquirePermission() {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      throw new CircuitBreaker.OpenException(getConfiguration().name);
+    }
+  }
+
+  private void record(Throwable failure, Optional<CallContext> callContext) {
+    if (isTimedOut(callContext)) {
+      circuitBreaker.onFailure();
+    } else if (failure == null || isClientError(failure)) {
+      circuitBreaker.onSuccess();
+    } else if (!isProviderFailure(failure) || isCancelled(failure, callContext)) {
+      //invalid input or no longer interested, this says nothing about the health of the provider
+      circuitBreaker.onIgnored();
+    } else {
+      circuitBreaker.onFailure();
+    }
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    Collection<Metric<?>> metrics = super.metrics();
+    metrics.add(new Metric<>(metricName("circuitBreaker.state"), circuitBreaker.getState().ordinal()));
+    return metrics;
+  }
+}
@@ -0,0 +1,97 @@
+package voot.provider;
+
+import org.springframework.http.HttpHeaders;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The validators - ETag and Last-Modified - of the last successful response per URL together with its parsed body, so
+ * that a 304 Not Modified can be answered without downloading and parsing the body again. Bounded to maxEntries, the
+ * least recently used URLs are evicted first.
+ */
+class ConditionalGetCache<T> {
+
+  private final int maxEntries;
+
+  private final LinkedHashMap<URI, Entry<T>> entries;
+  private long notModified;
+  private long modified;
+
+  ConditionalGetCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<URI, Entry<T>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<URI, Entry<T>> eldest) {
+        return size() > ConditionalGetCache.this.maxEntries;
+      }
+    };
+  }
+
+  boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  synchronized Optional<Entry<T>> get(URI uri) {
+    return Optional.ofNullable(entries.get(uri));
+  }
+
+  synchronized T notModified(Entry<T> entry) {
+    notModified++;
+    return entry.value;
+  }
+
+  /*
+   * Responses without a validator can not be revalidated and are not worth keeping
+   */
+  synchronized void put(URI uri, HttpHeaders responseHeaders, T value) {
+    modified++;
+    if (!isEnabled()) {
+      return;
+    }
+    String eTag = responseHeaders.getETag();
+    long lastModified = responseHeaders.getLastModified();
+    if (eTag == null && lastModified == -1) {
+      entries.remove(uri);
+      return;
+    }
+    entries.put(uri, new Entry<>(eTag, lastModified, value));
+  }
+
+  synchronized long getNotModified() {
+    return notModified;
+  }
+
+  synchronized long getModified() {
+    return modified;
+  }
+
+  synchronized int getSize() {
+    return entries.size();
+  }
+
+  static class Entry<T> {
+    final String eTag;
+    final long lastModified;
+    final T value;
+
+    Entry(String eTag, long lastModified, T value) {
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.value = value;
+    }
+
+    HttpHeaders conditions() {
+      HttpHeaders headers = new HttpHeaders();
+      if (eTag != null) {
+        headers.setIfNoneMatch(eTag);
+      }
+      if (lastModified != -1) {
+        headers.setIfModifiedSince(lastModified);
+      }
+      return headers;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package voot.provider;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import voot.valueobject.Group;
+import voot.valueobject.Member;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Base class for Providers that decorate another Provider. All calls that reach out to the actual group provider are
+ * routed through {@link #invoke(Supplier)} or - for the non-blocking calls - {@link #invokeAsync(Supplier)}. Metrics of
+ * the decorators are prefixed with providers.[name].
+ */
+public abstract class DelegatingProvider implements AsyncProvider, PublicMetrics {
+
+  protected final Provider delegate;
+
+  public DelegatingProvider(Provider delegate) {
+    this.delegate = delegate;
+  }
+
+  protected <T> T invoke(Supplier<T> call) {
+    return call.get();
+  }
+
+  protected <T> CompletionStage<T> invokeAsync(Supplier<CompletionStage<T>> call) {
+    return start(call);
+  }
+
+  @Override
+  public boolean isNonBlocking() {
+    return delegate instanceof AsyncProvider && ((AsyncProvider) delegate).isNonBlocking();
+  }
+
+  @Override
+  public boolean shouldBeQueriedForMemberships(String schacHomeOrganization) {
+    return delegate.shouldBeQueriedForMemberships(schacHomeOrganization);
+  }
+
+  @Override
+  public boolean shouldBeQueriedForGroup(String groupId) {
+    return delegate.shouldBeQueriedForGroup(groupId);
+  }
+
+  @Override
+  public boolean shouldBeQueriedForMembers(String groupId) {
+    return delegate.shouldBeQueriedForMembers(groupId);
+  }
+
+  @Override
+  public Routing getMembershipRouting() {
+    return delegate.getMembershipRouting();
+  }
+
+  @Override
+  public Routing getGroupRouting() {
+    return delegate.getGroupRouting();
+  }
+
+  @Override
+  public Configuration getConfiguration() {
+    return delegate.getConfiguration();
+  }
+
+  @Override
+  public boolean isExternalGroupProvider() {
+    return delegate.isExternalGroupProvider();
+  }
+
+  @Override
+  public List<Group> getGroupMemberships(String uid) {
+    return invoke(() -> delegate.getGroupMemberships(uid));
+  }
+
+  @Override
+  public CompletionStage<List<Group>> getGroupMembershipsAsync(String uid) {
+    return invokeAsync(() -> delegate instanceof AsyncProvider ?
+      ((AsyncProvider) delegate).getGroupMembershipsAsync(uid) : completed(delegate.getGroupMemberships(uid)));
+  }
+
+  @Override
+  public List<Group> getAllGroups() {
+    return invoke(delegate::getAllGroups);
+  }
+
+  @Override
+  public Optional<Group> getGroupMembership(String uid, String groupId) {
+    return invoke(() -> delegate.getGroupMembership(uid, groupId));
+  }
+
+  @Override
+  public CompletionStage<Optional<Group>> getGroupMembershipAsync(String uid, String groupId) {
+    return invokeAsync(() -> delegate instanceof AsyncProvider ?
+      ((AsyncProvider) delegate).getGroupMembershipAsync(uid, groupId) : completed(delegate.getGroupMembership(uid, groupId)));
+  }
+
+  @Override
+  public List<Member> getMembers(String groupId) {
+    return invoke(() -> delegate.getMembers(groupId));
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return delegate instanceof PublicMetrics ? new ArrayList<>(((PublicMetrics) delegate).metrics()) : new ArrayList<>();
+  }
+
+  protected String metricName(String name) {
+    return String.format("providers.%s.%s", getConfiguration().name, name);
+  }
+
+  /*
+   * Exceptions thrown before the CompletionStage is returned are turned into a failed stage
+   */
+  protected static <T> CompletionStage<T> start(Supplier<CompletionStage<T>> call) {
+    try {
+      return call.get();
+    } catch (RuntimeException e) {
+      CompletableFuture<T> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
+  protected static Throwable unwrap(Throwable throwable) {
+    return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+  }
+
+  /*
+   * A call that outlived the deadline is held against the provider, whether it was aborted or still returned
+   */
+  protected static boolean isTimedOut(Optional<CallContext> callContext) {
+    return callContext.map(CallContext::isTimedOut).orElse(false);
+  }
+
+  /*
+   * A call that is aborted because we are no longer interested in its result - another provider returned a sufficient
+   * one - says nothing about the provider
+   */
+  protected static boolean isCancelled(Throwable failure, Optional<CallContext> callContext) {
+    return !isTimedOut(callContext) && (failure instanceof CancellationException || callContext.map(CallContext::isCancelled).orElse(false));
+  }
+
+  /*
+   * A 4xx - like the 404 of a user that is not a member of the group - is an answer of a healthy provider
+   */
+  protected static boolean isClientError(Throwable failure) {
+    return failure instanceof HttpClientErrorException;
+  }
+
+  /*
+   * Only a 5xx, an I/O error or a timeout says the provider is in trouble, anything else - a 4xx, a response we can
+   * not parse, invalid input - does not
+   */
+  protected static boolean isProviderFailure(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+      if (cause instanceof HttpServerErrorException || cause instanceof ResourceAccessException || cause instanceof IOException
+        || cause instanceof TimeoutException || cause instanceof DataAccessResourceFailureException
+        || cause instanceof TransientDataAccessException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <T> CompletionStage<T> completed(T value) {
+    return CompletableFuture.completedFuture(value);
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+}
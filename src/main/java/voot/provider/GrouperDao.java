@@ -2,9 +2,17 @@ package voot.provider;
 
 import voot.valueobject.Group;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface GrouperDao {
 
   List<Group> groups(String subjectId);
+
+  /**
+   * @param groupNames the local (not fully qualified) group names
+   * @return per existing group the time of the last change of its (immediate or effective) memberships
+   */
+  Map<String, Long> lastMembershipChanges(Collection<String> groupNames);
 }
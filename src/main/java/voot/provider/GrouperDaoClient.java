@@ -1,13 +1,23 @@
 package voot.provider;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
 import voot.valueobject.Group;
 import voot.valueobject.Membership;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
@@ -16,6 +26,8 @@ import static voot.valueobject.Membership.*;
 
 public class GrouperDaoClient implements GrouperDao {
 
+  private static final Logger LOG = LoggerFactory.getLogger(GrouperDaoClient.class);
+
   private final JdbcTemplate jdbcTemplate;
   private final String sourceId;
   private final String groupIdPrefix;
@@ -27,13 +39,16 @@ public class GrouperDaoClient implements GrouperDao {
   }
 
   public List<Group> groups(String subjectId) {
-    List<Group> groups = this.jdbcTemplate.query(
-      "select gf.name as role, gg.name as groupname," +
-        " gg.description as description, gg.display_extension as display_extension" +
-        " from grouper_memberships gms, grouper_groups gg, grouper_fields gf, grouper_members gm " +
-        " where gms.field_id = gf.id and gms.owner_group_id = gg.id and gms.member_id = gm.id and gm.subject_id = ?" +
-        " and (gf.name = 'admins' or gf.name = 'updaters' or gf.name = 'members') order by gg.name",
-      new Object[]{subjectId},
+    List<Group> groups = this.jdbcTemplate.query(connection -> {
+        PreparedStatement statement = connection.prepareStatement(
+          "select gf.name as role, gg.name as groupname," +
+            " gg.description as description, gg.display_extension as display_extension" +
+            " from grouper_memberships gms, grouper_groups gg, grouper_fields gf, grouper_members gm " +
+            " where gms.field_id = gf.id and gms.owner_group_id = gg.id and gms.member_id = gm.id and gm.subject_id = ?" +
+            " and (gf.name = 'admins' or gf.name = 'updaters' or gf.name = 'members') order by gg.name");
+        statement.setString(1, subjectId);
+        return withCallContext(statement);
+      },
       (resultSet, i) ->
         new Group(groupIdPrefix + resultSet.getString("groupname"), resultSet.getString("display_extension"),
           resultSet.getString("description"), sourceId, membership(resultSet))
@@ -44,6 +59,48 @@ public class GrouperDaoClient implements GrouperDao {
     return collect.values().stream().map(this::mostImportant).collect(toList());
   }
 
+  @Override
+  public Map<String, Long> lastMembershipChanges(Collection<String> groupNames) {
+    if (groupNames.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    List<String> names = new ArrayList<>(groupNames);
+    Map<String, Long> changes = new HashMap<>();
+    this.jdbcTemplate.query(connection -> {
+        PreparedStatement statement = connection.prepareStatement(
+          "select gg.name as groupname, gg.last_membership_change as last_membership_change," +
+            " gg.last_imm_membership_change as last_imm_membership_change from grouper_groups gg where gg.name in (" +
+            String.join(",", Collections.nCopies(names.size(), "?")) + ")");
+        for (int i = 0; i < names.size(); i++) {
+          statement.setString(i + 1, names.get(i));
+        }
+        return withCallContext(statement);
+      },
+      resultSet -> {
+        changes.put(resultSet.getString("groupname"),
+          Math.max(resultSet.getLong("last_membership_change"), resultSet.getLong("last_imm_membership_change")));
+      });
+    return changes;
+  }
+
+  private PreparedStatement withCallContext(PreparedStatement statement) throws SQLException {
+    Optional<CallContext> callContext = CallContext.current();
+    if (callContext.isPresent()) {
+      //JDBC only supports query timeouts in whole seconds, so we round up the remaining budget
+      statement.setQueryTimeout((int) Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(callContext.get().remainingMillis() + 999)));
+      callContext.get().onCancel(() -> cancel(statement));
+    }
+    return statement;
+  }
+
+  private void cancel(Statement statement) {
+    try {
+      statement.cancel();
+    } catch (SQLException e) {
+      LOG.debug("Unable to cancel statement", e);
+    }
+  }
+
   private Group mostImportant(List<Group> groupList) {
     return groupList.stream().max((o1, o2) -> o1.membership.compareTo(o2.membership)).get();
   }
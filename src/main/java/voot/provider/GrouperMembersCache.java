@@ -0,0 +1,81 @@
+package voot.provider;
+
+import voot.valueobject.Member;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The members of Grouper groups, each tagged with the last membership change of the group at the time the members
+ * were fetched. An entry is only valid as long as the group has not changed since. The least recently used entries are
+ * evicted once the total number of cached members exceeds maxMembers.
+ */
+class GrouperMembersCache {
+
+  private final long maxMembers;
+
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long size;
+  private long hits;
+  private long misses;
+
+  GrouperMembersCache(long maxMembers) {
+    this.maxMembers = maxMembers;
+  }
+
+  boolean isEnabled() {
+    return maxMembers > 0;
+  }
+
+  synchronized Optional<List<Member>> get(String groupName, long lastMembershipChange) {
+    Entry entry = entries.get(groupName);
+    if (entry == null || entry.lastMembershipChange != lastMembershipChange) {
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    return Optional.of(entry.members);
+  }
+
+  synchronized void put(String groupName, long lastMembershipChange, List<Member> members) {
+    if (members.size() > maxMembers) {
+      return;
+    }
+    Entry previous = entries.put(groupName, new Entry(Collections.unmodifiableList(members), lastMembershipChange));
+    if (previous != null) {
+      size -= previous.members.size();
+    }
+    size += members.size();
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (size > maxMembers && iterator.hasNext()) {
+      size -= iterator.next().getValue().members.size();
+      iterator.remove();
+    }
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  synchronized int getSize() {
+    return entries.size();
+  }
+
+  private static class Entry {
+    final List<Member> members;
+    final long lastMembershipChange;
+
+    Entry(List<Member> members, long lastMembershipChange) {
+      this.members = members;
+      this.lastMembershipChange = lastMembershipChange;
+    }
+  }
+}
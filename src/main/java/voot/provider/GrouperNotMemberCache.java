@@ -0,0 +1,55 @@
+package voot.provider;
+
+import voot.util.ExpiringSet;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Remembers for ttlMillis that a subject is not a member of a group, so that repeated checks do not reach Grouper.
+ * Bounded to maxEntries, the least recently used answers are evicted first.
+ */
+class GrouperNotMemberCache {
+
+  private final long ttlMillis;
+  private final int maxEntries;
+
+  private final ExpiringSet<List<String>> notMembers;
+  private long hits;
+  private long misses;
+
+  GrouperNotMemberCache(long ttlMillis, int maxEntries) {
+    this.ttlMillis = ttlMillis;
+    this.maxEntries = maxEntries;
+    this.notMembers = new ExpiringSet<>(maxEntries, ttlMillis);
+  }
+
+  boolean isEnabled() {
+    return ttlMillis > 0 && maxEntries > 0;
+  }
+
+  synchronized boolean isNotMember(String subjectId, String groupName) {
+    if (notMembers.contains(Arrays.asList(subjectId, groupName))) {
+      hits++;
+      return true;
+    }
+    misses++;
+    return false;
+  }
+
+  void putNotMember(String subjectId, String groupName) {
+    notMembers.add(Arrays.asList(subjectId, groupName));
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  int getSize() {
+    return notMembers.size();
+  }
+}
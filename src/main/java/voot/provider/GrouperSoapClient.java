@@ -3,17 +3,22 @@ package voot.provider;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.*;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.client.HttpServerErrorException;
+import org.xml.sax.SAXException;
 import voot.util.UrnUtils;
 import voot.valueobject.Group;
 import voot.valueobject.Member;
 import voot.valueobject.Membership;
 
 import javax.sql.DataSource;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.*;
@@ -22,7 +27,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-public class GrouperSoapClient extends AbstractProvider {
+public class GrouperSoapClient extends AbstractProvider implements PublicMetrics {
 
   private static final Logger LOG = LoggerFactory.getLogger(GrouperSoapClient.class);
 
@@ -44,16 +49,39 @@ public class GrouperSoapClient extends AbstractProvider {
 
   private final GrouperDao dao;
 
+  private final GrouperMembersCache membersCache;
+
+  private final GrouperNotMemberCache notMemberCache;
+
   public GrouperSoapClient(Configuration configuration, DataSource dataSource) {
+    this(configuration, dataSource, 0L, 0L, 0);
+  }
+
+  /**
+   * @param membersCacheMaxMembers upper bound of the total number of cached members, 0 to disable the cache
+   * @param notMemberCacheTtlMillis how long a "not a member" answer is cached, 0 to disable the cache
+   * @param notMemberCacheMaxEntries upper bound of the number of cached "not a member" answers
+   */
+  public GrouperSoapClient(Configuration configuration, DataSource dataSource, long membersCacheMaxMembers,
+                           long notMemberCacheTtlMillis, int notMemberCacheMaxEntries) {
     super(configuration);
     this.dao = new GrouperDaoClient(new JdbcTemplate(dataSource),configuration.name, groupIdPrefix);
     this.soapParser = new GrouperSoapParser(configuration.name, groupIdPrefix);
+    this.membersCache = new GrouperMembersCache(membersCacheMaxMembers);
+    this.notMemberCache = new GrouperNotMemberCache(notMemberCacheTtlMillis, notMemberCacheMaxEntries);
   }
 
   public GrouperSoapClient(Configuration configuration, GrouperDao grouperDao) {
+    this(configuration, grouperDao, 0L, 0L, 0);
+  }
+
+  public GrouperSoapClient(Configuration configuration, GrouperDao grouperDao, long membersCacheMaxMembers,
+                           long notMemberCacheTtlMillis, int notMemberCacheMaxEntries) {
     super(configuration);
     this.dao = grouperDao;
     this.soapParser = new GrouperSoapParser(configuration.name, groupIdPrefix);
+    this.membersCache = new GrouperMembersCache(membersCacheMaxMembers);
+    this.notMemberCache = new GrouperNotMemberCache(notMemberCacheTtlMillis, notMemberCacheMaxEntries);
   }
 
   @Override
@@ -61,19 +89,38 @@ public class GrouperSoapClient extends AbstractProvider {
     return true;
   }
 
+  @Override
+  public Routing getMembershipRouting() {
+    return Routing.ALL;
+  }
+
   @Override
   public List<Group> getGroupMemberships(final String uid) {
     LOG.debug("Querying database getGroupMemberships for subjectId: {}", uid);
-    try {
-      return dao.groups(uid);
-    } catch (Exception exception) {
-      LOG.warn("Failed to invoke getGroupMemberships, returning empty result.", exception);
-      return Collections.emptyList();
-    }
+    return dao.groups(uid);
   }
 
+  /*
+   * Relying parties keep asking for users that are not a member, those answers are cached separately for a short time
+   */
   @Override
   public Optional<Group> getGroupMembership(final String uid, final String groupId) {
+    if (!notMemberCache.isEnabled()) {
+      return hasMember(uid, groupId);
+    }
+    final String localGroupId = getLocalGroupId(groupId).get();
+    if (notMemberCache.isNotMember(uid, localGroupId)) {
+      LOG.debug("getGroupMembership result for subjectId {} and groupId {} from cache: not a member", uid, localGroupId);
+      return Optional.empty();
+    }
+    Optional<Group> group = hasMember(uid, groupId);
+    if (!group.isPresent()) {
+      notMemberCache.putNotMember(uid, localGroupId);
+    }
+    return group;
+  }
+
+  private Optional<Group> hasMember(final String uid, final String groupId) {
     final Optional<String> localGroupId = getLocalGroupId(groupId);
     Map<String, String> replacements = new HashMap<>();
     replacements.put("subjectId", uid);
@@ -88,9 +135,8 @@ public class GrouperSoapClient extends AbstractProvider {
 
       LOG.debug("getGroupMembership result: {} group.", group);
       return group;
-    } catch (Exception exception) {
-      LOG.warn("Failed to invoke grouper, returning empty result.", exception);
-      return Optional.empty();
+    } catch (IOException | SAXException | ParserConfigurationException | XPathExpressionException exception) {
+      throw new RuntimeException("Failed to parse hasMemberLite response from grouper", exception);
     }
   }
 
@@ -105,14 +151,36 @@ public class GrouperSoapClient extends AbstractProvider {
 
       LOG.debug("getGroupMembership result: {} group.", group.size());
       return group;
-    } catch (Exception exception) {
-      LOG.warn("Failed to invoke grouper, returning empty result.", exception);
-      return Collections.emptyList();
+    } catch (IOException | SAXException | ParserConfigurationException | XPathExpressionException exception) {
+      throw new RuntimeException("Failed to parse findGroupsLite response from grouper", exception);
     }
   }
 
+  /*
+   * Cached members are served as long as the last membership change of the group - one indexed query - is unchanged
+   */
   @Override
   public List<Member> getMembers(String groupId) {
+    if (!membersCache.isEnabled()) {
+      return fetchMembers(groupId);
+    }
+    final String localGroupId = getLocalGroupId(groupId).get();
+    Long lastMembershipChange = dao.lastMembershipChanges(Collections.singleton(localGroupId)).get(localGroupId);
+    if (lastMembershipChange == null) {
+      return fetchMembers(groupId);
+    }
+    Optional<List<Member>> cached = membersCache.get(localGroupId, lastMembershipChange);
+    if (cached.isPresent()) {
+      LOG.debug("getMembers result for groupId {} from cache", localGroupId);
+      return cached.get();
+    }
+    //tagged with the change seen before fetching, a change in between invalidates the entry on the next request
+    List<Member> members = fetchMembers(groupId);
+    membersCache.put(localGroupId, lastMembershipChange, members);
+    return members;
+  }
+
+  private List<Member> fetchMembers(String groupId) {
     final Optional<String> localGroupId = getLocalGroupId(groupId);
     Map<String, String> replacements = new HashMap<>();
     replacements.put("groupId", localGroupId.get());
@@ -126,12 +194,22 @@ public class GrouperSoapClient extends AbstractProvider {
 
       LOG.debug("getMembers result: {} .", members);
       return members;
-    } catch (Exception exception) {
-      LOG.warn("Failed to invoke grouper, returning empty result.", exception);
-      return Collections.emptyList();
+    } catch (IOException | SAXException | ParserConfigurationException | XPathExpressionException exception) {
+      throw new RuntimeException("Failed to parse getMembersLite response from grouper", exception);
     }
   }
 
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+      new Metric<>(String.format("providers.%s.membersCache.size", configuration.name), membersCache.getSize()),
+      new Metric<>(String.format("providers.%s.membersCache.hits", configuration.name), membersCache.getHits()),
+      new Metric<>(String.format("providers.%s.membersCache.misses", configuration.name), membersCache.getMisses()),
+      new Metric<>(String.format("providers.%s.notMemberCache.size", configuration.name), notMemberCache.getSize()),
+      new Metric<>(String.format("providers.%s.notMemberCache.hits", configuration.name), notMemberCache.getHits()),
+      new Metric<>(String.format("providers.%s.notMemberCache.misses", configuration.name), notMemberCache.getMisses()));
+  }
+
   private ResponseEntity<String> getGrouperResponse(String soap, String action) {
     HttpHeaders headers = new HttpHeaders();
     headers.setContentType(MediaType.TEXT_XML);
@@ -1,5 +1,6 @@
 package voot.provider;
 
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import voot.valueobject.Group;
 import voot.valueobject.Membership;
 
@@ -11,7 +12,15 @@ import java.util.stream.Collectors;
 public class OpenSocialClient extends Voot2Provider {
 
   public OpenSocialClient(Configuration configuration) {
-    super(configuration);
+    this(configuration, null);
+  }
+
+  public OpenSocialClient(Configuration configuration, CloseableHttpAsyncClient httpAsyncClient) {
+    this(configuration, httpAsyncClient, 0);
+  }
+
+  public OpenSocialClient(Configuration configuration, CloseableHttpAsyncClient httpAsyncClient, int conditionalCacheMaxEntries) {
+    super(configuration, httpAsyncClient, conditionalCacheMaxEntries);
     allMembershipsUrlTemplate = "%s/groups/{uid}";
     specificMembershipTemplate = "%s/groups/{uid}/{groupId}";
   }
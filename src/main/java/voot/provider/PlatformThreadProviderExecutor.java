@@ -0,0 +1,42 @@
+package voot.provider;
+
+import org.springframework.util.Assert;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every Provider call on a bounded pool of platform threads. Idle threads are released after a minute.
+ */
+public class PlatformThreadProviderExecutor implements ProviderExecutor {
+
+  private final ThreadPoolExecutor executor;
+
+  public PlatformThreadProviderExecutor(int maxThreads) {
+    Assert.isTrue(maxThreads > 0, "maxThreads must be positive");
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "provider-" + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    executor.execute(command);
+  }
+
+  @Override
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PlatformThreadProviderExecutor{maxThreads=%d}", executor.getMaximumPoolSize());
+  }
+}
@@ -0,0 +1,44 @@
+package voot.provider;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Creates the HttpContext for every request to a Provider: preemptive Basic authentication and the configured timeouts
+ * capped by the {@link CallContext} budget.
+ */
+class PreemptiveAuthenticationContext {
+
+  private final AuthCache authCache;
+  private final CredentialsProvider credentialsProvider;
+  private final RequestConfig requestConfig;
+
+  PreemptiveAuthenticationContext(String url, CredentialsProvider credentialsProvider, RequestConfig requestConfig) throws MalformedURLException {
+    URL parsedUrl = new URL(url);
+    HttpHost targetHost = new HttpHost(parsedUrl.getHost(), parsedUrl.getPort(), parsedUrl.getProtocol());
+    this.authCache = new BasicAuthCache();
+    this.authCache.put(targetHost, new BasicScheme());
+    this.credentialsProvider = credentialsProvider;
+    this.requestConfig = requestConfig;
+  }
+
+  HttpClientContext create() {
+    HttpClientContext context = HttpClientContext.create();
+    context.setAuthCache(authCache);
+    context.setCredentialsProvider(credentialsProvider);
+    context.setRequestConfig(RequestConfig.copy(requestConfig)
+      .setConnectionRequestTimeout(CallContext.timeoutMillis(requestConfig.getConnectionRequestTimeout()))
+      .setConnectTimeout(CallContext.timeoutMillis(requestConfig.getConnectTimeout()))
+      .setSocketTimeout(CallContext.timeoutMillis(requestConfig.getSocketTimeout()))
+      .build());
+    return context;
+  }
+}
@@ -0,0 +1,36 @@
+package voot.provider;
+
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+
+/**
+ * Async counterpart of {@link PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory}. The HttpAsyncClient
+ * (and its I/O reactor) is shared by all Providers, so the credentials are passed along in the HttpContext of every
+ * request instead of being configured on the client.
+ */
+public class PreemptiveAuthenticationHttpComponentsAsyncClientHttpRequestFactory extends HttpComponentsAsyncClientHttpRequestFactory {
+
+  private final PreemptiveAuthenticationContext context;
+
+  public PreemptiveAuthenticationHttpComponentsAsyncClientHttpRequestFactory(CloseableHttpAsyncClient httpAsyncClient, String url, CredentialsProvider credentialsProvider, RequestConfig requestConfig) throws MalformedURLException {
+    super(httpAsyncClient);
+    this.context = new PreemptiveAuthenticationContext(url, credentialsProvider, requestConfig);
+  }
+
+  @Override
+  protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+    return context.create();
+  }
+
+  @Override
+  public void destroy() {
+    //the shared HttpAsyncClient is closed by its owner
+  }
+}
@@ -1,46 +1,41 @@
 package voot.provider;
 
-import org.apache.http.HttpHost;
-import org.apache.http.client.AuthCache;
+import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.protocol.HttpContext;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 
 import java.net.MalformedURLException;
 import java.net.URI;
-import java.net.URL;
 
 /**
  * Default HttpClient does not support Preemptive authentication. Spring has added a hook to
  * support this: https://jira.spring.io/browse/SPR-8367
+ *
+ * Every request gets its own HttpContext with the timeouts capped by the {@link CallContext} budget and is aborted
+ * when the CallContext is cancelled.
  */
 public class PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory extends HttpComponentsClientHttpRequestFactory {
 
-  private HttpContext httpContext;
+  private final PreemptiveAuthenticationContext context;
 
-  public PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(HttpClient httpClient, String url) throws MalformedURLException {
+  public PreemptiveAuthenticationHttpComponentsClientHttpRequestFactory(HttpClient httpClient, String url, CredentialsProvider credentialsProvider, RequestConfig requestConfig) throws MalformedURLException {
     super(httpClient);
-    this.httpContext = this.initHttpContext(url);
+    this.context = new PreemptiveAuthenticationContext(url, credentialsProvider, requestConfig);
   }
 
-  private HttpContext initHttpContext(String url) throws MalformedURLException {
-    URL parsedUrl = new URL(url);
-    HttpHost targetHost = new HttpHost(parsedUrl.getHost(), parsedUrl.getPort(), parsedUrl.getProtocol());
-    AuthCache authCache = new BasicAuthCache();
-    BasicScheme basicAuth = new BasicScheme();
-    authCache.put(targetHost, basicAuth);
-    BasicHttpContext localContext = new BasicHttpContext();
-    localContext.setAttribute(HttpClientContext.AUTH_CACHE, authCache);
-    return localContext;
+  @Override
+  protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+    HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+    CallContext.current().ifPresent(callContext -> callContext.onCancel(request::abort));
+    return request;
   }
 
   @Override
   protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
-    return this.httpContext;
+    return context.create();
   }
 }
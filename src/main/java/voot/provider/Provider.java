@@ -24,6 +24,12 @@ public interface Provider {
    */
   boolean shouldBeQueriedForGroup(String groupId);
 
+  /**
+   *
+   * @return the configuration of this Provider as defined in the externalProviders configuration
+   */
+  Configuration getConfiguration();
+
   /**
    *
    * @return true if this Provider is external (e.g. not Grouper)
@@ -64,6 +70,40 @@ public interface Provider {
    */
   boolean shouldBeQueriedForMembers(String groupId);
 
+  /**
+   *
+   * @return how {@link #shouldBeQueriedForMemberships(String)} decides, must be consistent with that method
+   */
+  default Routing getMembershipRouting() {
+    return Routing.CUSTOM;
+  }
+
+  /**
+   *
+   * @return how {@link #shouldBeQueriedForGroup(String)} decides, must be consistent with that method
+   */
+  default Routing getGroupRouting() {
+    return Routing.CUSTOM;
+  }
+
+  /**
+   * Allows the routing of requests to Providers to be precomputed instead of asking every Provider on every request
+   */
+  enum Routing {
+    /**
+     * Queried only for the (case-insensitive) schacHomeOrganization of the configuration
+     */
+    SCHAC_HOME,
+    /**
+     * Always queried
+     */
+    ALL,
+    /**
+     * Anything else, the shouldBeQueried method is called for every request
+     */
+    CUSTOM
+  }
+
   class Configuration {
 
     public final GroupProviderType type;
@@ -0,0 +1,12 @@
+package voot.provider;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Strategy for running the blocking calls to the Providers. Chosen with externalProviders.executor.type
+ */
+public interface ProviderExecutor extends Executor {
+
+  void shutdown();
+
+}
@@ -0,0 +1,45 @@
+package voot.provider;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every Provider call on its own virtual thread, so blocking HTTP and JDBC calls do not hold on to OS threads.
+ * Virtual threads are only available on JDK 21+, hence the reflective lookup: we still compile against Java 8.
+ */
+public class VirtualThreadProviderExecutor implements ProviderExecutor {
+
+  private final ExecutorService executor;
+
+  private VirtualThreadProviderExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return the virtual thread executor or the empty Optional if the runtime JDK does not support virtual threads
+   */
+  public static Optional<ProviderExecutor> create() {
+    try {
+      return Optional.of(new VirtualThreadProviderExecutor(
+        (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)));
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void execute(Runnable command) {
+    executor.execute(command);
+  }
+
+  @Override
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "VirtualThreadProviderExecutor";
+  }
+}
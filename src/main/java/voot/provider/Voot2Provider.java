@@ -1,30 +1,69 @@
 package voot.provider;
 
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
 
 import voot.util.UrnUtils;
 import voot.valueobject.Group;
 import voot.valueobject.Member;
 import voot.valueobject.Membership;
 
-public class Voot2Provider extends AbstractProvider {
+public class Voot2Provider extends AbstractProvider implements AsyncProvider, PublicMetrics {
 
   private static final Logger LOG = LoggerFactory.getLogger(Voot2Provider.class);
   protected String allMembershipsUrlTemplate;
   protected String specificMembershipTemplate;
+  private final AsyncRestTemplate asyncRestTemplate;
+  private final ConditionalGetCache<List<Group>> groupsCache;
+  private final ConditionalGetCache<Optional<Group>> groupCache;
 
   public Voot2Provider(Configuration configuration) {
+    this(configuration, null);
+  }
+
+  public Voot2Provider(Configuration configuration, CloseableHttpAsyncClient httpAsyncClient) {
+    this(configuration, httpAsyncClient, 0);
+  }
+
+  /**
+   * @param conditionalCacheMaxEntries the number of URLs for which the validators and the parsed response are kept to
+   *                                   send conditional requests, 0 disables conditional requests
+   */
+  public Voot2Provider(Configuration configuration, CloseableHttpAsyncClient httpAsyncClient, int conditionalCacheMaxEntries) {
     super(configuration);
     allMembershipsUrlTemplate = "%s/user/{uid}/groups";
     specificMembershipTemplate = "%s/user/{uid}/groups/{groupId}";
+    asyncRestTemplate = httpAsyncClient != null ? createAsyncRestTemplate(httpAsyncClient) : null;
+    groupsCache = new ConditionalGetCache<>(conditionalCacheMaxEntries);
+    groupCache = new ConditionalGetCache<>(conditionalCacheMaxEntries);
+  }
+
+  @Override
+  public boolean isNonBlocking() {
+    return asyncRestTemplate != null;
   }
 
   @Override
@@ -32,22 +71,31 @@ public class Voot2Provider extends AbstractProvider {
     return configuration.schacHomeOrganization.equalsIgnoreCase(schacHomeOrganization);
   }
 
+  @Override
+  public Routing getMembershipRouting() {
+    return Routing.SCHAC_HOME;
+  }
+
   @Override
   public List<Group> getGroupMemberships(final String uid) {
     LOG.debug("Querying getGroupMemberships for subjectId: {} and name: {}", uid, configuration.schacHomeOrganization);
 
-    final Optional<String> localUid = UrnUtils.extractLocalUid(uid);
-    if (!localUid.isPresent()) {
-      throw new IllegalArgumentException("Unable to extract local uid from " + uid);
-    }
-    ResponseEntity<String> response = restTemplate.getForEntity(String.format(allMembershipsUrlTemplate, configuration.url), String.class, localUid.get());
+    URI uri = uri(allMembershipsUrl(), localUid(uid));
+    Optional<ConditionalGetCache.Entry<List<Group>>> cached = groupsCache.get(uri);
+    return groups(uri, cached, restTemplate.exchange(uri, HttpMethod.GET, request(cached), String.class));
+  }
 
-    if (response.getStatusCode().is2xxSuccessful()) {
-      return parseGroups(response.getBody());
-    } else {
-      LOG.error("Failed to invoke getGroupMemberships {} for {}, returning empty result.", response, configuration);
-      return Collections.emptyList();
+  @Override
+  public CompletionStage<List<Group>> getGroupMembershipsAsync(String uid) {
+    if (!isNonBlocking()) {
+      return completed(() -> getGroupMemberships(uid));
     }
+    LOG.debug("Querying getGroupMembershipsAsync for subjectId: {} and name: {}", uid, configuration.schacHomeOrganization);
+
+    URI uri = uri(allMembershipsUrl(), localUid(uid));
+    Optional<ConditionalGetCache.Entry<List<Group>>> cached = groupsCache.get(uri);
+    return toCompletableFuture(asyncRestTemplate.exchange(uri, HttpMethod.GET, request(cached), String.class))
+      .thenApply(response -> groups(uri, cached, response));
   }
 
   @Override
@@ -59,31 +107,113 @@ public class Voot2Provider extends AbstractProvider {
   public Optional<Group> getGroupMembership(final String uid, final String groupId) {
     LOG.debug("Querying getGroupMembership for subjectId: {} and name: {}", uid, configuration.schacHomeOrganization);
 
-    final Optional<String> localUid = UrnUtils.extractLocalUid(uid);
-    if (!localUid.isPresent()) {
-      throw new IllegalArgumentException("Unable to extract local uid from: " + uid);
-    }
+    final URI uri = uri(String.format(specificMembershipTemplate, configuration.url), localUid(uid), localGroupId(groupId));
+    LOG.debug("Invoking {} on provider {}", uri, this);
+    Optional<ConditionalGetCache.Entry<Optional<Group>>> cached = groupCache.get(uri);
+    return singleGroup(uri, cached, restTemplate.exchange(uri, HttpMethod.GET, request(cached), String.class));
+  }
 
-    final Optional<String> localGroupId = UrnUtils.extractLocalGroupId(groupId);
-    if (!localGroupId.isPresent()) {
-      throw new IllegalArgumentException("Unable to extract local group id from:" + groupId);
+  @Override
+  public CompletionStage<Optional<Group>> getGroupMembershipAsync(String uid, String groupId) {
+    if (!isNonBlocking()) {
+      return completed(() -> getGroupMembership(uid, groupId));
     }
+    LOG.debug("Querying getGroupMembershipAsync for subjectId: {} and name: {}", uid, configuration.schacHomeOrganization);
 
-    final String url = String.format(specificMembershipTemplate, configuration.url);
-    LOG.debug("Invoking {} on provider {}", url, this);
-    ResponseEntity<String> response = restTemplate.getForEntity(url, String.class, localUid.get(), localGroupId.get());
+    final URI uri = uri(String.format(specificMembershipTemplate, configuration.url), localUid(uid), localGroupId(groupId));
+    LOG.debug("Invoking {} on provider {}", uri, this);
+    Optional<ConditionalGetCache.Entry<Optional<Group>>> cached = groupCache.get(uri);
+    return toCompletableFuture(asyncRestTemplate.exchange(uri, HttpMethod.GET, request(cached), String.class))
+      .thenApply(response -> singleGroup(uri, cached, response));
+  }
 
-    if (response.getStatusCode().is2xxSuccessful()) {
-      return parseSingleGroup(response.getBody());
-    } else {
+  @Override
+  public List<Member> getMembers(String groupId) {
+    throw new IllegalArgumentException("Voot2Providers do not support getting members");
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+      new Metric<>(String.format("providers.%s.conditionalCache.size", configuration.name), groupsCache.getSize() + groupCache.getSize()),
+      new Metric<>(String.format("providers.%s.conditionalCache.notModified", configuration.name), groupsCache.getNotModified() + groupCache.getNotModified()),
+      new Metric<>(String.format("providers.%s.conditionalCache.modified", configuration.name), groupsCache.getModified() + groupCache.getModified()));
+  }
+
+  private String allMembershipsUrl() {
+    return String.format(allMembershipsUrlTemplate, configuration.url);
+  }
+
+  private String localUid(String uid) {
+    return UrnUtils.extractLocalUid(uid).orElseThrow(() -> new IllegalArgumentException("Unable to extract local uid from: " + uid));
+  }
+
+  private String localGroupId(String groupId) {
+    return UrnUtils.extractLocalGroupId(groupId).orElseThrow(() -> new IllegalArgumentException("Unable to extract local group id from:" + groupId));
+  }
+
+  private URI uri(String urlTemplate, String... uriVariables) {
+    return restTemplate.getUriTemplateHandler().expand(urlTemplate, (Object[]) uriVariables);
+  }
+
+  private HttpEntity<Void> request(Optional<? extends ConditionalGetCache.Entry<?>> cached) {
+    return new HttpEntity<>(cached.map(ConditionalGetCache.Entry::conditions).orElseGet(HttpHeaders::new));
+  }
+
+  private List<Group> groups(URI uri, Optional<ConditionalGetCache.Entry<List<Group>>> cached, ResponseEntity<String> response) {
+    return parse(uri, cached, response, groupsCache, this::parseGroups).orElseGet(() -> {
       LOG.error("Failed to invoke getGroupMemberships {} for {}, returning empty result.", response, configuration);
+      return Collections.emptyList();
+    });
+  }
+
+  private Optional<Group> singleGroup(URI uri, Optional<ConditionalGetCache.Entry<Optional<Group>>> cached, ResponseEntity<String> response) {
+    return parse(uri, cached, response, groupCache, this::parseSingleGroup).orElseGet(() -> {
+      LOG.error("Failed to invoke getGroupMembership {} for {}, returning empty result.", response, configuration);
       return Optional.empty();
+    });
+  }
+
+  /*
+   * A 304 is answered with the entry of which the validators were sent, so an eviction in the meantime does not matter
+   */
+  private <T> Optional<T> parse(URI uri, Optional<ConditionalGetCache.Entry<T>> cached, ResponseEntity<String> response,
+                                ConditionalGetCache<T> cache, Function<String, T> parser) {
+    if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cached.isPresent()) {
+      return Optional.of(cache.notModified(cached.get()));
+    }
+    if (response.getStatusCode().is2xxSuccessful()) {
+      T value = parser.apply(response.getBody());
+      cache.put(uri, response.getHeaders(), value);
+      return Optional.of(value);
     }
+    return Optional.empty();
   }
 
-  @Override
-  public List<Member> getMembers(String groupId) {
-    throw new IllegalArgumentException("Voot2Providers do not support getting members");
+  private static <T> CompletionStage<T> completed(Supplier<T> call) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    try {
+      future.complete(call.get());
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /*
+   * Cancelling the returned future - or the current CallContext - aborts the underlying HTTP request
+   */
+  private static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> listenableFuture) {
+    CompletableFuture<T> future = new CompletableFuture<T>() {
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        listenableFuture.cancel(mayInterruptIfRunning);
+        return super.cancel(mayInterruptIfRunning);
+      }
+    };
+    listenableFuture.addCallback(future::complete, future::completeExceptionally);
+    CallContext.current().ifPresent(callContext -> callContext.onCancel(() -> future.cancel(true)));
+    return future;
   }
 
   @SuppressWarnings("unchecked")
@@ -0,0 +1,49 @@
+package voot.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set whose elements are forgotten ttlMillis after they were added. Bounded to maximumSize, the least recently used
+ * elements are evicted first. A ttlMillis of 0 keeps nothing.
+ */
+public class ExpiringSet<E> {
+
+  private final long ttlNanos;
+  private final int maximumSize;
+  private final LinkedHashMap<E, Long> expiries;
+
+  public ExpiringSet(int maximumSize, long ttlMillis) {
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.maximumSize = maximumSize;
+    this.expiries = new LinkedHashMap<E, Long>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<E, Long> eldest) {
+        return size() > ExpiringSet.this.maximumSize;
+      }
+    };
+  }
+
+  public synchronized boolean contains(E element) {
+    Long expiresAtNanos = expiries.get(element);
+    if (expiresAtNanos == null) {
+      return false;
+    }
+    if (expiresAtNanos - System.nanoTime() <= 0) {
+      expiries.remove(element);
+      return false;
+    }
+    return true;
+  }
+
+  public synchronized void add(E element) {
+    if (ttlNanos > 0) {
+      expiries.put(element, System.nanoTime() + ttlNanos);
+    }
+  }
+
+  public synchronized int size() {
+    return expiries.size();
+  }
+}
@@ -0,0 +1,58 @@
+package voot.web;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import voot.AccessDeniedException;
+import voot.ExternalGroupsService;
+import voot.PeerClient;
+import voot.valueobject.Group;
+
+/**
+ * Answers the peer nodes that forward the memberships of the uids this node owns, see {@link PeerClient}
+ */
+@RestController
+public class PeerController {
+
+  private static Logger LOG = LoggerFactory.getLogger(PeerController.class);
+
+  private final ExternalGroupsService externalGroupsService;
+  private final PeerClient peerClient;
+
+  @Autowired
+  public PeerController(ExternalGroupsService externalGroupsService, PeerClient peerClient) {
+    this.externalGroupsService = externalGroupsService;
+    this.peerClient = peerClient;
+  }
+
+  @RequestMapping(value = "/peer/groups/{userId:.+}")
+  public ResponseEntity<List<Group>> peerGroups(@PathVariable String userId,
+                                                @RequestParam String schacHomeOrganization,
+                                                @RequestParam(defaultValue = "false") boolean external,
+                                                @RequestHeader(value = PeerClient.PEER_SECRET_HEADER, required = false) String secret,
+                                                @RequestHeader(value = PeerClient.DEADLINE_HEADER, defaultValue = "" + Long.MAX_VALUE) long deadlineMillis) {
+    if (!peerClient.isPeer(secret)) {
+      throw new AccessDeniedException("Peer secret required");
+    }
+    LOG.debug("peer/groups/{}, schacHomeOrg: {}, external: {}", userId, schacHomeOrganization, external);
+
+    ExternalGroupsService.Result<List<Group>> groups = externalGroupsService.getMyGroupsAsOwner(userId, schacHomeOrganization, external, deadlineMillis);
+
+    HttpHeaders headers = new HttpHeaders();
+    if (!groups.isComplete()) {
+      headers.add(VootController.OMITTED_PROVIDERS_HEADER, String.join(",", groups.omittedProviders));
+    }
+    if (groups.isStale()) {
+      headers.add(VootController.STALE_PROVIDERS_HEADER, String.join(",", groups.staleProviders));
+    }
+    headers.add(PeerClient.MAX_AGE_HEADER, String.valueOf(groups.maxAgeMillis));
+    return new ResponseEntity<>(groups.value, headers, HttpStatus.OK);
+  }
+}
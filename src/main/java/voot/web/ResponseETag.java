@@ -0,0 +1,68 @@
+package voot.web;
+
+import voot.valueobject.Group;
+import voot.valueobject.Member;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+
+/**
+ * Strong ETag of a response body, computed from the fields that are serialized rather than from the JSON itself so
+ * that a 304 Not Modified does not cost a serialization. The order of a collection is significant.
+ */
+class ResponseETag {
+
+  private static final byte SEPARATOR = 0;
+  private static final byte NULL = 1;
+
+  private ResponseETag() {
+  }
+
+  static String of(Object value) {
+    MessageDigest digest = sha256();
+    update(digest, value);
+    byte[] hash = digest.digest();
+    StringBuilder eTag = new StringBuilder("\"");
+    for (int i = 0; i < 16; i++) {
+      eTag.append(String.format("%02x", hash[i]));
+    }
+    return eTag.append('"').toString();
+  }
+
+  private static void update(MessageDigest digest, Object value) {
+    if (value instanceof Collection) {
+      update(digest, "[" + ((Collection<?>) value).size());
+      ((Collection<?>) value).forEach(element -> update(digest, element));
+    } else if (value instanceof Group) {
+      Group group = (Group) value;
+      update(digest, group.id);
+      update(digest, group.displayName);
+      update(digest, group.description);
+      update(digest, group.sourceID);
+      update(digest, group.membership == null ? null : group.membership.getBasic());
+    } else if (value instanceof Member) {
+      Member member = (Member) value;
+      update(digest, member.id);
+      update(digest, member.name);
+      update(digest, member.email);
+    } else if (value instanceof String) {
+      digest.update(((String) value).getBytes(StandardCharsets.UTF_8));
+      digest.update(SEPARATOR);
+    } else if (value == null) {
+      digest.update(NULL);
+      digest.update(SEPARATOR);
+    } else {
+      throw new IllegalArgumentException("No ETag for " + value.getClass());
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
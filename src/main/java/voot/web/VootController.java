@@ -1,12 +1,17 @@
 package voot.web;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
 import org.springframework.ui.ModelMap;
@@ -21,11 +26,16 @@ import voot.util.UrnUtils;
 import voot.valueobject.Group;
 import voot.valueobject.Member;
 
+import static java.util.stream.Collectors.toList;
+
 @RestController
 public class VootController {
 
   private static Logger LOG = LoggerFactory.getLogger(VootController.class);
 
+  public static final String OMITTED_PROVIDERS_HEADER = "X-Omitted-Providers";
+  public static final String STALE_PROVIDERS_HEADER = "X-Stale-Providers";
+
   private ExternalGroupsService externalGroupsService;
 
   @Autowired
@@ -34,21 +44,21 @@ public class VootController {
   }
 
   @RequestMapping(value = "/me/groups")
-  public List<Group> myGroups(OAuth2Authentication authentication) {
+  public ResponseEntity<List<Group>> myGroups(OAuth2Authentication authentication) {
     String schacHome = ((SchacHomeAuthentication) authentication.getUserAuthentication()).getSchacHomeAuthentication();
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
 
     LOG.debug("me/groups on behalf of uid: {}, schacHomeOrg: {}, accessToken: {}, clientId: {}", authentication.getName(), schacHome, accessToken, clientId);
 
-    List<Group> myGroups = externalGroupsService.getMyGroups(authentication.getName(), schacHome);
+    ExternalGroupsService.Result<List<Group>> myGroups = externalGroupsService.getMyGroups(authentication.getName(), schacHome);
 
-    LOG.debug("me/groups result for uid {}: {}", authentication.getName(), myGroups);
-    return myGroups;
+    LOG.debug("me/groups result for uid {}: {}", authentication.getName(), myGroups.value);
+    return response(myGroups.map(VootController::sortedGroups));
   }
 
   @RequestMapping(value = "/me/groups/{groupId:.+}")
-  public Group specificGroupMembership(@PathVariable String groupId, OAuth2Authentication authentication) throws MalformedGroupUrnException {
+  public ResponseEntity<Group> specificGroupMembership(@PathVariable String groupId, OAuth2Authentication authentication) throws MalformedGroupUrnException {
     String schacHome = ((SchacHomeAuthentication) authentication.getUserAuthentication()).getSchacHomeAuthentication();
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
@@ -57,15 +67,15 @@ public class VootController {
     if (!UrnUtils.isFullyQualifiedGroupName(groupId)) {
       throw new MalformedGroupUrnException(groupId);
     }
-    Optional<Group> group = externalGroupsService.getMyGroupById(authentication.getName(), groupId);
+    ExternalGroupsService.Result<Optional<Group>> group = externalGroupsService.getMyGroupById(authentication.getName(), groupId);
 
-    LOG.debug("groups/{} result for uid {}: {}", groupId, authentication.getName(), group);
+    LOG.debug("groups/{} result for uid {}: {}", groupId, authentication.getName(), group.value);
 
-    return group.orElseThrow(ResourceNotFoundException::new);
+    return response(group.map(optionalGroup -> optionalGroup.orElseThrow(ResourceNotFoundException::new)));
   }
 
   @RequestMapping(value = "/internal/groups/{userId:.+}/{groupId:.+}")
-  public Group internalSpecificGroup(@PathVariable String userId, @PathVariable String groupId, OAuth2Authentication authentication) throws MalformedGroupUrnException {
+  public ResponseEntity<Group> internalSpecificGroup(@PathVariable String userId, @PathVariable String groupId, OAuth2Authentication authentication) throws MalformedGroupUrnException {
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
 
@@ -77,15 +87,15 @@ public class VootController {
     if (!schacHome.isPresent()) {
       throw new MalformedGroupUrnException(groupId);
     }
-    Optional<Group> group = externalGroupsService.getMyGroupById(userId, groupId);
+    ExternalGroupsService.Result<Optional<Group>> group = externalGroupsService.getMyGroupById(userId, groupId);
 
-    LOG.debug("groups/{} result: {}", groupId, group);
+    LOG.debug("groups/{} result: {}", groupId, group.value);
 
-    return group.orElseThrow(ResourceNotFoundException::new);
+    return response(group.map(optionalGroup -> optionalGroup.orElseThrow(ResourceNotFoundException::new)));
   }
 
   @RequestMapping(value = "/internal/groups/{userId:.+}")
-  public List<Group> internalGroups(@PathVariable String userId, OAuth2Authentication authentication) throws MalformedPersonUrnException {
+  public ResponseEntity<List<Group>> internalGroups(@PathVariable String userId, OAuth2Authentication authentication) throws MalformedPersonUrnException {
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
 
@@ -97,15 +107,15 @@ public class VootController {
     if (!schacHome.isPresent()) {
       throw new MalformedPersonUrnException(userId);
     }
-    List<Group> myGroups = externalGroupsService.getMyGroups(userId, schacHome.get());
+    ExternalGroupsService.Result<List<Group>> myGroups = externalGroupsService.getMyGroups(userId, schacHome.get());
 
-    LOG.debug("internal/groups/{} result: {}", userId, myGroups);
+    LOG.debug("internal/groups/{} result: {}", userId, myGroups.value);
 
-    return myGroups;
+    return response(myGroups.map(VootController::sortedGroups));
   }
 
   @RequestMapping(value = "/internal/external-groups/{userId:.+}")
-  public List<Group> externalGroups(@PathVariable String userId, OAuth2Authentication authentication) throws MalformedPersonUrnException {
+  public ResponseEntity<List<Group>> externalGroups(@PathVariable String userId, OAuth2Authentication authentication) throws MalformedPersonUrnException {
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
 
@@ -117,15 +127,15 @@ public class VootController {
     if (!schacHome.isPresent()) {
       throw new MalformedPersonUrnException(userId);
     }
-    List<Group> groups = externalGroupsService.getMyExternalGroups(userId, schacHome.get());
+    ExternalGroupsService.Result<List<Group>> groups = externalGroupsService.getMyExternalGroups(userId, schacHome.get());
 
-    LOG.debug("internal/external-groups/{} result: {}", userId, groups);
+    LOG.debug("internal/external-groups/{} result: {}", userId, groups.value);
 
-    return groups;
+    return response(groups.map(VootController::sortedGroups));
   }
 
   @RequestMapping(value = "/internal/all-groups")
-  public List<Group> allGroups(OAuth2Authentication authentication) throws MalformedPersonUrnException {
+  public ResponseEntity<List<Group>> allGroups(OAuth2Authentication authentication) throws MalformedPersonUrnException {
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
 
@@ -133,15 +143,15 @@ public class VootController {
 
     assertClientCredentialsClient(authentication, clientId);
 
-    List<Group> groups = externalGroupsService.getAllGroups();
+    ExternalGroupsService.Result<List<Group>> groups = externalGroupsService.getAllGroups();
 
-    LOG.debug("internal/all-groupsresult: {}", groups.size());
+    LOG.debug("internal/all-groupsresult: {}", groups.value.size());
 
-    return groups;
+    return response(groups.map(VootController::sortedGroups));
   }
 
   @RequestMapping(value = "/members/{groupId:.+}")
-  public List<Member> members(@PathVariable String groupId, OAuth2Authentication authentication) throws MalformedPersonUrnException {
+  public ResponseEntity<List<Member>> members(@PathVariable String groupId, OAuth2Authentication authentication) throws MalformedPersonUrnException {
     String accessToken = ((OAuth2AuthenticationDetails) authentication.getDetails()).getTokenValue();
     String clientId = authentication.getOAuth2Request().getClientId();
 
@@ -149,11 +159,44 @@ public class VootController {
 
     assertClientCredentialsClient(authentication, clientId);
 
-    List<Member> members = externalGroupsService.getMembers(groupId);
+    ExternalGroupsService.Result<List<Member>> members = externalGroupsService.getMembers(groupId);
+
+    LOG.debug("/members/{} result: {}", groupId, members.value);
+
+    return response(members.map(VootController::sortedMembers));
+  }
 
-    LOG.debug("/members/{} result: {}", groupId, members);
+  private <T> ResponseEntity<T> response(ExternalGroupsService.Result<T> result) {
+    HttpHeaders headers = new HttpHeaders();
+    if (!result.isComplete()) {
+      headers.add(OMITTED_PROVIDERS_HEADER, String.join(",", result.omittedProviders));
+    }
+    if (result.isStale()) {
+      headers.add(STALE_PROVIDERS_HEADER, String.join(",", result.staleProviders));
+    }
+    //Spring answers a matching If-None-Match with 304 Not Modified without serializing the body
+    headers.setETag(ResponseETag.of(result.value));
+    headers.setCacheControl(cacheControl(result).getHeaderValue());
+    return new ResponseEntity<>(result.value, headers, HttpStatus.OK);
+  }
 
-    return members;
+  /*
+   * Incomplete or stale results must be revalidated, they will probably be different the next time
+   */
+  private CacheControl cacheControl(ExternalGroupsService.Result<?> result) {
+    long maxAgeSeconds = TimeUnit.MILLISECONDS.toSeconds(result.maxAgeMillis);
+    if (maxAgeSeconds <= 0 || !result.isComplete() || result.isStale()) {
+      return CacheControl.noCache().cachePrivate();
+    }
+    return CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePrivate();
+  }
+
+  private static List<Group> sortedGroups(List<Group> groups) {
+    return groups.stream().sorted(Comparator.comparing(group -> group.id, Comparator.nullsFirst(Comparator.naturalOrder()))).collect(toList());
+  }
+
+  private static List<Member> sortedMembers(List<Member> members) {
+    return members.stream().sorted(Comparator.comparing(member -> member.id, Comparator.nullsFirst(Comparator.naturalOrder()))).collect(toList());
   }
 
   private void assertClientCredentialsClient(OAuth2Authentication authentication, String clientId) {
@@ -163,11 +206,27 @@ public class VootController {
   }
 
   @ExceptionHandler(MalformedUrnException.class)
-  @ResponseStatus(value = HttpStatus.BAD_REQUEST)
-  public ModelMap handleMalformedPersonUrnException(MalformedUrnException exception) {
+  public ResponseEntity<ModelMap> handleMalformedPersonUrnException(MalformedUrnException exception) {
+    return error(HttpStatus.BAD_REQUEST, exception.getMessage());
+  }
+
+  @ExceptionHandler(AccessDeniedException.class)
+  public ResponseEntity<ModelMap> handleAccessDeniedException(AccessDeniedException exception) {
+    return error(HttpStatus.FORBIDDEN, exception.getMessage());
+  }
+
+  @ExceptionHandler(ResourceNotFoundException.class)
+  public ResponseEntity<ModelMap> handleResourceNotFoundException(ResourceNotFoundException exception) {
+    return error(HttpStatus.NOT_FOUND, "Not found");
+  }
+
+  /*
+   * Our paths are exempt from the Cache-Control of Spring Security, so errors must not be cached explicitly
+   */
+  private static ResponseEntity<ModelMap> error(HttpStatus status, String message) {
     ModelMap model = new ModelMap();
-    model.put("error", exception.getMessage());
-    return model;
+    model.put("error", message);
+    return ResponseEntity.status(status).cacheControl(CacheControl.noStore()).body(model);
   }
 
   public static abstract class MalformedUrnException extends Exception {
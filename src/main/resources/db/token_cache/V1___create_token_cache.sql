@@ -0,0 +1,8 @@
+CREATE TABLE ${table} (
+  token_digest CHAR(64) NOT NULL,
+  authentication VARBINARY(4096) NOT NULL,
+  expires_at BIGINT NOT NULL,
+  PRIMARY KEY (token_digest)
+);
+
+CREATE INDEX ${table}_expires_at ON ${table} (expires_at);
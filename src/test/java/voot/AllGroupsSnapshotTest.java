@@ -0,0 +1,116 @@
+package voot;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AllGroupsSnapshotTest {
+
+  private final AtomicReference<Supplier<ExternalGroupsService.Result<List<Group>>>> loader = new AtomicReference<>();
+  private final AllGroupsSnapshot subject = new AllGroupsSnapshot(() -> loader.get().get(), 60000L);
+
+  @Test
+  public void testRefresh() throws Exception {
+    assertFalse(subject.current().isPresent());
+
+    loader.set(() -> result(2));
+    subject.refresh();
+    assertEquals(2, subject.current().get().value.size());
+
+    loader.set(() -> result(3));
+    subject.refresh();
+    assertEquals(3, subject.current().get().value.size());
+    assertEquals(3, metrics().get("allGroups.snapshot.size"));
+    assertEquals(0L, metrics().get("allGroups.snapshot.refreshFailures"));
+  }
+
+  @Test
+  public void testFailedRefreshKeepsSnapshot() throws Exception {
+    loader.set(() -> result(2));
+    subject.refresh();
+
+    loader.set(() -> {
+      throw new IllegalStateException("Not all providers returned their groups");
+    });
+    subject.refresh();
+    assertEquals(2, subject.current().get().value.size());
+
+    loader.set(() -> new ExternalGroupsService.Result<>(groups(1), Collections.singletonList("grouper")));
+    subject.refresh();
+    assertEquals(2, subject.current().get().value.size());
+    assertTrue(subject.current().get().isComplete());
+    assertEquals(2L, metrics().get("allGroups.snapshot.refreshFailures"));
+  }
+
+  @Test
+  public void testIncompleteResultWithoutSnapshot() throws Exception {
+    loader.set(() -> new ExternalGroupsService.Result<>(groups(1), Collections.singletonList("grouper")));
+    subject.refresh();
+    //readers keep querying the providers live rather than getting the incomplete result for a full interval
+    assertFalse(subject.current().isPresent());
+    assertEquals(1L, metrics().get("allGroups.snapshot.refreshFailures"));
+
+    loader.set(() -> result(2));
+    subject.refresh();
+    assertTrue(subject.current().get().isComplete());
+    assertEquals(2, subject.current().get().value.size());
+  }
+
+  @Test
+  public void testScheduledRefresh() throws Exception {
+    loader.set(() -> result(1));
+    AllGroupsSnapshot scheduled = new AllGroupsSnapshot(() -> loader.get().get(), 50L);
+    scheduled.start();
+    try {
+      long start = System.currentTimeMillis();
+      while (!scheduled.current().isPresent() && System.currentTimeMillis() - start < 2000L) {
+        Thread.sleep(10L);
+      }
+      assertEquals(1, scheduled.current().get().value.size());
+
+      loader.set(() -> result(2));
+      while (scheduled.current().get().value.size() == 1 && System.currentTimeMillis() - start < 2000L) {
+        Thread.sleep(10L);
+      }
+      assertEquals(2, scheduled.current().get().value.size());
+    } finally {
+      scheduled.shutdown();
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSnapshotIsImmutable() throws Exception {
+    loader.set(() -> result(1));
+    subject.refresh();
+    subject.current().get().value.clear();
+  }
+
+  private ExternalGroupsService.Result<List<Group>> result(int size) {
+    return new ExternalGroupsService.Result<>(groups(size));
+  }
+
+  private List<Group> groups(int size) {
+    Group[] groups = new Group[size];
+    for (int i = 0; i < size; i++) {
+      groups[i] = new Group("urn:collab:group:example.org:" + i, "group " + i, null, "example", Membership.MEMBER);
+    }
+    return Arrays.asList(groups);
+  }
+
+  private Map<String, Number> metrics() {
+    return subject.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+  }
+}
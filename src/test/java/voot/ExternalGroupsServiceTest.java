@@ -1,6 +1,7 @@
 package voot;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static voot.MockProvider.SimulationMode.Error;
 import static voot.MockProvider.SimulationMode.Success;
@@ -12,29 +13,51 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
 
+import voot.provider.AimdLimiter;
+import voot.provider.AsyncProvider;
+import voot.provider.BulkheadProvider;
+import voot.provider.CallContext;
+import voot.provider.CircuitBreaker;
+import voot.provider.CircuitBreakingProvider;
 import voot.provider.GroupProviderType;
+import voot.provider.PlatformThreadProviderExecutor;
 import voot.provider.Provider;
+import voot.provider.ProviderExecutor;
 import voot.valueobject.Group;
 import voot.valueobject.Member;
+import voot.valueobject.Membership;
 
 public class ExternalGroupsServiceTest {
 
+  private static final long DEADLINE_MILLIS = 1000L;
+  private static final ProviderExecutor EXECUTOR = new PlatformThreadProviderExecutor(20);
+
   @Test(expected = IllegalArgumentException.class)
   public void mustHaveClientsConfigured() {
-    new ExternalGroupsService(Collections.emptyList());
+    new ExternalGroupsService(Collections.emptyList(), EXECUTOR, DEADLINE_MILLIS);
   }
 
   @Test
   public void testAllCompleteInTimeWithSingleResult() throws Exception {
     List<Provider> providers = new ArrayList<>();
     IntStream.rangeClosed(1, 10).forEach(i -> providers.add(new MockProvider(200L, Success, GROUPER)));
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers);
-    final List<Group> result = externalGroupsService.getMyGroups("foo", "example.com");
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+    final List<Group> result = externalGroupsService.getMyGroups("foo", "example.com").value;
     assertTrue(result.size() == providers.size());
   }
 
@@ -43,8 +66,8 @@ public class ExternalGroupsServiceTest {
     final MockProvider successMockProvider = new MockProvider(200L, Success, GROUPER);
     final MockProvider errorMockProvider = new MockProvider(200L, Error, GROUPER);
 
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Arrays.asList(successMockProvider, errorMockProvider));
-    final List<Group> foo = externalGroupsService.getMyGroups("foo", "example.com");
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Arrays.asList(successMockProvider, errorMockProvider), EXECUTOR, DEADLINE_MILLIS);
+    final List<Group> foo = externalGroupsService.getMyGroups("foo", "example.com").value;
     assertTrue(foo.size() == 1);
   }
 
@@ -52,19 +75,305 @@ public class ExternalGroupsServiceTest {
   public void testSomeCompleteInTime() throws Exception {
     List<Provider> providers = new ArrayList<>();
     IntStream.rangeClosed(1, 10).forEach(i -> providers.add(new MockProvider(200L, i % 2 == 0 ? Success : Timeout, GROUPER)));
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers);
-    final List<Group> foo = externalGroupsService.getMyGroups("foo", "example.com");
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+    final List<Group> foo = externalGroupsService.getMyGroups("foo", "example.com").value;
     assertTrue(foo.size() == 5);
   }
 
+  @Test
+  public void testNonBlockingProvidersBypassExecutor() throws Exception {
+    ProviderExecutor rejectingExecutor = new ProviderExecutor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+
+      @Override
+      public void shutdown() {
+      }
+    };
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(
+      Collections.singletonList(new AsyncMockProvider()), rejectingExecutor, DEADLINE_MILLIS);
+
+    assertEquals(2, externalGroupsService.getMyGroups("foo", "example.com").value.size());
+    assertTrue(externalGroupsService.getMyGroupById("foo", "id").value.isPresent());
+  }
+
+  @Test
+  public void testDeadlinePassesBeforeAllComplete() throws Exception {
+    List<Provider> providers = Arrays.asList(
+      new MockProvider(200L, Success, GROUPER),
+      new MockProvider(5000L, Timeout, GROUPER));
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, 500L);
+
+    long start = System.currentTimeMillis();
+    ExternalGroupsService.Result<List<Group>> result = externalGroupsService.getMyGroups("foo", "example.com");
+
+    assertTrue(System.currentTimeMillis() - start < 2500L);
+    assertEquals(1, result.value.size());
+    assertEquals(Collections.singletonList("example"), result.omittedProviders);
+    assertFalse(result.isComplete());
+  }
+
   @Test
   public void testGetMyGroupById() throws Exception {
     List<Provider> providers = Collections.singletonList(new MockProvider(200L, Success, VOOT2));
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers);
-    Optional<Group> group = externalGroupsService.getMyGroupById("admin", "urn:collab:group:example.com:admin-team");
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+    Optional<Group> group = externalGroupsService.getMyGroupById("admin", "urn:collab:group:example.com:admin-team").value;
     assertEquals("urn:collab:group:example.com:admin-team", group.get().id);
   }
 
+  @Test
+  public void testGetMyGroupByIdReturnsOnFirstHit() throws Exception {
+    List<Provider> providers = Arrays.asList(
+      new MockProvider(3000L, Timeout, VOOT2),
+      new MockProvider(0L, Success, VOOT2));
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, 5000L);
+
+    long start = System.currentTimeMillis();
+    ExternalGroupsService.Result<Optional<Group>> result = externalGroupsService.getMyGroupById("admin", "urn:collab:group:example.com:admin-team");
+
+    assertTrue(System.currentTimeMillis() - start < 1000L);
+    assertTrue(result.value.isPresent());
+    assertTrue(result.isComplete());
+  }
+
+  @Test
+  public void testProviderOutlivingDeadlineOpensCircuitAndShrinksLimit() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("slow", 2, 60000L, 1);
+    //a latency threshold beyond the sleep, only the timeouts may shrink the limit
+    AimdLimiter limiter = new AimdLimiter(10, 1, 10, 10000L);
+    Provider slowProvider = new CircuitBreakingProvider(new BulkheadProvider(new MockProvider(300L, Timeout, VOOT2), limiter), circuitBreaker);
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(slowProvider), EXECUTOR, 100L);
+
+    for (int i = 0; i < 2; i++) {
+      assertEquals(Collections.singletonList("example"), externalGroupsService.getMyGroups("uid" + i, "example.com").omittedProviders);
+    }
+    long start = System.currentTimeMillis();
+    while (circuitBreaker.getState() != CircuitBreaker.State.OPEN && System.currentTimeMillis() - start < 2000L) {
+      Thread.sleep(10L);
+    }
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertTrue(limiter.getLimit() < 10);
+  }
+
+  @Test
+  public void testShortCircuitedCallsAreNotHeldAgainstProvider() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("slow", 1, 60000L, 1);
+    CountDownLatch done = new CountDownLatch(1);
+    Provider slowProvider = new CircuitBreakingProvider(new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public Optional<Group> getGroupMembership(String uid, String groupId) {
+        try {
+          Thread.sleep(300L);
+        } catch (InterruptedException e) {
+        }
+        done.countDown();
+        return Optional.empty();
+      }
+    }, circuitBreaker);
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(
+      Arrays.asList(slowProvider, new MockProvider(0L, Success, VOOT2)), EXECUTOR, 5000L);
+
+    assertTrue(externalGroupsService.getMyGroupById("admin", "urn:collab:group:example.com:admin-team").value.isPresent());
+    assertTrue(done.await(1, TimeUnit.SECONDS));
+    Thread.sleep(50L);
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void testGetMyGroupByIdCancelsCallsInFlight() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch cancelled = new CountDownLatch(1);
+    MockProvider slowProvider = new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public Optional<Group> getGroupMembership(String uid, String groupId) {
+        CallContext.current().get().onCancel(cancelled::countDown);
+        started.countDown();
+        try {
+          Thread.sleep(3000L);
+        } catch (InterruptedException e) {
+        }
+        return Optional.empty();
+      }
+    };
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(
+      Arrays.asList(slowProvider, new MockProvider(200L, Success, VOOT2) {
+        @Override
+        public Optional<Group> getGroupMembership(String uid, String groupId) {
+          try {
+            //only answer once the slow call is in flight, otherwise there is nothing to cancel
+            started.await(1, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+          }
+          return super.getGroupMembership(uid, groupId);
+        }
+      }), EXECUTOR, 5000L);
+
+    assertTrue(externalGroupsService.getMyGroupById("admin", "urn:collab:group:example.com:admin-team").value.isPresent());
+    assertTrue(cancelled.await(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testGetMyGroupByIdWaitsForAllWhenNotAMember() throws Exception {
+    List<Provider> providers = Arrays.asList(
+      new MockProvider(300L, Timeout, VOOT2),
+      new MockProvider(0L, Error, VOOT2));
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+
+    long start = System.currentTimeMillis();
+    ExternalGroupsService.Result<Optional<Group>> result = externalGroupsService.getMyGroupById("admin", "urn:collab:group:example.com:admin-team");
+
+    assertTrue(System.currentTimeMillis() - start >= 300L);
+    assertFalse(result.value.isPresent());
+    assertTrue(result.isComplete());
+  }
+
+  @Test
+  public void testConcurrentIdenticalLookupsShareOneFanOut() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    MockProvider countingProvider = new MockProvider(0L, Success, GROUPER) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        invocations.incrementAndGet();
+        try {
+          Thread.sleep(300L);
+        } catch (InterruptedException e) {
+        }
+        return super.getGroupMemberships(uid);
+      }
+    };
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(countingProvider), EXECUTOR, DEADLINE_MILLIS);
+
+    List<CompletableFuture<ExternalGroupsService.Result<List<Group>>>> lookups = IntStream.range(0, 5)
+      .mapToObj(i -> CompletableFuture.supplyAsync(() -> externalGroupsService.getMyGroups("foo", "example.com"), EXECUTOR))
+      .collect(Collectors.toList());
+    for (CompletableFuture<ExternalGroupsService.Result<List<Group>>> lookup : lookups) {
+      assertEquals(1, lookup.get(2, TimeUnit.SECONDS).value.size());
+    }
+
+    assertEquals(1, invocations.get());
+    Map<String, Number> metrics = externalGroupsService.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    assertEquals(4L, metrics.get("externalGroups.myGroups.coalesced"));
+  }
+
+  @Test
+  public void testLookupsAsOwnerDoNotShareOurOwnFlight() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    MockProvider blockingProvider = new MockProvider(0L, Success, GROUPER) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        invocations.incrementAndGet();
+        started.countDown();
+        try {
+          release.await(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+        }
+        return super.getGroupMemberships(uid);
+      }
+    };
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(blockingProvider), EXECUTOR, DEADLINE_MILLIS);
+
+    //our own lookup - in a real ring possibly waiting on a peer that forwards the same uid to us
+    CompletableFuture<ExternalGroupsService.Result<List<Group>>> own =
+      CompletableFuture.supplyAsync(() -> externalGroupsService.getMyGroups("foo", "example.com"), EXECUTOR);
+    assertTrue(started.await(1, TimeUnit.SECONDS));
+    CompletableFuture<ExternalGroupsService.Result<List<Group>>> asOwner =
+      CompletableFuture.supplyAsync(() -> externalGroupsService.getMyGroupsAsOwner("foo", "example.com", false, DEADLINE_MILLIS), EXECUTOR);
+    long start = System.currentTimeMillis();
+    while (invocations.get() < 2 && System.currentTimeMillis() - start < 1000L) {
+      Thread.sleep(5L);
+    }
+    release.countDown();
+
+    assertEquals(2, invocations.get());
+    assertEquals(1, own.get(2, TimeUnit.SECONDS).value.size());
+    assertEquals(1, asOwner.get(2, TimeUnit.SECONDS).value.size());
+  }
+
+  @Test
+  public void testMembershipsAreCachedPerProvider() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    MockProvider countingProvider = new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        invocations.incrementAndGet();
+        return super.getGroupMemberships(uid);
+      }
+    };
+    MembershipCache membershipCache = new MembershipCache(1024 * 1024, Collections.singletonMap("example", 60000L), 0L);
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(countingProvider), EXECUTOR, DEADLINE_MILLIS, membershipCache);
+
+    assertEquals(1, externalGroupsService.getMyGroups("foo", "example.com").value.size());
+    assertEquals(1, externalGroupsService.getMyExternalGroups("foo", "example.com").value.size());
+    assertEquals(1, invocations.get());
+
+    externalGroupsService.getMyGroups("bar", "example.com");
+    assertEquals(2, invocations.get());
+  }
+
+  @Test
+  public void testStaleMembershipsServedWhenProviderFails() throws Exception {
+    AtomicBoolean failing = new AtomicBoolean();
+    AtomicInteger invocations = new AtomicInteger();
+    MockProvider flakyProvider = new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        invocations.incrementAndGet();
+        if (failing.get()) {
+          throw new RuntimeException("failed!");
+        }
+        return super.getGroupMemberships(uid);
+      }
+    };
+    MembershipCache membershipCache = new MembershipCache(1024 * 1024, Collections.emptyMap(), 60000L);
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(flakyProvider), EXECUTOR, DEADLINE_MILLIS, membershipCache);
+
+    assertFalse(externalGroupsService.getMyGroups("foo", "example.com").isStale());
+
+    failing.set(true);
+    ExternalGroupsService.Result<List<Group>> result = externalGroupsService.getMyGroups("foo", "example.com");
+    assertEquals(1, result.value.size());
+    assertEquals(Collections.singletonList("example"), result.staleProviders);
+    assertTrue(result.isComplete());
+
+    //the background refresh
+    long start = System.currentTimeMillis();
+    while (invocations.get() < 3 && System.currentTimeMillis() - start < 1000L) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, invocations.get());
+  }
+
+  @Test
+  public void testStaleMembershipsServedWhenProviderIsTooSlow() throws Exception {
+    AtomicBoolean slow = new AtomicBoolean();
+    MockProvider slowProvider = new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        if (slow.get()) {
+          try {
+            Thread.sleep(1000L);
+          } catch (InterruptedException e) {
+          }
+        }
+        return super.getGroupMemberships(uid);
+      }
+    };
+    MembershipCache membershipCache = new MembershipCache(1024 * 1024, Collections.emptyMap(), 60000L);
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(slowProvider), EXECUTOR, 300L, membershipCache);
+
+    externalGroupsService.getMyGroups("foo", "example.com");
+    slow.set(true);
+    ExternalGroupsService.Result<List<Group>> result = externalGroupsService.getMyGroups("foo", "example.com");
+
+    assertEquals(1, result.value.size());
+    assertTrue(result.isComplete());
+    assertTrue(result.isStale());
+  }
+
   @Test
   public void testGetMyExternalGroups() throws Exception {
     List<Provider> providers = Arrays.asList(
@@ -72,8 +381,8 @@ public class ExternalGroupsServiceTest {
       new MockProvider(200L, Timeout, GROUPER),
       new MockProvider(200L, Error, GROUPER));
 
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers);
-    List<Group> groups = externalGroupsService.getMyExternalGroups("admin", "example.com");
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+    List<Group> groups = externalGroupsService.getMyExternalGroups("admin", "example.com").value;
     assertEquals(1, groups.size());
   }
 
@@ -85,8 +394,8 @@ public class ExternalGroupsServiceTest {
       new MockProvider(200L, Success, VOOT2),
       new MockProvider(200L, Error, GROUPER));
 
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers);
-    List<Member> members = externalGroupsService.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon");
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+    List<Member> members = externalGroupsService.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon").value;
     assertEquals(1, members.size());
     assertEquals(MockProvider.MEMBER, members.get(0));
   }
@@ -98,9 +407,98 @@ public class ExternalGroupsServiceTest {
       new MockProvider(200L, Success, VOOT2)
   );
 
-    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers);
-    List<Group> allGroups = externalGroupsService.getAllGroups();
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(providers, EXECUTOR, DEADLINE_MILLIS);
+    List<Group> allGroups = externalGroupsService.getAllGroups().value;
     assertEquals(1, allGroups.size());
   }
 
+  @Test
+  public void testUnreachableOwnerFallsBackToProviders() throws Exception {
+    PeerRing ring = new PeerRing(Arrays.asList("http://localhost:1", "http://localhost:2"), "http://localhost:2", 10);
+    String uid = IntStream.range(0, 100).mapToObj(i -> "urn:collab:person:example.org:" + i)
+      .filter(candidate -> ring.ownerOf(candidate).equals("http://localhost:1")).findFirst().get();
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(new MockProvider(0L, Success, VOOT2)),
+      EXECUTOR, DEADLINE_MILLIS, MembershipCache.disabled(), 0L, new PeerClient(ring, "secret", 250, 500, 10000L));
+
+    assertEquals(1, externalGroupsService.getMyGroups(uid, "example.org").value.size());
+    assertEquals(1, externalGroupsService.getMyExternalGroups(uid, "example.org").value.size());
+  }
+
+  @Test
+  public void testGetAllGroupsFromSnapshot() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    MockProvider countingProvider = new MockProvider(0L, Success, GROUPER) {
+      @Override
+      public List<Group> getAllGroups() {
+        invocations.incrementAndGet();
+        return super.getAllGroups();
+      }
+    };
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(countingProvider),
+      EXECUTOR, DEADLINE_MILLIS, MembershipCache.disabled(), TimeUnit.HOURS.toMillis(1));
+    try {
+      long start = System.currentTimeMillis();
+      while (snapshotSize(externalGroupsService).intValue() == 0 && System.currentTimeMillis() - start < 2000L) {
+        Thread.sleep(10L);
+      }
+      for (int i = 0; i < 3; i++) {
+        assertEquals(1, externalGroupsService.getAllGroups().value.size());
+      }
+      assertEquals(1, invocations.get());
+    } finally {
+      externalGroupsService.shutdown();
+    }
+  }
+
+  @Test
+  public void testSnapshotWaitsForSlowProviderBeyondDeadline() throws Exception {
+    MockProvider slowProvider = new MockProvider(0L, Success, GROUPER) {
+      @Override
+      public List<Group> getAllGroups() {
+        try {
+          Thread.sleep(DEADLINE_MILLIS + 500L);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return super.getAllGroups();
+      }
+    };
+    ExternalGroupsService externalGroupsService = new ExternalGroupsService(Collections.singletonList(slowProvider),
+      EXECUTOR, DEADLINE_MILLIS, MembershipCache.disabled(), TimeUnit.HOURS.toMillis(1), 10000L, PeerClient.disabled());
+    try {
+      long start = System.currentTimeMillis();
+      while (snapshotSize(externalGroupsService).intValue() == 0 && System.currentTimeMillis() - start < 5000L) {
+        Thread.sleep(10L);
+      }
+      ExternalGroupsService.Result<List<Group>> allGroups = externalGroupsService.getAllGroups();
+      assertTrue(allGroups.isComplete());
+      assertEquals(1, allGroups.value.size());
+    } finally {
+      externalGroupsService.shutdown();
+    }
+  }
+
+  private Number snapshotSize(ExternalGroupsService externalGroupsService) {
+    return externalGroupsService.metrics().stream()
+      .filter(metric -> metric.getName().equals("allGroups.snapshot.size")).findFirst().get().getValue();
+  }
+
+  private static class AsyncMockProvider extends MockProvider implements AsyncProvider {
+
+    AsyncMockProvider() {
+      super(0L, Success, VOOT2);
+    }
+
+    @Override
+    public CompletionStage<List<Group>> getGroupMembershipsAsync(String uid) {
+      return CompletableFuture.completedFuture(Arrays.asList(
+        new Group("urn:collab:group:example.org:one", "one", null, "example", Membership.MEMBER),
+        new Group("urn:collab:group:example.org:two", "two", null, "example", Membership.MEMBER)));
+    }
+
+    @Override
+    public CompletionStage<Optional<Group>> getGroupMembershipAsync(String uid, String groupId) {
+      return CompletableFuture.completedFuture(getGroupMembership(uid, groupId));
+    }
+  }
 }
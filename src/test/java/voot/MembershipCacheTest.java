@@ -0,0 +1,223 @@
+package voot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.actuate.metrics.Metric;
+import voot.provider.Provider;
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static voot.MockProvider.SimulationMode.Success;
+import static voot.provider.GroupProviderType.VOOT2;
+
+public class MembershipCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final MockProvider provider = new MockProvider(0L, Success, VOOT2);
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void testCachedWithinTtl() throws Exception {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.singletonMap("example", 100L), 0L);
+
+    load(subject, "john");
+    load(subject, "john");
+    assertEquals(1, loads.get());
+
+    load(subject, "mary");
+    assertEquals(2, loads.get());
+
+    Thread.sleep(150);
+    load(subject, "john");
+    assertEquals(3, loads.get());
+
+    Map<String, Number> metrics = metrics(subject);
+    assertEquals(1L, metrics.get("membershipCache.hits"));
+    assertEquals(3L, metrics.get("membershipCache.misses"));
+  }
+
+  @Test
+  public void testProvidersWithoutTtlAreNotCached() {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.emptyMap(), 0L);
+    assertFalse(subject.isCached(provider));
+
+    load(subject, "john");
+    load(subject, "john");
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEvictedWhenOverWeight() {
+    Map<String, Long> ttl = new HashMap<>();
+    ttl.put("example", 60000L);
+    //room for about two entries with a single group
+    MembershipCache subject = new MembershipCache(1100, ttl, 0L);
+
+    load(subject, "john");
+    load(subject, "mary");
+    load(subject, "john");
+    load(subject, "pete");
+    assertEquals(3, loads.get());
+
+    Map<String, Number> metrics = metrics(subject);
+    assertEquals(1L, metrics.get("membershipCache.evictions"));
+    assertEquals(2, metrics.get("membershipCache.size"));
+
+    load(subject, "john");
+    assertEquals(3, loads.get());
+    load(subject, "mary");
+    assertEquals(4, loads.get());
+  }
+
+  @Test
+  public void testStaleWithinGraceWindow() throws Exception {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.singletonMap("example", 50L), 200L);
+    assertFalse(subject.getStale(provider, "john").isPresent());
+
+    load(subject, "john");
+    Thread.sleep(100);
+    assertTrue(subject.getStale(provider, "john").isPresent());
+    load(subject, "john");
+    assertEquals(2, loads.get());
+
+    Thread.sleep(300);
+    assertFalse(subject.getStale(provider, "john").isPresent());
+    assertEquals(1L, metrics(subject).get("membershipCache.staleServed"));
+  }
+
+  @Test
+  public void testStaleWithoutTtl() throws Exception {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.emptyMap(), 1000L);
+
+    load(subject, "john");
+    load(subject, "john");
+    assertEquals(2, loads.get());
+    assertTrue(subject.getStale(provider, "john").isPresent());
+  }
+
+  @Test
+  public void testConcurrentRefreshesAreDeduplicated() throws Exception {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.emptyMap(), 1000L);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Supplier<List<Group>> loader = () -> {
+        try {
+          release.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return groups();
+      };
+      subject.refresh(provider, "john", loader, executor);
+      subject.refresh(provider, "john", loader, executor);
+      release.countDown();
+      executor.shutdown();
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+
+      assertEquals(1, loads.get());
+      assertTrue(subject.getStale(provider, "john").isPresent());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testAsync() throws Exception {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.singletonMap("example", 60000L), 0L);
+
+    for (int i = 0; i < 2; i++) {
+      List<Group> groups = subject.getAsync(provider, "john", () -> CompletableFuture.completedFuture(groups())).toCompletableFuture().get(1, TimeUnit.SECONDS);
+      assertEquals(1, groups.size());
+    }
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testFileTierSurvivesRestart() throws Exception {
+    Path path = folder.getRoot().toPath().resolve("memberships.cache");
+    Map<String, Long> ttl = Collections.singletonMap("example", 60000L);
+    MembershipFileStore fileStore = new MembershipFileStore(path, 64 * 1024);
+    load(new MembershipCache(1024 * 1024, ttl, 0L, Optional.of(fileStore)), "john");
+    fileStore.close();
+
+    MembershipCache restarted = new MembershipCache(1024 * 1024, ttl, 0L, Optional.of(new MembershipFileStore(path, 64 * 1024)));
+    assertEquals("admins", load(restarted, "john").get(0).displayName);
+    load(restarted, "john");
+    assertEquals(1, loads.get());
+
+    Map<String, Number> metrics = metrics(restarted);
+    assertEquals(1L, metrics.get("membershipCache.fileHits"));
+    assertEquals(1L, metrics.get("membershipCache.hits"));
+    assertEquals(0L, metrics.get("membershipCache.file.compactions"));
+    assertEquals(0L, metrics.get("membershipCache.file.droppedWrites"));
+  }
+
+  @Test
+  public void testFileTierServesEvictedStaleEntries() throws Exception {
+    MembershipFileStore fileStore = new MembershipFileStore(folder.getRoot().toPath().resolve("memberships.cache"), 64 * 1024);
+    //no room on the heap at all
+    MembershipCache subject = new MembershipCache(1, Collections.singletonMap("example", 50L), 1000L, Optional.of(fileStore));
+
+    load(subject, "john");
+    Thread.sleep(100);
+    assertTrue(subject.getStale(provider, "john").isPresent());
+    load(subject, "john");
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testMaxAgeIsTimeLeftOnEntry() throws Exception {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.singletonMap("example", 10000L), 0L);
+    List<Provider> providers = Collections.singletonList(provider);
+    assertEquals(0L, subject.getMaxAgeMillis(providers, "john"));
+
+    load(subject, "john");
+    Thread.sleep(200);
+
+    long maxAgeMillis = subject.getMaxAgeMillis(providers, "john");
+    assertTrue(maxAgeMillis > 0 && maxAgeMillis <= 9800L);
+    assertEquals(0L, subject.getMaxAgeMillis(providers, "mary"));
+  }
+
+  @Test
+  public void testMaxAgeWithoutTtl() {
+    MembershipCache subject = new MembershipCache(1024 * 1024, Collections.emptyMap(), 0L);
+    load(subject, "john");
+    assertEquals(0L, subject.getMaxAgeMillis(Collections.singletonList(provider), "john"));
+  }
+
+  private List<Group> load(MembershipCache subject, String uid) {
+    return subject.get(provider, uid, this::groups);
+  }
+
+  private List<Group> groups() {
+    loads.incrementAndGet();
+    return Collections.singletonList(new Group("urn:collab:group:example.org:admins", "admins", "Administrators", "example", Membership.ADMIN));
+  }
+
+  private Map<String, Number> metrics(MembershipCache subject) {
+    return subject.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+  }
+}
@@ -0,0 +1,124 @@
+package voot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MembershipFileStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final long future = System.currentTimeMillis() + 60000L;
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    MembershipFileStore subject = new MembershipFileStore(path(), 4096);
+    List<Group> groups = Arrays.asList(
+      new Group("urn:collab:group:example.org:one", "één", null, "example", Membership.ADMIN),
+      new Group("urn:collab:group:example.org:two", "two", "description", null, new Membership("guest")),
+      new Group("urn:collab:group:example.org:three", null, null, "example", null));
+    subject.put("example:john", groups, future, future + 1000L);
+
+    MembershipFileStore.Record record = subject.get("example:john").get();
+    assertEquals(future, record.freshUntilMillis);
+    assertEquals(future + 1000L, record.staleUntilMillis);
+    assertEquals(3, record.groups.size());
+    assertEquals("één", record.groups.get(0).displayName);
+    assertEquals(Membership.ADMIN, record.groups.get(0).membership);
+    assertEquals("guest", record.groups.get(1).membership.getBasic());
+    assertNull(record.groups.get(1).sourceID);
+    assertNull(record.groups.get(2).membership);
+    assertFalse(subject.get("example:mary").isPresent());
+  }
+
+  @Test
+  public void testSurvivesReopen() throws Exception {
+    Path path = path();
+    MembershipFileStore subject = new MembershipFileStore(path, 4096);
+    subject.put("example:john", groups(1), future, future);
+    subject.put("example:john", groups(2), future, future);
+    subject.put("example:expired", groups(1), System.currentTimeMillis() - 1L, System.currentTimeMillis() - 1L);
+    subject.close();
+
+    MembershipFileStore reopened = new MembershipFileStore(path, 4096);
+    assertEquals(2, reopened.get("example:john").get().groups.size());
+    assertFalse(reopened.get("example:expired").isPresent());
+
+    reopened.put("example:mary", groups(1), future, future);
+    assertTrue(reopened.get("example:mary").isPresent());
+  }
+
+  @Test
+  public void testCompactsWhenFull() throws Exception {
+    Path path = path();
+    MembershipFileStore subject = new MembershipFileStore(path, 2048);
+    for (int i = 0; i < 50; i++) {
+      subject.put("example:john", groups(1), future, future);
+      subject.put("example:user" + i, groups(1), future, future);
+    }
+    assertTrue(subject.getCompactions() > 0);
+    assertTrue(subject.usedBytes() <= 2048);
+    assertTrue(subject.get("example:john").isPresent());
+    assertTrue(subject.get("example:user49").isPresent());
+    assertFalse(subject.get("example:user0").isPresent());
+
+    int size = subject.size();
+    subject.close();
+    assertEquals(size, new MembershipFileStore(path, 2048).size());
+  }
+
+  @Test
+  public void testIgnoresForeignFile() throws Exception {
+    Path path = path();
+    java.nio.file.Files.write(path, "not a membership file".getBytes());
+
+    MembershipFileStore subject = new MembershipFileStore(path, 4096);
+    assertEquals(0, subject.size());
+    subject.put("example:john", groups(1), future, future);
+    assertTrue(subject.get("example:john").isPresent());
+  }
+
+  @Test
+  public void testTooLargeNotStored() throws Exception {
+    MembershipFileStore subject = new MembershipFileStore(path(), 512);
+    subject.put("example:john", groups(20), future, future);
+    assertFalse(subject.get("example:john").isPresent());
+  }
+
+  @Test
+  public void testCloseFinishesPendingWrites() throws Exception {
+    Path path = path();
+    MembershipFileStore subject = new MembershipFileStore(path, 4096);
+    subject.putAsync("example:john", groups(2), future, future);
+    subject.close();
+
+    subject.putAsync("example:mary", groups(1), future, future);
+    assertEquals(1L, subject.getDroppedWrites());
+
+    MembershipFileStore reopened = new MembershipFileStore(path, 4096);
+    assertEquals(2, reopened.get("example:john").get().groups.size());
+    assertFalse(reopened.get("example:mary").isPresent());
+  }
+
+  private Path path() throws Exception {
+    return folder.getRoot().toPath().resolve("memberships.cache");
+  }
+
+  private List<Group> groups(int size) {
+    Group[] groups = new Group[size];
+    Arrays.fill(groups, new Group("urn:collab:group:example.org:team", "team", null, "example", Membership.MEMBER));
+    return Arrays.asList(groups);
+  }
+}
@@ -2,6 +2,8 @@ package voot;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
 import voot.provider.AbstractProvider;
 import voot.provider.GroupProviderType;
 import voot.provider.Provider;
@@ -40,6 +42,16 @@ public class MockProvider extends AbstractProvider {
     return true;
   }
 
+  @Override
+  public Routing getMembershipRouting() {
+    return Routing.ALL;
+  }
+
+  @Override
+  public Routing getGroupRouting() {
+    return Routing.ALL;
+  }
+
   @Override
   public List<Group> getGroupMemberships(String uid) {
     return getResult(defaultGroup("id"));
@@ -53,7 +65,7 @@ public class MockProvider extends AbstractProvider {
 
   @Override
   public Optional<Group> getGroupMembership(String uid, String groupId) {
-    return Optional.of(defaultGroup(groupId));
+    return getResult(defaultGroup(groupId)).stream().findFirst();
   }
 
   @Override
@@ -71,7 +83,7 @@ public class MockProvider extends AbstractProvider {
         LOG.debug("timed out");
         return Collections.emptyList();
       case Error:
-        throw new RuntimeException("failed!");
+        throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR, "failed!");
       default: // Success
         LOG.debug("got result");
         return Collections.singletonList(group);
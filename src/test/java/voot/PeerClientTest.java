@@ -0,0 +1,103 @@
+package voot;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Rule;
+import org.junit.Test;
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PeerClientTest {
+
+  private static final String OWNER = "http://localhost:8889";
+  private static final String SELF = "http://localhost:8890";
+
+  private final PeerRing ring = new PeerRing(Arrays.asList(OWNER, SELF), SELF, 100);
+  private final PeerClient subject = new PeerClient(ring, "secret", 250, 1000, 60000L);
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(8889);
+
+  @Test
+  public void testFetchesFromOwner() throws Exception {
+    String uid = uidOwnedBy(OWNER);
+    stubFor(get(urlPathEqualTo("/peer/groups/" + uid)).withHeader(PeerClient.PEER_SECRET_HEADER, equalTo("secret")).willReturn(aResponse()
+      .withStatus(200)
+      .withHeader("Content-Type", "application/json")
+      .withHeader("X-Stale-Providers", "flaky")
+      .withHeader(PeerClient.MAX_AGE_HEADER, "30000")
+      .withBody("[{\"id\":\"urn:collab:group:example.org:team\",\"displayName\":\"team\",\"description\":null,\"sourceID\":\"example\",\"membership\":{\"basic\":\"admin\"}}]")));
+
+    ExternalGroupsService.Result<List<Group>> result = subject.getMyGroups(uid, "example.org", true, 2000L).get();
+
+    assertEquals(1, result.value.size());
+    assertEquals("urn:collab:group:example.org:team", result.value.get(0).id);
+    assertSame(Membership.ADMIN, result.value.get(0).membership);
+    assertEquals(Arrays.asList("flaky"), result.staleProviders);
+    assertTrue(result.isComplete());
+    assertEquals(30000L, result.maxAgeMillis);
+    //waiting for a connection and connecting take half of the 1000 ms timeout, the owner needs some of the rest to answer
+    verify(getRequestedFor(urlEqualTo("/peer/groups/" + uid + "?schacHomeOrganization=example.org&external=true"))
+      .withHeader(PeerClient.DEADLINE_HEADER, matching("[34][0-9]{2}")));
+  }
+
+  @Test
+  public void testNotForwardedWhenSelfIsOwner() throws Exception {
+    assertFalse(subject.getMyGroups(uidOwnedBy(SELF), "example.org", false, 1000L).isPresent());
+    verify(0, getRequestedFor(urlMatching(".*")));
+  }
+
+  @Test
+  public void testUnavailableOwnerIsSkipped() throws Exception {
+    String uid = uidOwnedBy(OWNER);
+    stubFor(get(urlPathEqualTo("/peer/groups/" + uid)).willReturn(aResponse().withStatus(500)));
+
+    assertFalse(subject.getMyGroups(uid, "example.org", false, 1000L).isPresent());
+    assertFalse(subject.getMyGroups(uid, "example.org", false, 1000L).isPresent());
+
+    verify(1, getRequestedFor(urlPathEqualTo("/peer/groups/" + uid)));
+    assertEquals(1L, metric("peers.unavailable"));
+    assertEquals(1L, metric("peers.failures"));
+  }
+
+  @Test
+  public void testSlowOwnerIsBoundedByBudget() throws Exception {
+    String uid = uidOwnedBy(OWNER);
+    stubFor(get(urlPathEqualTo("/peer/groups/" + uid)).willReturn(aResponse().withStatus(200).withFixedDelay(3000)
+      .withHeader("Content-Type", "application/json").withBody("[]")));
+
+    long start = System.currentTimeMillis();
+    assertFalse(subject.getMyGroups(uid, "example.org", false, 400L).isPresent());
+    assertTrue(System.currentTimeMillis() - start < 1000L);
+  }
+
+  @Test
+  public void testPeerSecret() {
+    assertTrue(subject.isPeer("secret"));
+    assertFalse(subject.isPeer("nope"));
+    assertFalse(subject.isPeer(null));
+    assertFalse(PeerClient.disabled().isPeer(null));
+    assertFalse(PeerClient.disabled().getMyGroups("john", "example.org", false, 1000L).isPresent());
+  }
+
+  private long metric(String name) {
+    return subject.metrics().stream().filter(metric -> metric.getName().equals(name)).findFirst().get().getValue().longValue();
+  }
+
+  private String uidOwnedBy(String node) {
+    Optional<String> uid = IntStream.range(0, 100).mapToObj(i -> "urn:collab:person:example.org:" + i)
+      .filter(candidate -> ring.ownerOf(candidate).equals(node))
+      .findFirst();
+    return uid.get();
+  }
+}
@@ -0,0 +1,55 @@
+package voot;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
+
+import voot.valueobject.Group;
+import voot.valueobject.Membership;
+import voot.web.PeerController;
+import voot.web.VootController;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PeerControllerTest {
+
+  private static final String UID = "urn:collab:person:example.org:john";
+
+  @Mock
+  private ExternalGroupsService externalGroupsService;
+
+  private final PeerClient peerClient = new PeerClient(new PeerRing(Arrays.asList("http://localhost:9090"), "http://localhost:9090", 10),
+    "secret", 250, 1000, 10000L);
+
+  @Test
+  public void testGroupsAsOwner() {
+    Group group = new Group("urn:collab:group:example.org:team", "team", null, "example", Membership.MEMBER);
+    when(externalGroupsService.getMyGroupsAsOwner(UID, "example.org", false, 1000L))
+      .thenReturn(new ExternalGroupsService.Result<>(singletonList(group), singletonList("slow"), emptyList(), 5000L));
+
+    ResponseEntity<List<Group>> response = new PeerController(externalGroupsService, peerClient).peerGroups(UID, "example.org", false, "secret", 1000L);
+
+    assertEquals(singletonList(group), response.getBody());
+    assertEquals("slow", response.getHeaders().getFirst(VootController.OMITTED_PROVIDERS_HEADER));
+    assertEquals("5000", response.getHeaders().getFirst(PeerClient.MAX_AGE_HEADER));
+  }
+
+  @Test(expected = AccessDeniedException.class)
+  public void testWrongSecret() {
+    new PeerController(externalGroupsService, peerClient).peerGroups(UID, "example.org", false, "nope", 1000L);
+  }
+
+  @Test(expected = AccessDeniedException.class)
+  public void testPeersDisabled() {
+    new PeerController(externalGroupsService, PeerClient.disabled()).peerGroups(UID, "example.org", false, null, 1000L);
+  }
+}
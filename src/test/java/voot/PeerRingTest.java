@@ -0,0 +1,55 @@
+package voot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeerRingTest {
+
+  private final PeerRing subject = new PeerRing(Arrays.asList("http://localhost:9090", "http://localhost:9091", "http://localhost:9092"),
+    "http://localhost:9090", 100);
+
+  @Test
+  public void testOwnerIsStable() {
+    String owner = subject.ownerOf("urn:collab:person:example.org:john");
+    assertEquals(owner, new PeerRing(subject.getNodes(), "http://localhost:9091", 100).ownerOf("urn:collab:person:example.org:john"));
+  }
+
+  @Test
+  public void testUidsAreSpreadOverTheNodes() {
+    Map<String, Integer> owned = new HashMap<>();
+    IntStream.range(0, 3000).forEach(i -> owned.merge(subject.ownerOf("urn:collab:person:example.org:" + i), 1, Integer::sum));
+
+    assertEquals(3, owned.size());
+    owned.values().forEach(count -> assertTrue("Unbalanced ring " + owned, count > 700));
+  }
+
+  @Test
+  public void testOnlyUidsOfRemovedNodeMove() {
+    PeerRing smaller = new PeerRing(Arrays.asList("http://localhost:9090", "http://localhost:9091"), "http://localhost:9090", 100);
+    IntStream.range(0, 1000).mapToObj(i -> "urn:collab:person:example.org:" + i).forEach(uid -> {
+      String owner = subject.ownerOf(uid);
+      if (!owner.equals("http://localhost:9092")) {
+        assertEquals(owner, smaller.ownerOf(uid));
+      }
+    });
+  }
+
+  @Test
+  public void testIsSelf() {
+    assertTrue(subject.isSelf("http://localhost:9090"));
+    assertFalse(subject.isSelf("http://localhost:9091"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSelfMustBeAPeer() {
+    new PeerRing(Arrays.asList("http://localhost:9091"), "http://localhost:9090", 100);
+  }
+}
@@ -0,0 +1,63 @@
+package voot;
+
+import org.junit.Test;
+import voot.provider.GroupProviderType;
+import voot.provider.Provider;
+import voot.provider.Provider.Configuration;
+import voot.provider.Voot2Provider;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static voot.MockProvider.SimulationMode.Success;
+import static voot.provider.GroupProviderType.GROUPER;
+
+public class ProviderIndexTest {
+
+  private final Provider grouper = new MockProvider(0L, Success, GROUPER);
+  private final Provider exampleOrg = voot2("example.org");
+  private final Provider exampleCom = voot2("Example.COM");
+  private final Provider custom = new MockProvider(0L, Success, GroupProviderType.VOOT2) {
+    @Override
+    public boolean shouldBeQueriedForMemberships(String schacHomeOrganization) {
+      return "custom.org".equals(schacHomeOrganization);
+    }
+
+    @Override
+    public Routing getMembershipRouting() {
+      return Routing.CUSTOM;
+    }
+  };
+
+  private final ProviderIndex subject = new ProviderIndex(Arrays.asList(grouper, exampleOrg, exampleCom, custom));
+
+  @Test
+  public void testMemberships() throws Exception {
+    assertEquals(Arrays.asList(grouper, exampleOrg), subject.forMemberships("example.org"));
+    assertEquals(Arrays.asList(grouper, exampleCom), subject.forMemberships("EXAMPLE.com"));
+    assertEquals(Collections.singletonList(grouper), subject.forMemberships("unknown.org"));
+    assertEquals(Collections.singletonList(grouper), subject.forMemberships(null));
+    assertEquals(Arrays.asList(grouper, custom), subject.forMemberships("custom.org"));
+  }
+
+  @Test
+  public void testExternalMemberships() throws Exception {
+    assertEquals(Collections.singletonList(exampleOrg), subject.forExternalMemberships("Example.org"));
+    assertEquals(Collections.singletonList(custom), subject.forExternalMemberships("custom.org"));
+    assertEquals(Collections.emptyList(), subject.forExternalMemberships("unknown.org"));
+  }
+
+  @Test
+  public void testGroup() throws Exception {
+    assertEquals(Arrays.asList(grouper, exampleOrg, custom), subject.forGroup("urn:collab:group:example.org:nl:admins"));
+    assertEquals(Arrays.asList(grouper, exampleCom, custom), subject.forGroup("urn:collab:group:example.com:nl:admins"));
+    assertEquals(Arrays.asList(grouper, custom), subject.forGroup("urn:collab:group:unknown.org:nl:admins"));
+    assertEquals(Arrays.asList(grouper, custom), subject.forGroup("nl:surfnet:admins"));
+  }
+
+  private Provider voot2(String schacHomeOrganization) {
+    return new Voot2Provider(new Configuration(GroupProviderType.VOOT2, "http://localhost:8889",
+      new Configuration.Credentials("user", "password"), 2000, schacHomeOrganization, schacHomeOrganization));
+  }
+}
@@ -1,10 +1,14 @@
 package voot;
 
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -14,6 +18,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
@@ -65,16 +70,16 @@ public class VootControllerTest {
 
   @Test
   public void testEmptyMyGroupsResult() throws Exception {
-    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(Collections.emptyList());
-     List<Group> groups = subject.myGroups(authentication);
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(Collections.emptyList()));
+     List<Group> groups = subject.myGroups(authentication).getBody();
     assertTrue(groups.size() == 0);
   }
 
   @Test
   public void testSingleMembershipPositiveResult() {
      Group group = group();
-    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(singletonList(group));
-     List<Group> groups = subject.myGroups(authentication);
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(singletonList(group)));
+     List<Group> groups = subject.myGroups(authentication).getBody();
     assertTrue(groups.size() > 0);
   }
 
@@ -98,9 +103,9 @@ public class VootControllerTest {
   @Test
   public void testInternalSpecificGroup() throws Exception {
     setUpClientCredentials();
-    when(externalGroupsService.getMyGroupById(UID, GROUP_URN)).thenReturn(Optional.of(group()));
+    when(externalGroupsService.getMyGroupById(UID, GROUP_URN)).thenReturn(new ExternalGroupsService.Result<>(Optional.of(group())));
 
-    Group group = subject.internalSpecificGroup(UID, GROUP_URN, authentication);
+    Group group = subject.internalSpecificGroup(UID, GROUP_URN, authentication).getBody();
     assertEquals("id",group.id);
   }
 
@@ -113,9 +118,9 @@ public class VootControllerTest {
   @Test
   public void testExternalGroups() throws Exception {
     setUpClientCredentials();
-    when(externalGroupsService.getMyExternalGroups("urn:collab:person:schac:admin", "schac")).thenReturn(singletonList(group()));
+    when(externalGroupsService.getMyExternalGroups("urn:collab:person:schac:admin", "schac")).thenReturn(new ExternalGroupsService.Result<>(singletonList(group())));
 
-    List<Group> groups = subject.externalGroups("urn:collab:person:schac:admin", authentication);
+    List<Group> groups = subject.externalGroups("urn:collab:person:schac:admin", authentication).getBody();
     assertEquals(1,groups.size());
   }
 
@@ -128,22 +133,67 @@ public class VootControllerTest {
   @Test
   public void testGetAllGroups() throws Exception {
     setUpClientCredentials();
-    when(externalGroupsService.getAllGroups()).thenReturn(singletonList(group()));
+    when(externalGroupsService.getAllGroups()).thenReturn(new ExternalGroupsService.Result<>(singletonList(group())));
 
-    List<Group> groups = subject.allGroups(authentication);
+    List<Group> groups = subject.allGroups(authentication).getBody();
     assertEquals(1,groups.size());
   }
 
   @Test
   public void testMembers() throws Exception {
     setUpClientCredentials("members");
-    when(externalGroupsService.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon")).thenReturn(singletonList(MockProvider.MEMBER));
+    when(externalGroupsService.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon")).thenReturn(new ExternalGroupsService.Result<>(singletonList(MockProvider.MEMBER)));
 
-    List<Member> members = subject.members("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon", authentication);
+    List<Member> members = subject.members("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon", authentication).getBody();
     assertEquals(1, members.size());
     assertEquals(MockProvider.MEMBER, members.get(0));
   }
 
+  @Test
+  public void testOmittedProvidersHeader() throws Exception {
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(singletonList(group()), Arrays.asList("slow", "slower")));
+    ResponseEntity<List<Group>> response = subject.myGroups(authentication);
+    assertEquals("slow,slower", response.getHeaders().getFirst(VootController.OMITTED_PROVIDERS_HEADER));
+  }
+
+  @Test
+  public void testStaleProvidersHeader() throws Exception {
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(singletonList(group()), emptyList(), singletonList("flaky")));
+    ResponseEntity<List<Group>> response = subject.myGroups(authentication);
+    assertEquals("flaky", response.getHeaders().getFirst(VootController.STALE_PROVIDERS_HEADER));
+    assertNull(response.getHeaders().getFirst(VootController.OMITTED_PROVIDERS_HEADER));
+  }
+
+  @Test
+  public void testStableOrderAndETag() throws Exception {
+    Group one = new Group("urn:collab:group:example.org:one", "one", null, "source", Membership.MEMBER);
+    Group two = new Group("urn:collab:group:example.org:two", "two", null, "source", Membership.ADMIN);
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(Arrays.asList(two, one)));
+    ResponseEntity<List<Group>> response = subject.myGroups(authentication);
+    assertEquals(Arrays.asList(one, two), response.getBody());
+
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(Arrays.asList(one, two)));
+    String eTag = subject.myGroups(authentication).getHeaders().getETag();
+    assertTrue(eTag.startsWith("\""));
+    assertEquals(response.getHeaders().getETag(), eTag);
+
+    Group changed = new Group(two.id, two.displayName, null, "source", Membership.MEMBER);
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(Arrays.asList(one, changed)));
+    assertNotEquals(eTag, subject.myGroups(authentication).getHeaders().getETag());
+  }
+
+  @Test
+  public void testCacheControl() throws Exception {
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(singletonList(group()), emptyList(), emptyList(), 30000L));
+    assertEquals("max-age=30, private", subject.myGroups(authentication).getHeaders().getCacheControl());
+
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(singletonList(group()), emptyList(), singletonList("flaky"), 30000L));
+    assertEquals("no-cache, private", subject.myGroups(authentication).getHeaders().getCacheControl());
+
+    when(externalGroupsService.getMyGroups(UID, SCHAC_HOME)).thenReturn(new ExternalGroupsService.Result<>(singletonList(group())));
+    assertEquals("no-cache, private", subject.myGroups(authentication).getHeaders().getCacheControl());
+  }
+
   private Group group() {
     return new Group("id", "foo", "bar", "source", new Membership("membership"));
   }
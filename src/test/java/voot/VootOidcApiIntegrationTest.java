@@ -26,6 +26,7 @@ import java.util.Map;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 
@@ -137,6 +138,30 @@ public class VootOidcApiIntegrationTest {
     doExchange(url, stubUrl);
   }
 
+  @Test
+  public void testNotModified() throws IOException {
+    stubOAuthCheckTokenClientCredentials();
+
+    String personUrn = "urn:collab:person:" + SCHAC_HOME + ":" + LOCAL_UID;
+    String url = "http://localhost:" + port + String.format("/internal/groups/%s", personUrn);
+    vootProviderMock.stubFor(get(urlMatching("/user/" + LOCAL_UID + "/groups")).willReturn(aResponse()
+      .withStatus(200)
+      .withHeader("Content-type", "application/json")
+      .withBody("[{\"id\": \"nl:surfnet:diensten:apachecon\", \"displayName\": \"apachecon\"}]")));
+
+    ResponseEntity<String> entity = client.exchange(url, HttpMethod.GET, new HttpEntity<>(oauthHeaders), String.class);
+    assertEquals(HttpStatus.OK, entity.getStatusCode());
+    String eTag = entity.getHeaders().getETag();
+    assertEquals(1, entity.getHeaders().get(HttpHeaders.CACHE_CONTROL).size());
+    assertTrue(entity.getHeaders().getCacheControl().contains("private"));
+
+    oauthHeaders.setIfNoneMatch(eTag);
+    entity = client.exchange(url, HttpMethod.GET, new HttpEntity<>(oauthHeaders), String.class);
+    assertEquals(HttpStatus.NOT_MODIFIED, entity.getStatusCode());
+    assertEquals(eTag, entity.getHeaders().getETag());
+    assertNull(entity.getBody());
+  }
+
   @Test
   public void testSingleMembershipIllegalGroupUrn() {
     String illegalGroupUrn = "foo";
@@ -145,6 +170,7 @@ public class VootOidcApiIntegrationTest {
     // status must be 400 and error message meaningful
 
     assertTrue("status must be 400", HttpStatus.BAD_REQUEST.equals(entity.getStatusCode()));
+    assertEquals("no-store", entity.getHeaders().getCacheControl());
 
     String body = entity.getBody();
     assertTrue("meaningful error message required", body.contains("error"));
@@ -152,6 +178,12 @@ public class VootOidcApiIntegrationTest {
     assertTrue("must report back the offending value", body.contains(illegalGroupUrn));
   }
 
+  @Test
+  public void testHealthIsNotCached() {
+    ResponseEntity<String> entity = client.getForEntity("http://localhost:" + port + "/health", String.class);
+    assertTrue(entity.getHeaders().getCacheControl().contains("no-store"));
+  }
+
   @Test
   public void testMissingScope() throws IOException {
     stubOAuthCheckTokenMissingScope();
@@ -161,6 +193,7 @@ public class VootOidcApiIntegrationTest {
 
     assertTrue(HttpStatus.FORBIDDEN.equals(entity.getStatusCode()));
     assertTrue(entity.getBody().contains("Insufficient scope for this resource"));
+    assertEquals("no-store", entity.getHeaders().getCacheControl());
   }
 
   @Test
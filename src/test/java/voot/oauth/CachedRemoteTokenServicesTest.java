@@ -7,16 +7,30 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.web.client.RestTemplate;
 import voot.oidc.OidcRemoteTokenServices;
 
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class CachedRemoteTokenServicesTest {
@@ -29,11 +43,13 @@ public class CachedRemoteTokenServicesTest {
     RestTemplate restTemplate = mock(RestTemplate.class);
     tokenServices.setRestTemplate(restTemplate);
 
-    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 200, 150);
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 200, new InMemoryTokenCacheStore(10000));
 
     InputStream inputStream = new ClassPathResource("json/oidc/introspect.success.json").getInputStream();
 
     Map<String, Object> map = objectMapper.readValue(inputStream, Map.class);
+    //the token must not have expired to be cached
+    map.put("exp", System.currentTimeMillis() / 1000 + 3600);
     @SuppressWarnings("unchecked")
     ResponseEntity<Map> response = new ResponseEntity(map, HttpStatus.OK);
 
@@ -53,4 +69,190 @@ public class CachedRemoteTokenServicesTest {
     //cache is cleaned
     assertNotEquals(authentication, newAuthentication);
   }
+
+  @Test
+  public void testCachedNoLongerThanTokenIsValid() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    ExpiringAccessTokenConverter converter = new ExpiringAccessTokenConverter();
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", "client");
+    map.put("exp", System.currentTimeMillis() / 1000 + 2);
+    when(tokenServices.loadAuthentication("access_token")).thenAnswer(invocation -> converter.extractAuthentication(map));
+
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 60000, new InMemoryTokenCacheStore(10000));
+    remoteTokenServices.loadAuthentication("access_token");
+    remoteTokenServices.loadAuthentication("access_token");
+    verify(tokenServices, times(1)).loadAuthentication("access_token");
+
+    Thread.sleep(3000);
+    remoteTokenServices.loadAuthentication("access_token");
+    verify(tokenServices, times(2)).loadAuthentication("access_token");
+  }
+
+  @Test
+  public void testExpiredTokenIsNotCached() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", "client");
+    map.put("exp", System.currentTimeMillis() / 1000 - 10);
+    when(tokenServices.loadAuthentication("access_token")).thenReturn(new ExpiringAccessTokenConverter().extractAuthentication(map));
+
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 60000, new InMemoryTokenCacheStore(10000));
+    remoteTokenServices.loadAuthentication("access_token");
+    remoteTokenServices.loadAuthentication("access_token");
+
+    verify(tokenServices, times(2)).loadAuthentication("access_token");
+  }
+
+  @Test
+  public void testConcurrentMissesShareOneIntrospection() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", "client");
+    map.put("exp", System.currentTimeMillis() / 1000 + 3600);
+    CountDownLatch release = new CountDownLatch(1);
+    when(tokenServices.loadAuthentication("access_token")).thenAnswer(invocation -> {
+      release.await(5, TimeUnit.SECONDS);
+      return new ExpiringAccessTokenConverter().extractAuthentication(map);
+    });
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 60000, new InMemoryTokenCacheStore(10000));
+
+    List<Future<OAuth2Authentication>> authentications = loadConcurrently(remoteTokenServices, 5);
+    release.countDown();
+
+    OAuth2Authentication authentication = authentications.get(0).get(1, TimeUnit.SECONDS);
+    for (Future<OAuth2Authentication> future : authentications) {
+      assertSame(authentication, future.get(1, TimeUnit.SECONDS));
+    }
+    verify(tokenServices, times(1)).loadAuthentication("access_token");
+    assertEquals(4L, remoteTokenServices.getIntrospections().getCoalesced());
+  }
+
+  @Test
+  public void testConcurrentMissesShareInvalidToken() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    CountDownLatch release = new CountDownLatch(1);
+    when(tokenServices.loadAuthentication("access_token")).thenAnswer(invocation -> {
+      release.await(5, TimeUnit.SECONDS);
+      throw new InvalidTokenException("access_token");
+    });
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 60000, new InMemoryTokenCacheStore(10000));
+
+    List<Future<OAuth2Authentication>> authentications = loadConcurrently(remoteTokenServices, 3);
+    release.countDown();
+
+    for (Future<OAuth2Authentication> future : authentications) {
+      try {
+        future.get(1, TimeUnit.SECONDS);
+        fail();
+      } catch (Exception e) {
+        assertTrue(e.getCause() instanceof InvalidTokenException);
+      }
+    }
+    verify(tokenServices, times(1)).loadAuthentication("access_token");
+
+    //the failure is not remembered
+    try {
+      remoteTokenServices.loadAuthentication("access_token");
+      fail();
+    } catch (InvalidTokenException e) {
+      verify(tokenServices, times(2)).loadAuthentication("access_token");
+    }
+  }
+
+  @Test
+  public void testInvalidTokenIsRemembered() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    when(tokenServices.loadAuthentication("access_token")).thenThrow(new InvalidTokenException("access_token"));
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 60000, 0, new InMemoryTokenCacheStore(10000),
+      new InvalidTokenCache(100, 60000));
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        remoteTokenServices.loadAuthentication("access_token");
+        fail();
+      } catch (InvalidTokenException e) {
+        //expected
+      }
+    }
+    verify(tokenServices, times(1)).loadAuthentication("access_token");
+  }
+
+  @Test
+  public void testHotTokenIsRefreshedAhead() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    AtomicInteger introspections = new AtomicInteger();
+    when(tokenServices.loadAuthentication("access_token")).thenAnswer(invocation -> authentication("client" + introspections.incrementAndGet(), 3600));
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 1000, 600, new InMemoryTokenCacheStore(10000),
+      InvalidTokenCache.disabled());
+
+    assertEquals("client1", remoteTokenServices.loadAuthentication("access_token").getOAuth2Request().getClientId());
+    Thread.sleep(500);
+    //served from the cache while it is refreshed in the background
+    assertEquals("client1", remoteTokenServices.loadAuthentication("access_token").getOAuth2Request().getClientId());
+    verify(tokenServices, timeout(1000).times(2)).loadAuthentication("access_token");
+
+    //beyond the expiry of the first entry, the refreshed one is served
+    Thread.sleep(700);
+    assertEquals("client2", remoteTokenServices.loadAuthentication("access_token").getOAuth2Request().getClientId());
+  }
+
+  @Test
+  public void testRevokedTokenIsRemovedOnRefresh() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    when(tokenServices.loadAuthentication("access_token"))
+      .thenReturn(authentication("client", 3600))
+      .thenThrow(new InvalidTokenException("access_token"));
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 10000, 9900, new InMemoryTokenCacheStore(10000),
+      InvalidTokenCache.disabled());
+
+    remoteTokenServices.loadAuthentication("access_token");
+    Thread.sleep(200);
+    remoteTokenServices.loadAuthentication("access_token");
+    verify(tokenServices, timeout(1000).times(2)).loadAuthentication("access_token");
+    Thread.sleep(100);
+
+    try {
+      remoteTokenServices.loadAuthentication("access_token");
+      fail();
+    } catch (InvalidTokenException e) {
+      verify(tokenServices, times(3)).loadAuthentication("access_token");
+    }
+  }
+
+  @Test
+  public void testEntryEndingWithTheTokenIsNotRefreshed() throws Exception {
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    when(tokenServices.loadAuthentication("access_token")).thenReturn(authentication("client", 5));
+    CachedRemoteTokenServices remoteTokenServices = new CachedRemoteTokenServices(tokenServices, 60000, 30000, new InMemoryTokenCacheStore(10000),
+      InvalidTokenCache.disabled());
+
+    remoteTokenServices.loadAuthentication("access_token");
+    remoteTokenServices.loadAuthentication("access_token");
+    Thread.sleep(200);
+
+    verify(tokenServices, times(1)).loadAuthentication("access_token");
+  }
+
+  private static OAuth2Authentication authentication(String clientId, long expiresInSeconds) {
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", clientId);
+    map.put("exp", System.currentTimeMillis() / 1000 + expiresInSeconds);
+    return new ExpiringAccessTokenConverter().extractAuthentication(map);
+  }
+
+  /*
+   * Returns once all callers are waiting on the introspection of the first one
+   */
+  private List<Future<OAuth2Authentication>> loadConcurrently(CachedRemoteTokenServices remoteTokenServices, int callers) throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(callers);
+    List<Future<OAuth2Authentication>> futures = IntStream.range(0, callers)
+      .mapToObj(i -> executor.submit(() -> remoteTokenServices.loadAuthentication("access_token")))
+      .collect(toList());
+    executor.shutdown();
+    while (remoteTokenServices.getIntrospections().getCoalesced() < callers - 1) {
+      Thread.sleep(5);
+    }
+    return futures;
+  }
 }
@@ -0,0 +1,38 @@
+package voot.oauth;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientRateLimiterTest {
+
+  @Test
+  public void testBurstThenRate() throws Exception {
+    ClientRateLimiter subject = new ClientRateLimiter(10, 5, 100);
+    IntStream.range(0, 5).forEach(i -> assertTrue(subject.tryAcquire("client")));
+    assertFalse(subject.tryAcquire("client"));
+    //other clients have a budget of their own
+    assertTrue(subject.tryAcquire("other"));
+
+    Thread.sleep(250);
+    assertTrue(subject.tryAcquire("client"));
+
+    Map<String, Number> metrics = subject.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+    assertEquals(1L, metrics.get("checkToken.rateLimit.rejected"));
+    assertEquals(7L, metrics.get("checkToken.rateLimit.permitted"));
+    assertEquals(2, metrics.get("checkToken.rateLimit.clients"));
+  }
+
+  @Test
+  public void testDisabled() {
+    ClientRateLimiter subject = ClientRateLimiter.disabled();
+    IntStream.range(0, 1000).forEach(i -> assertTrue(subject.tryAcquire("client")));
+  }
+}
@@ -0,0 +1,73 @@
+package voot.oauth;
+
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EntryCodecTest {
+
+  @Test
+  public void testSchacHomeAuthentication() {
+    Map<String, String> parameters = new HashMap<>();
+    parameters.put("client_id", "https@//oidc.localhost.surfconext.nl");
+    parameters.put("grant_type", "authorization_code");
+    OAuth2Request request = new OAuth2Request(parameters, "https@//oidc.localhost.surfconext.nl", AuthorityUtils.createAuthorityList("ROLE_CLIENT"),
+      true, new HashSet<>(Arrays.asList("groups", "openid")), Collections.singleton("groups"), null, null, null);
+    OAuth2Authentication authentication = new OAuth2Authentication(request,
+      new SchacHomeAuthentication("surfnet.nl", "urn:collab:person:surfnet.nl:admin", "N/A", AuthorityUtils.createAuthorityList("ROLE_USER")));
+    TokenCacheStore.Entry entry = new TokenCacheStore.Entry(authentication, 1448436271000L);
+
+    TokenCacheStore.Entry decoded = EntryCodec.decode(EntryCodec.encode(entry), entry.expiresAtMillis);
+
+    assertEquals(1448436271000L, decoded.expiresAtMillis);
+    //canonical arrays are shared with the entry that was encoded
+    assertSame(entry.scopes, decoded.scopes);
+    OAuth2Authentication rebuilt = decoded.authentication();
+    assertEquals(request, rebuilt.getOAuth2Request());
+    assertEquals("urn:collab:person:surfnet.nl:admin", rebuilt.getName());
+    assertEquals("surfnet.nl", ((SchacHomeAuthentication) rebuilt.getUserAuthentication()).getSchacHomeAuthentication());
+    assertEquals(authentication.getAuthorities(), rebuilt.getAuthorities());
+    assertTrue(rebuilt.isAuthenticated());
+  }
+
+  @Test
+  public void testClientCredentialsAuthentication() {
+    OAuth2Request request = new OAuth2Request(Collections.singletonMap("client_id", "internal"), "internal", Collections.emptyList(),
+      true, Collections.singleton("groups"), null, null, null, null);
+    OAuth2Authentication authentication = new OAuth2Authentication(request,
+      new ClientCredentialsAuthentication("internal", AuthorityUtils.createAuthorityList("ROLE_USER")));
+
+    byte[] encoded = EntryCodec.encode(new TokenCacheStore.Entry(authentication, Long.MAX_VALUE));
+    OAuth2Authentication decoded = EntryCodec.decode(encoded, Long.MAX_VALUE).authentication();
+
+    assertTrue(decoded.getUserAuthentication() instanceof ClientCredentialsAuthentication);
+    assertEquals("internal", decoded.getName());
+    assertEquals(Collections.singleton("groups"), decoded.getOAuth2Request().getScope());
+    assertTrue(encoded.length < 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCorrupt() {
+    EntryCodec.decode(new byte[]{42}, Long.MAX_VALUE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownUserType() {
+    OAuth2Request request = new OAuth2Request(null, "client", null, true, null, null, null, null, null);
+    byte[] encoded = EntryCodec.encode(new TokenCacheStore.Entry(new OAuth2Authentication(request, null), Long.MAX_VALUE));
+    //the user type is followed by three absent strings of 1 byte and no authorities
+    encoded[encoded.length - 6] = 42;
+    EntryCodec.decode(encoded, Long.MAX_VALUE);
+  }
+}
@@ -0,0 +1,39 @@
+package voot.oauth;
+
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+  @Test
+  public void testFrequency() {
+    FrequencySketch subject = new FrequencySketch(1000);
+    IntStream.range(0, 5).forEach(i -> subject.increment("hot"));
+    subject.increment("cold");
+
+    assertEquals(5, subject.frequency("hot"));
+    assertEquals(1, subject.frequency("cold"));
+    assertEquals(0, subject.frequency("unknown"));
+  }
+
+  @Test
+  public void testSaturates() {
+    FrequencySketch subject = new FrequencySketch(1000);
+    IntStream.range(0, 100).forEach(i -> subject.increment("hot"));
+
+    assertEquals(15, subject.frequency("hot"));
+  }
+
+  @Test
+  public void testAgesAfterSampleSize() {
+    FrequencySketch subject = new FrequencySketch(10);
+    IntStream.range(0, 8).forEach(i -> subject.increment("hot"));
+    IntStream.range(0, 100).forEach(i -> subject.increment("other" + i));
+
+    assertTrue(subject.frequency("hot") < 8);
+  }
+}
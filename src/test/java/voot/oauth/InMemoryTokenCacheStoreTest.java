@@ -0,0 +1,97 @@
+package voot.oauth;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryTokenCacheStoreTest {
+
+  private final OAuth2Authentication authentication = new OAuth2Authentication(
+    new OAuth2Request(Collections.emptyMap(), "client", Collections.emptyList(), true, Collections.emptySet(), null, null, null, null), null);
+
+  @Test
+  public void testBounded() {
+    InMemoryTokenCacheStore subject = new InMemoryTokenCacheStore(100);
+    IntStream.range(0, 1000).forEach(i -> subject.put("token" + i, entry(60000L)));
+
+    assertEquals(100, subject.size());
+    assertEquals(900L, metric(subject, "evictions"));
+  }
+
+  @Test
+  public void testFrequentlyUsedTokensSurviveBurstOfNewTokens() {
+    InMemoryTokenCacheStore subject = new InMemoryTokenCacheStore(100);
+    IntStream.range(0, 50).forEach(i -> {
+      subject.get("hot" + i);
+      subject.put("hot" + i, entry(60000L));
+    });
+    IntStream.range(0, 5).forEach(round -> IntStream.range(0, 50).forEach(i -> subject.get("hot" + i)));
+
+    IntStream.range(0, 1000).forEach(i -> {
+      subject.get("cold" + i);
+      subject.put("cold" + i, entry(60000L));
+    });
+
+    IntStream.range(0, 50).forEach(i -> assertTrue("hot" + i, subject.get("hot" + i).isPresent()));
+  }
+
+  @Test
+  public void testExpiredEntriesAreRemovedWithoutBeingAskedFor() throws Exception {
+    InMemoryTokenCacheStore subject = new InMemoryTokenCacheStore(100);
+    subject.put("short", entry(500L));
+    subject.put("long", entry(60000L));
+
+    Thread.sleep(1100L);
+    assertTrue(subject.get("long").isPresent());
+    assertEquals(1, subject.size());
+    assertEquals(1L, metric(subject, "expirations"));
+    assertFalse(subject.get("short").isPresent());
+  }
+
+  @Test
+  public void testExpiredEntryIsNotReturned() throws Exception {
+    InMemoryTokenCacheStore subject = new InMemoryTokenCacheStore(100);
+    subject.put("token", entry(50L));
+    assertTrue(subject.get("token").isPresent());
+
+    Thread.sleep(100L);
+    assertFalse(subject.get("token").isPresent());
+    assertEquals(1L, metric(subject, "hits"));
+    assertEquals(1L, metric(subject, "misses"));
+  }
+
+  @Test
+  public void testAlreadyExpiredEntryIsNotStored() {
+    InMemoryTokenCacheStore subject = new InMemoryTokenCacheStore(100);
+    subject.put("token", entry(-1L));
+    assertEquals(0, subject.size());
+  }
+
+  @Test
+  public void testReplace() {
+    InMemoryTokenCacheStore subject = new InMemoryTokenCacheStore(100);
+    subject.put("token", entry(60000L));
+    TokenCacheStore.Entry replacement = entry(30000L);
+    subject.put("token", replacement);
+
+    assertEquals(1, subject.size());
+    assertEquals(replacement, subject.get("token").get());
+  }
+
+  private TokenCacheStore.Entry entry(long ttlMillis) {
+    return new TokenCacheStore.Entry(authentication, System.currentTimeMillis() + ttlMillis);
+  }
+
+  private long metric(InMemoryTokenCacheStore subject, String name) {
+    return subject.metrics().stream().filter(metric -> metric.getName().equals("checkToken.cache." + name))
+      .map(Metric::getValue).findFirst().get().longValue();
+  }
+}
@@ -0,0 +1,55 @@
+package voot.oauth;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.assertEquals;
+
+public class IntrospectionHttpClientTest {
+
+  private static final int PORT = 8889;
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+  private final IntrospectionHttpClient subject = new IntrospectionHttpClient(10, 1000, 500, 30000);
+
+  @After
+  public void after() throws Exception {
+    subject.close();
+  }
+
+  @Test
+  public void testConnectionIsKeptAlive() {
+    stubFor(get(urlPathEqualTo("/introspect")).willReturn(aResponse().withStatus(200).withHeader("Content-Type", "application/json").withBody("{\"active\":true}")));
+    RestTemplate restTemplate = subject.restTemplate();
+
+    restTemplate.getForObject("http://localhost:" + PORT + "/introspect", Map.class);
+    restTemplate.getForObject("http://localhost:" + PORT + "/introspect", Map.class);
+
+    Map<String, Number> metrics = metrics();
+    assertEquals(0, metrics.get("checkToken.pool.leased").intValue());
+    assertEquals(1, metrics.get("checkToken.pool.available").intValue());
+    assertEquals(10, metrics.get("checkToken.pool.max").intValue());
+  }
+
+  @Test(expected = ResourceAccessException.class)
+  public void testReadTimeout() {
+    stubFor(get(urlPathEqualTo("/introspect")).willReturn(aResponse().withStatus(200).withFixedDelay(2000).withBody("{}")));
+
+    subject.restTemplate().getForObject("http://localhost:" + PORT + "/introspect", Map.class);
+  }
+
+  private Map<String, Number> metrics() {
+    return subject.metrics().stream().collect(Collectors.toMap(Metric::getName, Metric::getValue));
+  }
+}
@@ -0,0 +1,40 @@
+package voot.oauth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InvalidTokenCacheTest {
+
+  @Test
+  public void testExpires() throws Exception {
+    InvalidTokenCache subject = new InvalidTokenCache(10, 100);
+    subject.put("digest");
+    assertTrue(subject.contains("digest"));
+    assertFalse(subject.contains("other"));
+
+    Thread.sleep(150);
+    assertFalse(subject.contains("digest"));
+  }
+
+  @Test
+  public void testBounded() {
+    InvalidTokenCache subject = new InvalidTokenCache(2, 60000);
+    subject.put("one");
+    subject.put("two");
+    subject.contains("one");
+    subject.put("three");
+
+    assertTrue(subject.contains("one"));
+    assertFalse(subject.contains("two"));
+    assertTrue(subject.contains("three"));
+  }
+
+  @Test
+  public void testDisabled() {
+    InvalidTokenCache subject = InvalidTokenCache.disabled();
+    subject.put("digest");
+    assertFalse(subject.contains("digest"));
+  }
+}
@@ -0,0 +1,114 @@
+package voot.oauth;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * An embedded H2 database stands in for the database the nodes share
+ */
+public class JdbcTokenCacheStoreTest {
+
+  private final EmbeddedDatabase database = migrated(new EmbeddedDatabaseBuilder()
+    .setType(EmbeddedDatabaseType.H2)
+    .generateUniqueName(true)
+    .build());
+
+  private final JdbcTokenCacheStore node1 = new JdbcTokenCacheStore(new JdbcTemplate(database), "voot_token_cache", 60000L);
+  private final JdbcTokenCacheStore node2 = new JdbcTokenCacheStore(new JdbcTemplate(database), "voot_token_cache", 60000L);
+
+  @After
+  public void after() {
+    database.shutdown();
+  }
+
+  @Test
+  public void testSharedBetweenNodes() {
+    node1.put("digest", new TokenCacheStore.Entry(authentication(), System.currentTimeMillis() + 60000L));
+
+    TokenCacheStore.Entry entry = node2.get("digest").get();
+    assertEquals("client", entry.authentication().getName());
+    assertFalse(node2.get("other").isPresent());
+  }
+
+  @Test
+  public void testExpiryHoldsOnEveryNode() {
+    long expiresAt = System.currentTimeMillis() + 60000L;
+    node1.put("digest", new TokenCacheStore.Entry(authentication(), expiresAt));
+    assertEquals(expiresAt, node2.get("digest").get().expiresAtMillis);
+
+    node2.put("digest", new TokenCacheStore.Entry(authentication(), System.currentTimeMillis() - 1));
+    assertFalse(node1.get("digest").isPresent());
+    assertFalse(node2.get("digest").isPresent());
+  }
+
+  @Test
+  public void testRemovedOnEveryNode() {
+    node1.put("digest", new TokenCacheStore.Entry(authentication(), System.currentTimeMillis() + 60000L));
+    node2.remove("digest");
+
+    assertFalse(node1.get("digest").isPresent());
+  }
+
+  @Test
+  public void testUnavailableDatabaseIsAMiss() {
+    database.shutdown();
+
+    node1.put("digest", new TokenCacheStore.Entry(authentication(), System.currentTimeMillis() + 60000L));
+    assertFalse(node1.get("digest").isPresent());
+  }
+
+  @Test
+  public void testOneIntrospectionForAllNodes() {
+    AtomicInteger introspections = new AtomicInteger();
+    DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+    when(tokenServices.loadAuthentication(anyString())).thenAnswer(invocation -> {
+      introspections.incrementAndGet();
+      return authentication();
+    });
+    CachedRemoteTokenServices first = new CachedRemoteTokenServices(tokenServices, 60000L, new TieredTokenCacheStore(new InMemoryTokenCacheStore(100), node1));
+    CachedRemoteTokenServices second = new CachedRemoteTokenServices(tokenServices, 60000L, new TieredTokenCacheStore(new InMemoryTokenCacheStore(100), node2));
+
+    first.loadAuthentication("access_token");
+    OAuth2Authentication authentication = second.loadAuthentication("access_token");
+    second.loadAuthentication("access_token");
+
+    assertEquals(1, introspections.get());
+    assertTrue(authentication.getUserAuthentication() instanceof ClientCredentialsAuthentication);
+  }
+
+  @Test
+  public void testMigrationIsRepeatable() {
+    //a restart finds the table in place
+    JdbcTokenCacheStore.migrate(database, "voot_token_cache");
+    node1.put("digest", new TokenCacheStore.Entry(authentication(), System.currentTimeMillis() + 60000L));
+    assertTrue(node2.get("digest").isPresent());
+  }
+
+  private static EmbeddedDatabase migrated(EmbeddedDatabase database) {
+    JdbcTokenCacheStore.migrate(database, "voot_token_cache");
+    return database;
+  }
+
+  private OAuth2Authentication authentication() {
+    OAuth2Request request = new OAuth2Request(Collections.singletonMap("client_id", "client"), "client", Collections.emptyList(),
+      true, Collections.singleton("groups"), null, null, null, null);
+    return new OAuth2Authentication(request, new ClientCredentialsAuthentication("client", AuthorityUtils.createAuthorityList("ROLE_USER")));
+  }
+}
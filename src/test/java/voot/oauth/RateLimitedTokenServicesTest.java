@@ -0,0 +1,72 @@
+package voot.oauth;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+public class RateLimitedTokenServicesTest {
+
+  private final DecisionResourceServerTokenServices tokenServices = mock(DecisionResourceServerTokenServices.class);
+
+  private final RateLimitedTokenServices subject = new RateLimitedTokenServices(tokenServices, new ClientRateLimiter(0.001, 2, 100));
+
+  @After
+  public void after() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  public void testCallerOverBudgetIsShed() throws Exception {
+    when(tokenServices.loadAuthentication(anyString())).thenReturn(authentication());
+
+    bindCaller("10.0.0.1");
+    subject.loadAuthentication("access_token1");
+    subject.loadAuthentication("access_token2");
+    try {
+      subject.loadAuthentication("access_token3");
+      fail();
+    } catch (RateLimitedTokenServices.OverBudgetException e) {
+      //not an invalid_token, the token itself may be fine
+      assertEquals(429, e.getHttpErrorCode());
+      assertEquals("temporarily_unavailable", e.getOAuth2ErrorCode());
+    }
+    verify(tokenServices, times(2)).loadAuthentication(anyString());
+
+    //other callers have a budget of their own
+    bindCaller("10.0.0.2");
+    subject.loadAuthentication("access_token3");
+    verify(tokenServices, times(3)).loadAuthentication(anyString());
+  }
+
+  @Test
+  public void testOutsideOfRequestIsNotCharged() throws Exception {
+    when(tokenServices.loadAuthentication(anyString())).thenReturn(authentication());
+
+    for (int i = 0; i < 5; i++) {
+      subject.loadAuthentication("access_token" + i);
+    }
+    verify(tokenServices, times(5)).loadAuthentication(anyString());
+  }
+
+  private static void bindCaller(String address) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setRemoteAddr(address);
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+  }
+
+  private static OAuth2Authentication authentication() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", "client");
+    return new ExpiringAccessTokenConverter().extractAuthentication(map);
+  }
+}
@@ -0,0 +1,181 @@
+package voot.oauth;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import voot.authz.AuthzSchacHomeAwareUserAuthenticationConverter;
+import voot.oidc.OidcSchacHomeAwareUserAuthenticationConverter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static java.util.stream.Collectors.toList;
+
+public class TokenCacheStoreEntryTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TokenCacheStoreEntryTest.class);
+
+  @Test
+  public void testOidcAuthentication() {
+    ExpiringAccessTokenConverter converter = new ExpiringAccessTokenConverter();
+    converter.setUserTokenConverter(new OidcSchacHomeAwareUserAuthenticationConverter());
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", "https@//oidc.localhost.surfconext.nl");
+    map.put("scope", Arrays.asList("openid", "groups"));
+    map.put("exp", 1448436271L);
+    map.put("schac_home", "surfteams.nl");
+    map.put("unspecified_id", "urn:collab:person:example.com:admin");
+    OAuth2Authentication authentication = converter.extractAuthentication(map);
+
+    TokenCacheStore.Entry entry = new TokenCacheStore.Entry(authentication, 1448436271000L);
+    OAuth2Authentication rebuilt = entry.authentication();
+
+    assertEquals(authentication, rebuilt);
+    assertEquals("surfteams.nl", ((SchacHomeAuthentication) rebuilt.getUserAuthentication()).getSchacHomeAuthentication());
+    assertEquals(1448436271000L, entry.tokenExpiresAtMillis().get().longValue());
+    assertTrue(rebuilt.isAuthenticated());
+  }
+
+  @Test
+  public void testAuthzClientCredentials() {
+    ExpiringAccessTokenConverter converter = new ExpiringAccessTokenConverter();
+    converter.setUserTokenConverter(new AuthzSchacHomeAwareUserAuthenticationConverter());
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", "internal");
+    map.put("grant_type", "client_credentials");
+    map.put("scope", Arrays.asList("groups", "all-groups"));
+    map.put("aud", Arrays.asList("groups"));
+    map.put("authorities", Arrays.asList("ROLE_CLIENT"));
+    OAuth2Authentication authentication = converter.extractAuthentication(map);
+
+    OAuth2Authentication rebuilt = new TokenCacheStore.Entry(authentication, Long.MAX_VALUE).authentication();
+
+    assertEquals(authentication, rebuilt);
+    assertEquals(authentication.getOAuth2Request().getResourceIds(), rebuilt.getOAuth2Request().getResourceIds());
+    assertTrue(rebuilt.getUserAuthentication() instanceof ClientCredentialsAuthentication);
+    assertFalse(new TokenCacheStore.Entry(authentication, Long.MAX_VALUE).tokenExpiresAtMillis().isPresent());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedUser() {
+    OAuth2Request request = new OAuth2Request(null, "client", null, true, null, null, null, null, null);
+    new TokenCacheStore.Entry(new OAuth2Authentication(request, new TestingAuthenticationToken("user", "N/A")), Long.MAX_VALUE);
+  }
+
+  /*
+   * The footprint of an in-memory cache of 1000 OIDC tokens: the full OAuth2Authentication graphs we cached before
+   * versus the entries. Objects shared between them - like interned strings and canonical arrays - are counted once.
+   */
+  @Test
+  public void testFootprint() throws Exception {
+    ExpiringAccessTokenConverter converter = new ExpiringAccessTokenConverter();
+    converter.setUserTokenConverter(new OidcSchacHomeAwareUserAuthenticationConverter());
+    List<OAuth2Authentication> authentications = IntStream.range(0, 1000)
+      .mapToObj(i -> converter.extractAuthentication(introspection("urn:collab:person:example.com:" + i)))
+      .collect(toList());
+    List<TokenCacheStore.Entry> entries = authentications.stream()
+      .map(authentication -> new TokenCacheStore.Entry(authentication, Long.MAX_VALUE))
+      .collect(toList());
+
+    long authenticationBytes = deepSize(authentications) / authentications.size();
+    long entryBytes = deepSize(entries) / entries.size();
+    LOG.info("Cached OAuth2Authentication: {} bytes, TokenCacheStore.Entry: {} bytes", authenticationBytes, entryBytes);
+
+    assertTrue(entryBytes * 4 < authenticationBytes);
+  }
+
+  /*
+   * Every value is a distinct String, as if parsed from the JSON of the introspection endpoint
+   */
+  private static Map<String, Object> introspection(String unspecifiedId) {
+    Map<String, Object> map = new HashMap<>();
+    map.put("client_id", new String("https@//oidc.localhost.surfconext.nl"));
+    map.put("scope", Arrays.asList(new String("openid"), new String("groups")));
+    map.put("exp", 1448436271L);
+    map.put("schac_home", new String("example.com"));
+    map.put("unspecified_id", unspecifiedId);
+    return map;
+  }
+
+  /*
+   * Estimated with the layout of a 64-bit HotSpot with compressed oops: 12 byte object headers, 16 byte array headers,
+   * 4 byte references and everything aligned to 8 bytes
+   */
+  private static long deepSize(Object root) throws IllegalAccessException {
+    Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<Object> pending = new ArrayDeque<>(Collections.singleton(root));
+    long size = 0;
+    while (!pending.isEmpty()) {
+      Object object = pending.pop();
+      if (object instanceof Class || !visited.add(object)) {
+        continue;
+      }
+      Class<?> type = object.getClass();
+      if (type.isArray()) {
+        int length = Array.getLength(object);
+        size += align(16 + (long) length * primitiveSize(type.getComponentType()));
+        if (!type.getComponentType().isPrimitive()) {
+          for (int i = 0; i < length; i++) {
+            Object element = Array.get(object, i);
+            if (element != null) {
+              pending.push(element);
+            }
+          }
+        }
+        continue;
+      }
+      long objectSize = 12;
+      for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+        for (Field field : current.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          objectSize += primitiveSize(field.getType());
+          if (!field.getType().isPrimitive()) {
+            field.setAccessible(true);
+            Object value = field.get(object);
+            if (value != null) {
+              pending.push(value);
+            }
+          }
+        }
+      }
+      size += align(objectSize);
+    }
+    return size;
+  }
+
+  private static int primitiveSize(Class<?> type) {
+    if (type == long.class || type == double.class) {
+      return 8;
+    }
+    if (type == int.class || type == float.class) {
+      return 4;
+    }
+    if (type == short.class || type == char.class) {
+      return 2;
+    }
+    return type == byte.class || type == boolean.class ? 1 : 4;
+  }
+
+  private static long align(long size) {
+    return (size + 7) / 8 * 8;
+  }
+}
@@ -0,0 +1,61 @@
+package voot.oidc;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.security.interfaces.RSAPublicKey;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+public class JsonWebKeySetTest {
+
+  private static final int PORT = 8889;
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+  @Test
+  public void testKeysAreKeptWhenRefreshFails() throws Exception {
+    RSAPublicKey key = (RSAPublicKey) JwtTokenServicesTest.keyPair().getPublic();
+    stubJwks(200, JwtTokenServicesTest.jwks("key1", key));
+    JsonWebKeySet subject = new JsonWebKeySet("http://localhost:" + PORT + "/jwks", 3600000, 0, 1000);
+    assertEquals(key.getModulus(), subject.getKey("key1").get().getModulus());
+
+    stubJwks(500, "{}");
+    subject.refresh();
+
+    assertEquals(1, subject.size());
+    assertTrue(subject.getKey("key1").isPresent());
+  }
+
+  @Test
+  public void testOnlyKeyIsUsedWithoutKeyId() throws Exception {
+    stubJwks(200, JwtTokenServicesTest.jwks("key1", (RSAPublicKey) JwtTokenServicesTest.keyPair().getPublic()));
+    JsonWebKeySet subject = new JsonWebKeySet("http://localhost:" + PORT + "/jwks", 3600000, 0, 1000);
+
+    assertTrue(subject.getKey(null).isPresent());
+  }
+
+  @Test
+  public void testNonStringKeyIdIsSkipped() throws Exception {
+    String jwks = JwtTokenServicesTest.jwks("key1", (RSAPublicKey) JwtTokenServicesTest.keyPair().getPublic());
+    stubJwks(200, jwks.replace("\"kid\":\"key1\"", "\"kid\":42"));
+    JsonWebKeySet subject = new JsonWebKeySet("http://localhost:" + PORT + "/jwks", 3600000, 0, 1000);
+
+    assertEquals(0, subject.size());
+  }
+
+  @Test
+  public void testUnreachable() throws Exception {
+    JsonWebKeySet subject = new JsonWebKeySet("http://localhost:" + PORT + "/jwks", 3600000, 0, 1000);
+
+    assertEquals(0, subject.size());
+    assertFalse(subject.getKey(null).isPresent());
+  }
+
+  private void stubJwks(int status, String body) {
+    stubFor(get(urlEqualTo("/jwks")).willReturn(aResponse().withStatus(status).withHeader("Content-Type", "application/json").withBody(body)));
+  }
+}
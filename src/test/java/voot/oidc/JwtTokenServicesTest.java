@@ -0,0 +1,210 @@
+package voot.oidc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import voot.oauth.ClientCredentialsAuthentication;
+import voot.oauth.ExpiringAccessTokenConverter;
+import voot.oauth.SchacHomeAuthentication;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static org.junit.Assert.*;
+
+public class JwtTokenServicesTest {
+
+  private static final int PORT = 8889;
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Rule
+  public WireMockRule wireMockRule = new WireMockRule(PORT);
+
+  private KeyPair keyPair;
+  private JwtTokenServices subject;
+
+  @Before
+  public void before() throws Exception {
+    keyPair = keyPair();
+    stubJwks(jwks("key1", (RSAPublicKey) keyPair.getPublic()));
+    subject = new JwtTokenServices(new JsonWebKeySet("http://localhost:" + PORT + "/jwks", 3600000, 0, 1000), "http://localhost:8080/", "voot", 30);
+  }
+
+  @Test
+  public void testLoadAuthentication() throws Exception {
+    long exp = System.currentTimeMillis() / 1000 + 3600;
+    Map<String, Object> claims = claims(exp);
+    claims.put("unspecified_id", "urn:collab:person:example.com:admin");
+    claims.put("schac_home", "surfteams.nl");
+    String token = jwt("key1", keyPair, claims);
+
+    assertTrue(subject.canHandle(token));
+    OAuth2Authentication authentication = subject.loadAuthentication(token);
+
+    SchacHomeAuthentication userAuthentication = (SchacHomeAuthentication) authentication.getUserAuthentication();
+    assertEquals("urn:collab:person:example.com:admin", userAuthentication.getName());
+    assertEquals("surfteams.nl", userAuthentication.getSchacHomeAuthentication());
+    assertEquals("https@//oidc.localhost.surfconext.nl", authentication.getOAuth2Request().getClientId());
+    assertTrue(authentication.getOAuth2Request().getScope().contains("groups"));
+    assertEquals(exp * 1000, ExpiringAccessTokenConverter.expiresAtMillis(authentication).get().longValue());
+  }
+
+  @Test
+  public void testLoadAuthenticationClientCredentials() throws Exception {
+    Map<String, Object> claims = claims(System.currentTimeMillis() / 1000 + 3600);
+    claims.remove("client_id");
+    claims.put("azp", "https@//oidc.localhost.surfconext.nl");
+
+    OAuth2Authentication authentication = subject.loadAuthentication(jwt("key1", keyPair, claims));
+
+    assertTrue(authentication.getUserAuthentication() instanceof ClientCredentialsAuthentication);
+    assertEquals("https@//oidc.localhost.surfconext.nl", authentication.getOAuth2Request().getClientId());
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testExpired() throws Exception {
+    subject.loadAuthentication(jwt("key1", keyPair, claims(System.currentTimeMillis() / 1000 - 60)));
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testOtherAudience() throws Exception {
+    Map<String, Object> claims = claims(System.currentTimeMillis() / 1000 + 3600);
+    claims.put("aud", Collections.singletonList("other"));
+    subject.loadAuthentication(jwt("key1", keyPair, claims));
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testOtherIssuer() throws Exception {
+    Map<String, Object> claims = claims(System.currentTimeMillis() / 1000 + 3600);
+    claims.put("iss", "https://other.example.org/");
+    subject.loadAuthentication(jwt("key1", keyPair, claims));
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testMissingIssuer() throws Exception {
+    Map<String, Object> claims = claims(System.currentTimeMillis() / 1000 + 3600);
+    claims.remove("iss");
+    subject.loadAuthentication(jwt("key1", keyPair, claims));
+  }
+
+  @Test
+  public void testNonStringKeyIdIsUnknownKey() throws Exception {
+    String[] parts = jwt("key1", keyPair, claims(System.currentTimeMillis() / 1000 + 3600)).split("\\.");
+    Map<String, Object> header = new HashMap<>();
+    header.put("alg", "RS256");
+    header.put("kid", Collections.singletonMap("key", "key1"));
+    String token = base64(objectMapper.writeValueAsBytes(header)) + "." + parts[1] + "." + parts[2];
+
+    assertFalse(subject.canHandle(token));
+    assertFalse(subject.canHandle(base64("null".getBytes(StandardCharsets.US_ASCII)) + "." + parts[1] + "." + parts[2]));
+    try {
+      subject.loadAuthentication(token);
+      fail();
+    } catch (InvalidTokenException e) {
+      assertTrue(e.getMessage().startsWith("Unknown signing key"));
+    }
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testInvalidSignature() throws Exception {
+    subject.loadAuthentication(jwt("key1", keyPair(), claims(System.currentTimeMillis() / 1000 + 3600)));
+  }
+
+  @Test(expected = InvalidTokenException.class)
+  public void testTamperedClaims() throws Exception {
+    String[] parts = jwt("key1", keyPair, claims(System.currentTimeMillis() / 1000 + 3600)).split("\\.");
+    Map<String, Object> claims = claims(System.currentTimeMillis() / 1000 + 3600);
+    claims.put("client_id", "someone_else");
+    subject.loadAuthentication(parts[0] + "." + base64(objectMapper.writeValueAsBytes(claims)) + "." + parts[2]);
+  }
+
+  @Test
+  public void testOpaqueAndUnknownKeyTokensAreIntrospected() throws Exception {
+    assertFalse(subject.canHandle(UUID.randomUUID().toString()));
+    assertFalse(subject.canHandle("opaque-access-token"));
+    assertFalse(subject.canHandle("not.a.jwt"));
+    assertFalse(subject.canHandle(jwt("key2", keyPair, claims(System.currentTimeMillis() / 1000 + 3600))));
+  }
+
+  @Test
+  public void testRotatedKeyIsFetched() throws Exception {
+    KeyPair rotated = keyPair();
+    stubJwks(jwks("key2", (RSAPublicKey) rotated.getPublic()));
+    String token = jwt("key2", rotated, claims(System.currentTimeMillis() / 1000 + 3600));
+
+    //the unknown key id triggers a refresh in the background
+    assertFalse(subject.canHandle(token));
+    long start = System.currentTimeMillis();
+    while (!subject.canHandle(token) && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    assertTrue(subject.canHandle(token));
+    assertEquals("https@//oidc.localhost.surfconext.nl", subject.loadAuthentication(token).getOAuth2Request().getClientId());
+  }
+
+  private Map<String, Object> claims(long exp) {
+    Map<String, Object> claims = new HashMap<>();
+    claims.put("iss", "http://localhost:8080/");
+    claims.put("aud", "voot");
+    claims.put("exp", exp);
+    claims.put("client_id", "https@//oidc.localhost.surfconext.nl");
+    claims.put("scope", "openid groups");
+    return claims;
+  }
+
+  private void stubJwks(String jwks) {
+    stubFor(get(urlEqualTo("/jwks")).willReturn(aResponse().withStatus(200).withHeader("Content-Type", "application/json").withBody(jwks)));
+  }
+
+  static KeyPair keyPair() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    return generator.generateKeyPair();
+  }
+
+  static String jwks(String kid, RSAPublicKey key) throws Exception {
+    Map<String, Object> jwk = new HashMap<>();
+    jwk.put("kty", "RSA");
+    jwk.put("use", "sig");
+    jwk.put("kid", kid);
+    jwk.put("n", base64(unsigned(key.getModulus())));
+    jwk.put("e", base64(unsigned(key.getPublicExponent())));
+    return objectMapper.writeValueAsString(Collections.singletonMap("keys", Collections.singletonList(jwk)));
+  }
+
+  static String jwt(String kid, KeyPair keyPair, Map<String, Object> claims) throws Exception {
+    Map<String, Object> header = new HashMap<>();
+    header.put("alg", "RS256");
+    header.put("kid", kid);
+    String signingInput = base64(objectMapper.writeValueAsBytes(header)) + "." + base64(objectMapper.writeValueAsBytes(claims));
+    Signature signature = Signature.getInstance("SHA256withRSA");
+    signature.initSign(keyPair.getPrivate());
+    signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+    return signingInput + "." + base64(signature.sign());
+  }
+
+  private static String base64(byte[] bytes) {
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  private static byte[] unsigned(BigInteger value) {
+    byte[] bytes = value.toByteArray();
+    return bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+  }
+}
@@ -58,6 +58,16 @@ public class OidcRemoteTokenServicesTest extends AbstractRemoteTokenServicesTest
     introspect(getFailureCheckTokenJsonPath());
   }
 
+  @Test
+  public void testIntrospectionRequest() throws Exception {
+    introspect(getSuccesCheckTokenJsonPath());
+    introspect(getSuccesCheckTokenJsonPath());
+
+    verify(2, getRequestedFor(urlEqualTo("/introspect?token=access-token"))
+      .withHeader("Authorization", equalTo("Basic Y2xpZW50SWQ6c2VjcmV0"))
+      .withHeader("Accept", equalTo("application/json")));
+  }
+
   @Test
   public void testCanHandle() {
     range(0, 10).forEach(nbr -> assertFalse(getSubject().canHandle(UUID.randomUUID().toString())));
@@ -0,0 +1,121 @@
+package voot.provider;
+
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import voot.MockProvider;
+import voot.valueobject.Group;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static voot.MockProvider.SimulationMode.Error;
+import static voot.MockProvider.SimulationMode.Success;
+import static voot.MockProvider.SimulationMode.Timeout;
+import static voot.provider.GroupProviderType.VOOT2;
+
+public class BulkheadProviderTest {
+
+  private static final String UID = "urn:collab:person:example.org:admin";
+
+  @Test
+  public void testRejectsCallsOverTheLimit() throws Exception {
+    BulkheadProvider subject = new BulkheadProvider(new MockProvider(500L, Timeout, VOOT2), new AimdLimiter(1, 1, 1, 1000));
+
+    CompletableFuture<?> first = CompletableFuture.runAsync(() -> subject.getGroupMemberships(UID));
+    Thread.sleep(100);
+    try {
+      subject.getGroupMemberships(UID);
+    } catch (AimdLimiter.LimitExceededException e) {
+      first.get(1, TimeUnit.SECONDS);
+      assertEquals(1L, subject.getLimiter().getRejected());
+      assertEquals(0, subject.getLimiter().getInFlight());
+      return;
+    }
+    throw new AssertionError("Expected LimitExceededException");
+  }
+
+  @Test
+  public void testLimitDecreasesOnSlowAndFailedCalls() throws Exception {
+    BulkheadProvider slow = new BulkheadProvider(new MockProvider(100L, Timeout, VOOT2), new AimdLimiter(10, 2, 20, 50));
+    slow.getGroupMemberships(UID);
+    assertEquals(9, slow.getLimiter().getLimit());
+
+    BulkheadProvider failing = new BulkheadProvider(new MockProvider(0L, Error, VOOT2), new AimdLimiter(10, 9, 20, 50));
+    for (int i = 0; i < 3; i++) {
+      try {
+        failing.getGroupMemberships(UID);
+      } catch (RuntimeException e) {
+        //expected
+      }
+    }
+    assertEquals(9, failing.getLimiter().getLimit());
+  }
+
+  @Test
+  public void testClientErrorsDoNotDecreaseLimit() throws Exception {
+    BulkheadProvider subject = new BulkheadProvider(new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+      }
+    }, new AimdLimiter(10, 2, 20, 1000));
+    for (int i = 0; i < 3; i++) {
+      try {
+        subject.getGroupMemberships(UID);
+      } catch (HttpClientErrorException e) {
+        //expected
+      }
+    }
+    assertEquals(10, subject.getLimiter().getLimit());
+  }
+
+  @Test
+  public void testLimitIncreasesWhenUsed() throws Exception {
+    BulkheadProvider subject = new BulkheadProvider(new MockProvider(0L, Success, VOOT2), new AimdLimiter(1, 1, 3, 1000));
+    subject.getGroupMemberships(UID);
+    subject.getGroupMemberships(UID);
+    assertEquals(3, subject.getLimiter().getLimit());
+    subject.getGroupMemberships(UID);
+    assertEquals(3, subject.getLimiter().getLimit());
+  }
+
+  @Test
+  public void testAsyncCallsHoldPermitUntilCompleted() throws Exception {
+    CompletableFuture<List<Group>> pending = new CompletableFuture<>();
+    BulkheadProvider subject = new BulkheadProvider(new MockProvider(0L, Success, VOOT2), new AimdLimiter(1, 1, 1, 1000)) {
+      @Override
+      public CompletionStage<List<Group>> getGroupMembershipsAsync(String uid) {
+        return invokeAsync(() -> pending);
+      }
+    };
+    subject.getGroupMembershipsAsync(UID);
+    assertEquals(1, subject.getLimiter().getInFlight());
+
+    CompletableFuture<List<Group>> rejected = subject.getGroupMembershipsAsync(UID).toCompletableFuture();
+    assertTrue(rejected.isCompletedExceptionally());
+
+    pending.complete(Collections.emptyList());
+    assertEquals(0, subject.getLimiter().getInFlight());
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    BulkheadProvider subject = new BulkheadProvider(
+      new CircuitBreakingProvider(new MockProvider(0L, Success, VOOT2), new CircuitBreaker("example", 1, 1000, 1)),
+      new AimdLimiter(5, 1, 10, 1000));
+
+    Map<String, Number> metrics = subject.metrics().stream().collect(toMap(Metric::getName, Metric::getValue));
+    assertEquals(5, metrics.get("providers.example.bulkhead.limit"));
+    assertEquals(0L, metrics.get("providers.example.bulkhead.rejected"));
+    assertTrue(metrics.containsKey("providers.example.circuitBreaker.state"));
+  }
+}
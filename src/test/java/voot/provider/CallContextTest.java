@@ -0,0 +1,69 @@
+package voot.provider;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CallContextTest {
+
+  @Test
+  public void testTimeoutCappedByRemainingBudget() {
+    assertEquals(2000, CallContext.timeoutMillis(2000));
+    int timeout = new CallContext(500).call(() -> CallContext.timeoutMillis(2000));
+    assertTrue(timeout > 0 && timeout <= 500);
+    assertFalse(CallContext.current().isPresent());
+  }
+
+  @Test
+  public void testCancelRunsHooksOnce() {
+    AtomicInteger count = new AtomicInteger();
+    CallContext callContext = new CallContext(1000);
+    callContext.onCancel(count::incrementAndGet);
+
+    callContext.cancel();
+    callContext.cancel();
+
+    assertTrue(callContext.isCancelled());
+    assertFalse(callContext.isTimedOut());
+    assertEquals(1, count.get());
+
+    callContext.onCancel(count::incrementAndGet);
+    assertEquals(2, count.get());
+  }
+
+  @Test
+  public void testTimeOutIsCancel() {
+    AtomicInteger count = new AtomicInteger();
+    CallContext callContext = new CallContext(1000);
+    callContext.onCancel(count::incrementAndGet);
+
+    callContext.timeOut();
+    callContext.cancel();
+
+    assertTrue(callContext.isCancelled());
+    assertTrue(callContext.isTimedOut());
+    assertEquals(1, count.get());
+  }
+
+  @Test
+  public void testForkIsCancelledIndependently() {
+    AtomicInteger count = new AtomicInteger();
+    CallContext callContext = new CallContext(1000);
+    CallContext fork = callContext.fork();
+    callContext.onCancel(count::incrementAndGet);
+    fork.onCancel(() -> {
+      throw new RuntimeException("failing hooks do not stop the others");
+    });
+    fork.onCancel(count::incrementAndGet);
+
+    fork.cancel();
+
+    assertEquals(1, count.get());
+    assertFalse(callContext.isCancelled());
+    assertTrue(Math.abs(callContext.remainingMillis() - fork.remainingMillis()) < 50);
+  }
+}
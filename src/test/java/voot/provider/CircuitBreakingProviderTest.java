@@ -0,0 +1,149 @@
+package voot.provider;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import voot.MockProvider;
+import voot.valueobject.Group;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static voot.MockProvider.SimulationMode.Error;
+import static voot.MockProvider.SimulationMode.Success;
+import static voot.provider.GroupProviderType.VOOT2;
+
+public class CircuitBreakingProviderTest {
+
+  private static final String UID = "urn:collab:person:example.org:admin";
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() throws Exception {
+    CircuitBreakingProvider subject = new CircuitBreakingProvider(new MockProvider(0L, Error, VOOT2), new CircuitBreaker("example", 2, 1000, 1));
+
+    assertFailure(subject, HttpServerErrorException.class);
+    assertEquals(CircuitBreaker.State.CLOSED, subject.getCircuitBreaker().getState());
+    assertFailure(subject, HttpServerErrorException.class);
+    assertEquals(CircuitBreaker.State.OPEN, subject.getCircuitBreaker().getState());
+
+    assertFailure(subject, CircuitBreaker.OpenException.class);
+  }
+
+  @Test
+  public void testClosesAfterSuccessfulTrialCall() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("example", 1, 100, 1);
+    assertFailure(new CircuitBreakingProvider(new MockProvider(0L, Error, VOOT2), circuitBreaker), HttpServerErrorException.class);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    CircuitBreakingProvider subject = new CircuitBreakingProvider(new MockProvider(0L, Success, VOOT2), circuitBreaker);
+    assertFailure(subject, CircuitBreaker.OpenException.class);
+
+    Thread.sleep(150);
+
+    List<Group> groups = subject.getGroupMemberships(UID);
+    assertEquals(1, groups.size());
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void testReopensAfterFailedTrialCall() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("example", 1, 100, 1);
+    CircuitBreakingProvider subject = new CircuitBreakingProvider(new MockProvider(0L, Error, VOOT2), circuitBreaker);
+    assertFailure(subject, HttpServerErrorException.class);
+
+    Thread.sleep(150);
+
+    assertFailure(subject, HttpServerErrorException.class);
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    assertFailure(subject, CircuitBreaker.OpenException.class);
+  }
+
+  @Test
+  public void testHalfOpenLimitsTrialCalls() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("example", 1, 100, 1);
+    circuitBreaker.tryAcquirePermission();
+    circuitBreaker.onFailure();
+
+    Thread.sleep(150);
+
+    assertEquals(true, circuitBreaker.tryAcquirePermission());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    assertEquals(false, circuitBreaker.tryAcquirePermission());
+
+    circuitBreaker.onIgnored();
+    assertEquals(true, circuitBreaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void testClientErrorsAndUnparseableAnswersDoNotOpenCircuit() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("example", 1, 1000, 1);
+    CircuitBreakingProvider notMember = new CircuitBreakingProvider(failingWith(new HttpClientErrorException(HttpStatus.NOT_FOUND)), circuitBreaker);
+    CircuitBreakingProvider unparseable = new CircuitBreakingProvider(failingWith(new RuntimeException("Error parsing Json")), circuitBreaker);
+
+    for (int i = 0; i < 3; i++) {
+      assertFailure(notMember, HttpClientErrorException.class);
+      assertFailure(unparseable, RuntimeException.class);
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  @Test
+  public void testAsyncFailuresOpenCircuit() throws Exception {
+    CircuitBreakingProvider subject = new CircuitBreakingProvider(new MockProvider(0L, Error, VOOT2), new CircuitBreaker("example", 2, 1000, 1));
+
+    assertAsyncFailure(subject, HttpServerErrorException.class);
+    assertAsyncFailure(subject, HttpServerErrorException.class);
+    assertEquals(CircuitBreaker.State.OPEN, subject.getCircuitBreaker().getState());
+
+    assertAsyncFailure(subject, CircuitBreaker.OpenException.class);
+  }
+
+  @Test
+  public void testAsyncCancellationIsIgnored() throws Exception {
+    CircuitBreaker circuitBreaker = new CircuitBreaker("example", 1, 1000, 1);
+    CompletableFuture<List<Group>> pending = new CompletableFuture<>();
+    CircuitBreakingProvider subject = new CircuitBreakingProvider(new MockProvider(0L, Success, VOOT2), circuitBreaker) {
+      @Override
+      public CompletionStage<List<Group>> getGroupMembershipsAsync(String uid) {
+        return invokeAsync(() -> pending);
+      }
+    };
+    subject.getGroupMembershipsAsync(UID);
+    pending.cancel(true);
+
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+
+  private void assertAsyncFailure(CircuitBreakingProvider provider, Class<? extends Exception> expected) throws Exception {
+    try {
+      provider.getGroupMembershipsAsync(UID).toCompletableFuture().get(1, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals(expected, e.getCause().getClass());
+    }
+  }
+
+  private static Provider failingWith(RuntimeException exception) {
+    return new MockProvider(0L, Success, VOOT2) {
+      @Override
+      public List<Group> getGroupMemberships(String uid) {
+        throw exception;
+      }
+    };
+  }
+
+  private void assertFailure(Provider provider, Class<? extends Exception> expected) {
+    try {
+      provider.getGroupMemberships(UID);
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals(expected, e.getClass());
+    }
+  }
+}
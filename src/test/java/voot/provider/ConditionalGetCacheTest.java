@@ -0,0 +1,69 @@
+package voot.provider;
+
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionalGetCacheTest {
+
+  private final URI one = URI.create("http://localhost/one");
+  private final URI two = URI.create("http://localhost/two");
+
+  @Test
+  public void testConditionsFromValidators() throws Exception {
+    ConditionalGetCache<String> subject = new ConditionalGetCache<>(10);
+    HttpHeaders response = new HttpHeaders();
+    response.setETag("\"v1\"");
+    response.setLastModified(1000000000000L);
+    subject.put(one, response, "body");
+
+    ConditionalGetCache.Entry<String> entry = subject.get(one).get();
+    assertEquals("\"v1\"", entry.conditions().getIfNoneMatch().get(0));
+    assertEquals(1000000000000L, entry.conditions().getIfModifiedSince());
+    assertEquals("body", subject.notModified(entry));
+    assertEquals(1, subject.getNotModified());
+    assertEquals(1, subject.getModified());
+  }
+
+  @Test
+  public void testResponseWithoutValidatorIsNotKept() throws Exception {
+    ConditionalGetCache<String> subject = new ConditionalGetCache<>(10);
+    HttpHeaders response = new HttpHeaders();
+    response.setETag("\"v1\"");
+    subject.put(one, response, "body");
+    subject.put(one, new HttpHeaders(), "changed");
+
+    assertFalse(subject.get(one).isPresent());
+    assertEquals(0, subject.getSize());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedBeyondMaxEntries() throws Exception {
+    ConditionalGetCache<String> subject = new ConditionalGetCache<>(1);
+    HttpHeaders response = new HttpHeaders();
+    response.setLastModified(1000000000000L);
+    subject.put(one, response, "one");
+    subject.put(two, response, "two");
+
+    assertFalse(subject.get(one).isPresent());
+    assertTrue(subject.get(two).isPresent());
+    assertNull(subject.get(two).get().eTag);
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    ConditionalGetCache<String> subject = new ConditionalGetCache<>(0);
+    HttpHeaders response = new HttpHeaders();
+    response.setETag("\"v1\"");
+    subject.put(one, response, "body");
+
+    assertFalse(subject.isEnabled());
+    assertFalse(subject.get(one).isPresent());
+  }
+}
@@ -13,7 +13,10 @@ import voot.valueobject.Group;
 import voot.valueobject.Membership;
 
 import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.*;
@@ -58,6 +61,16 @@ public class GrouperDaoClientTest {
     assertSourceID(groups, PREFIX + "nl:surfnet:diensten:bazenteam", "grouper");
   }
 
+  @Test
+  public void testLastMembershipChanges() throws Exception {
+    Map<String, Long> changes = subject.lastMembershipChanges(Arrays.asList("nl:surfnet:diensten:burr", "nl:surfnet:diensten:managementvo", "nl:surfnet:diensten:nope"));
+    assertEquals(2, changes.size());
+    assertEquals(Long.valueOf(1433848233973L), changes.get("nl:surfnet:diensten:burr"));
+    assertEquals(Long.valueOf(1448452088280L), changes.get("nl:surfnet:diensten:managementvo"));
+
+    assertTrue(subject.lastMembershipChanges(Collections.emptyList()).isEmpty());
+  }
+
   private void assertMembership(List<Group> groups, String groupId, Membership membership) {
     assertEquals(groupId, membership, groups.stream().filter(group -> group.id.equals(groupId)).collect(toList()).get(0).membership);
   }
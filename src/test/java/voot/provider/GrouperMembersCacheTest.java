@@ -0,0 +1,58 @@
+package voot.provider;
+
+import org.junit.Test;
+import voot.valueobject.Member;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GrouperMembersCacheTest {
+
+  private final GrouperMembersCache subject = new GrouperMembersCache(3);
+
+  @Test
+  public void testValidForSameLastMembershipChange() throws Exception {
+    subject.put("team", 1L, members(2));
+
+    assertEquals(2, subject.get("team", 1L).get().size());
+    assertFalse(subject.get("team", 2L).isPresent());
+    assertFalse(subject.get("other", 1L).isPresent());
+    assertEquals(1, subject.getHits());
+    assertEquals(2, subject.getMisses());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedBeyondMaxMembers() throws Exception {
+    subject.put("one", 1L, members(1));
+    subject.put("two", 1L, members(1));
+    subject.get("one", 1L);
+    subject.put("three", 1L, members(2));
+
+    assertTrue(subject.get("one", 1L).isPresent());
+    assertFalse(subject.get("two", 1L).isPresent());
+    assertTrue(subject.get("three", 1L).isPresent());
+    assertEquals(2, subject.getSize());
+  }
+
+  @Test
+  public void testGroupLargerThanMaxMembersNotCached() throws Exception {
+    subject.put("huge", 1L, members(4));
+    assertFalse(subject.get("huge", 1L).isPresent());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    assertFalse(new GrouperMembersCache(0).isEnabled());
+    assertTrue(subject.isEnabled());
+  }
+
+  private List<Member> members(int size) {
+    Member[] members = new Member[size];
+    Arrays.fill(members, new Member("urn:collab:person:example.com:admin", "John Doe", "j.doe@example.com"));
+    return Arrays.asList(members);
+  }
+}
@@ -0,0 +1,46 @@
+package voot.provider;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GrouperNotMemberCacheTest {
+
+  @Test
+  public void testNotMemberUntilTtlExpires() throws Exception {
+    GrouperNotMemberCache subject = new GrouperNotMemberCache(100L, 10);
+    subject.putNotMember("john", "team");
+
+    assertTrue(subject.isNotMember("john", "team"));
+    assertFalse(subject.isNotMember("mary", "team"));
+    assertFalse(subject.isNotMember("john", "other"));
+
+    Thread.sleep(150L);
+    assertFalse(subject.isNotMember("john", "team"));
+    assertEquals(0, subject.getSize());
+    assertEquals(1, subject.getHits());
+    assertEquals(3, subject.getMisses());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedBeyondMaxEntries() throws Exception {
+    GrouperNotMemberCache subject = new GrouperNotMemberCache(60000L, 2);
+    subject.putNotMember("one", "team");
+    subject.putNotMember("two", "team");
+    subject.isNotMember("one", "team");
+    subject.putNotMember("three", "team");
+
+    assertEquals(2, subject.getSize());
+    assertTrue(subject.isNotMember("one", "team"));
+    assertFalse(subject.isNotMember("two", "team"));
+    assertTrue(subject.isNotMember("three", "team"));
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    assertFalse(new GrouperNotMemberCache(0L, 10).isEnabled());
+    assertFalse(new GrouperNotMemberCache(1000L, 0).isEnabled());
+  }
+}
@@ -7,6 +7,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.util.StreamUtils;
+import org.springframework.web.client.HttpServerErrorException;
 import voot.valueobject.Group;
 import voot.valueobject.Member;
 import voot.valueobject.Membership;
@@ -19,7 +20,10 @@ import java.util.List;
 import java.util.Optional;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static java.util.Collections.singleton;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.mockito.Matchers.anyCollection;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -41,11 +45,10 @@ public class GrouperSoapClientTest {
     subject = new GrouperSoapClient(new Provider.Configuration(GroupProviderType.GROUPER, "http://localhost:8889/grouper-ws/services/GrouperService_v2_0", credentials, 2000, "surfnet.nl", "surfnet"), this.dao);
   }
 
-  @Test
+  @Test(expected = RuntimeException.class)
   public void testGrouperError() throws Exception {
     when(dao.groups("urn:collab:person:example.com:admin")).thenThrow(new RuntimeException());
-    List<Group> groups = subject.getGroupMemberships("urn:collab:person:example.com:admin");
-    assertTrue(groups.isEmpty());
+    subject.getGroupMemberships("urn:collab:person:example.com:admin");
   }
 
   @Test
@@ -90,6 +93,29 @@ public class GrouperSoapClientTest {
     assertFalse(optionalGroup.isPresent());
   }
 
+  @Test
+  public void testNonMembershipCached() throws Exception {
+    GrouperSoapClient cachingSubject = new GrouperSoapClient(subject.configuration, dao, 0L, 60000L, 100);
+    stubGrouperCall("soap/HasMemberLite_NotMember_Response.xml", URN_HAS_MEMBER_LITE);
+
+    assertFalse(cachingSubject.getGroupMembership("urn:collab:person:example.com:admin", "urn:collab:group:surfnet.nl:some_group").isPresent());
+    assertFalse(cachingSubject.getGroupMembership("urn:collab:person:example.com:admin", "urn:collab:group:surfnet.nl:some_group").isPresent());
+    verify(1, postRequestedFor(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")));
+
+    assertFalse(cachingSubject.getGroupMembership("urn:collab:person:example.com:john", "urn:collab:group:surfnet.nl:some_group").isPresent());
+    verify(2, postRequestedFor(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")));
+  }
+
+  @Test
+  public void testMembershipNotCached() throws Exception {
+    GrouperSoapClient cachingSubject = new GrouperSoapClient(subject.configuration, dao, 0L, 60000L, 100);
+    stubGrouperCall("soap/HasMemberLite_Member_Response.xml", URN_HAS_MEMBER_LITE);
+
+    assertTrue(cachingSubject.getGroupMembership("urn:collab:person:example.com:admin", "urn:collab:group:surfnet.nl:some_group").isPresent());
+    assertTrue(cachingSubject.getGroupMembership("urn:collab:person:example.com:admin", "urn:collab:group:surfnet.nl:some_group").isPresent());
+    verify(2, postRequestedFor(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")));
+  }
+
   @Test
   public void testGetMembers() throws Exception {
     stubGrouperCall("soap/GetMembersLite_Success_Response.xml", URN_GET_MEMBERS_LITE);
@@ -109,6 +135,33 @@ public class GrouperSoapClientTest {
     assertTrue(members.isEmpty());
   }
 
+  @Test
+  public void testGetMembersFromCacheUntilGroupChanges() throws Exception {
+    String localGroupId = "nl:surfnet:diensten:apachecon";
+    GrouperSoapClient cachingSubject = new GrouperSoapClient(subject.configuration, dao, 1000L, 0L, 0);
+    stubGrouperCall("soap/GetMembersLite_Success_Response.xml", URN_GET_MEMBERS_LITE);
+    when(dao.lastMembershipChanges(singleton(localGroupId))).thenReturn(singletonMap(localGroupId, 1L));
+
+    assertEquals(2, cachingSubject.getMembers("urn:collab:group:surfteams.nl:" + localGroupId).size());
+    assertEquals(2, cachingSubject.getMembers("urn:collab:group:surfteams.nl:" + localGroupId).size());
+    verify(1, postRequestedFor(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")));
+
+    when(dao.lastMembershipChanges(singleton(localGroupId))).thenReturn(singletonMap(localGroupId, 2L));
+    assertEquals(2, cachingSubject.getMembers("urn:collab:group:surfteams.nl:" + localGroupId).size());
+    verify(2, postRequestedFor(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")));
+  }
+
+  @Test
+  public void testGetMembersOfUnknownGroupNotCached() throws Exception {
+    GrouperSoapClient cachingSubject = new GrouperSoapClient(subject.configuration, dao, 1000L, 0L, 0);
+    stubGrouperCall("soap/GetMembersLite_Empty_Response.xml", URN_GET_MEMBERS_LITE);
+    when(dao.lastMembershipChanges(anyCollection())).thenReturn(Collections.emptyMap());
+
+    cachingSubject.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:nope");
+    cachingSubject.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:nope");
+    verify(2, postRequestedFor(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")));
+  }
+
   @Test
   public void testGetAllGroups() throws Exception {
     stubGrouperCall("soap/FindGroupsLite_Success_Response.xml", URN_FIND_GROUPS_LITE);
@@ -123,11 +176,10 @@ public class GrouperSoapClientTest {
     assertNotNull(group.displayName);
   }
 
-  @Test
+  @Test(expected = HttpServerErrorException.class)
   public void testMembersError() throws Exception {
     stubFor(post(urlEqualTo("/grouper-ws/services/GrouperService_v2_0")).withHeader("Content-Type", equalTo("text/xml")).willReturn(aResponse().withStatus(500)));
-    List<Member> members = subject.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon");
-    assertTrue(members.isEmpty());
+    subject.getMembers("urn:collab:group:surfteams.nl:nl:surfnet:diensten:apachecon");
   }
 
   private void stubGrouperCall(String responseFile, String soupAction) throws IOException {
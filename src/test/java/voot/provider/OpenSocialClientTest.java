@@ -1,6 +1,10 @@
 package voot.provider;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
@@ -13,6 +17,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.*;
@@ -26,11 +31,24 @@ public class OpenSocialClientTest {
   private static final String GROUP_URN = "urn:collab:group:surfteams.nl:" + GROUP_ID;
 
   private Configuration configuration = new Configuration(GroupProviderType.OPEN_SOCIAL, "http://localhost:8889", new Configuration.Credentials("user", "password"), 2000, "example.org", "Example");
+  private static CloseableHttpAsyncClient httpAsyncClient;
   private OpenSocialClient subject = new OpenSocialClient(configuration);
+  private OpenSocialClient asyncSubject = new OpenSocialClient(configuration, httpAsyncClient);
 
   @Rule
   public WireMockRule wireMockRule = new WireMockRule(8889);
 
+  @BeforeClass
+  public static void startHttpAsyncClient() {
+    httpAsyncClient = HttpAsyncClients.createDefault();
+    httpAsyncClient.start();
+  }
+
+  @AfterClass
+  public static void closeHttpAsyncClient() throws IOException {
+    httpAsyncClient.close();
+  }
+
   @Test
   public void testGetMemberships() throws Exception {
     stubCall("groups/" + UID, "json/opensocial/open_social_groups.json");
@@ -80,6 +98,23 @@ public class OpenSocialClientTest {
     assertFalse(group.isPresent());
   }
 
+  @Test
+  public void testGetMembershipsAsync() throws Exception {
+    stubCall("groups/" + UID, "json/opensocial/open_social_groups.json");
+    final List<Group> memberships = asyncSubject.getGroupMembershipsAsync(USER_URN).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+    assertGroups(memberships);
+  }
+
+  @Test
+  public void testGetSingleMembershipAsync() throws Exception {
+    stubCall("groups/" + UID + "/" + GROUP_ID, "json/opensocial/open_social_groups_single.json");
+    Optional<Group> group = asyncSubject.getGroupMembershipAsync(admin, GROUP_URN).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+    assertTrue(group.isPresent());
+    assertAdminGroup(group.get());
+  }
+
   private void assertGroups(List<Group> memberships) {
     assertEquals(2, memberships.size());
 
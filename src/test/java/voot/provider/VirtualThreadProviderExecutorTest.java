@@ -0,0 +1,31 @@
+package voot.provider;
+
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadProviderExecutorTest {
+
+  @Test
+  public void testAvailableOnlyWhenSupportedByTheJvm() throws Exception {
+    Optional<ProviderExecutor> executor = VirtualThreadProviderExecutor.create();
+    assertEquals(supportsVirtualThreads(), executor.isPresent());
+
+    if (executor.isPresent()) {
+      CountDownLatch latch = new CountDownLatch(1);
+      executor.get().execute(latch::countDown);
+      assertTrue(latch.await(1, TimeUnit.SECONDS));
+      executor.get().shutdown();
+    }
+  }
+
+  private boolean supportsVirtualThreads() {
+    String version = System.getProperty("java.specification.version");
+    return !version.startsWith("1.") && Integer.parseInt(version) >= 21;
+  }
+}
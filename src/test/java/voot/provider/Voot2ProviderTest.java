@@ -1,6 +1,11 @@
 package voot.provider;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.core.io.ClassPathResource;
@@ -12,11 +17,16 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class Voot2ProviderTest {
 
@@ -28,11 +38,26 @@ public class Voot2ProviderTest {
   private Configuration configuration = new Configuration(GroupProviderType.VOOT2, "http://localhost:8889",
     new Configuration.Credentials("user", "password"), 2000, "example.org", "example");
 
+  private static CloseableHttpAsyncClient httpAsyncClient;
+
   private Voot2Provider subject = new Voot2Provider(configuration);
 
+  private Voot2Provider asyncSubject = new Voot2Provider(configuration, httpAsyncClient);
+
   @Rule
   public WireMockRule wireMockRule = new WireMockRule(8889);
 
+  @BeforeClass
+  public static void startHttpAsyncClient() {
+    httpAsyncClient = HttpAsyncClients.custom().setDefaultIOReactorConfig(IOReactorConfig.custom().setSelectInterval(100).build()).build();
+    httpAsyncClient.start();
+  }
+
+  @AfterClass
+  public static void closeHttpAsyncClient() throws IOException {
+    httpAsyncClient.close();
+  }
+
   @Test
   public void testShouldBeQueriedForMemberships() throws Exception {
     assertTrue(subject.shouldBeQueriedForMemberships("example.org"));
@@ -93,6 +118,124 @@ public class Voot2ProviderTest {
     assertTrue(group.isPresent());
   }
 
+  @Test
+  public void testIsNonBlocking() {
+    assertFalse(subject.isNonBlocking());
+    assertTrue(asyncSubject.isNonBlocking());
+  }
+
+  @Test
+  public void testGetMembershipsAsync() throws Exception {
+    stubCall("user/" + UID + "/groups", "json/voot2/voot2_groups.json");
+    List<Group> groups = asyncSubject.getGroupMembershipsAsync(USER_URN).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertTrue(groups.size() > 0);
+
+    verify(getRequestedFor(urlEqualTo("/user/" + UID + "/groups")).withHeader("Authorization", equalTo("Basic dXNlcjpwYXNzd29yZA==")));
+  }
+
+  @Test
+  public void testGetSpecificMembershipAsync() throws Exception {
+    stubCall("user/" + UID + "/groups/" + GROUP_ID, "json/voot2/voot2_group.json");
+    Optional<Group> group = asyncSubject.getGroupMembershipAsync(USER_URN, GROUP_URN).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+    assertTrue(group.isPresent());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetGroupMembershipsAsyncInvalidUid() {
+    asyncSubject.getGroupMembershipsAsync("bogus");
+  }
+
+  @Test
+  public void testGetMembershipsAsyncTimeoutCappedByCallContext() throws Exception {
+    stubFor(get(urlEqualTo("/user/" + UID + "/groups")).willReturn(aResponse().withStatus(200).withFixedDelay(1500).withBody("[]")));
+
+    long start = System.currentTimeMillis();
+    try {
+      new CallContext(200).call(() -> asyncSubject.getGroupMembershipsAsync(USER_URN)).toCompletableFuture().get(2, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+  }
+
+  @Test
+  public void testCancelAbortsRequest() throws Exception {
+    stubFor(get(urlEqualTo("/user/" + UID + "/groups")).willReturn(aResponse().withStatus(200).withFixedDelay(1500).withBody("[]")));
+    CallContext callContext = new CallContext(5000);
+
+    long start = System.currentTimeMillis();
+    CompletableFuture<List<Group>> future = CompletableFuture.supplyAsync(() -> callContext.call(() -> subject.getGroupMemberships(USER_URN)));
+    Thread.sleep(200);
+    callContext.cancel();
+    try {
+      future.get(2, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+  }
+
+  @Test
+  public void testCancelAbortsAsyncRequest() throws Exception {
+    stubFor(get(urlEqualTo("/user/" + UID + "/groups")).willReturn(aResponse().withStatus(200).withFixedDelay(1500).withBody("[]")));
+    CallContext callContext = new CallContext(5000);
+
+    CompletableFuture<List<Group>> future = callContext.call(() -> asyncSubject.getGroupMembershipsAsync(USER_URN)).toCompletableFuture();
+    callContext.cancel();
+
+    assertTrue(future.isCompletedExceptionally());
+  }
+
+  @Test
+  public void testNotModifiedReusesParsedGroups() throws Exception {
+    Voot2Provider conditionalSubject = new Voot2Provider(configuration, null, 10);
+    stubConditionalCall("user/" + UID + "/groups", "json/voot2/voot2_groups.json");
+
+    List<Group> groups = conditionalSubject.getGroupMemberships(USER_URN);
+    assertSame(groups, conditionalSubject.getGroupMemberships(USER_URN));
+
+    verify(1, getRequestedFor(urlEqualTo("/user/" + UID + "/groups")).withHeader("If-None-Match", equalTo("\"v1\"")));
+    assertEquals(1L, metric(conditionalSubject, "notModified"));
+    assertEquals(1L, metric(conditionalSubject, "modified"));
+  }
+
+  @Test
+  public void testNotModifiedReusesParsedGroupsAsync() throws Exception {
+    Voot2Provider conditionalSubject = new Voot2Provider(configuration, httpAsyncClient, 10);
+    stubConditionalCall("user/" + UID + "/groups/" + GROUP_ID, "json/voot2/voot2_group.json");
+
+    Optional<Group> group = conditionalSubject.getGroupMembershipAsync(USER_URN, GROUP_URN).toCompletableFuture().get(1, TimeUnit.SECONDS);
+    assertTrue(group.isPresent());
+    assertSame(group, conditionalSubject.getGroupMembershipAsync(USER_URN, GROUP_URN).toCompletableFuture().get(1, TimeUnit.SECONDS));
+
+    verify(2, getRequestedFor(urlEqualTo("/user/" + UID + "/groups/" + GROUP_ID)).withHeader("Authorization", equalTo("Basic dXNlcjpwYXNzd29yZA==")));
+  }
+
+  @Test
+  public void testNoConditionalRequestsByDefault() throws Exception {
+    stubConditionalCall("user/" + UID + "/groups", "json/voot2/voot2_groups.json");
+
+    assertTrue(subject.getGroupMemberships(USER_URN).size() > 0);
+    assertTrue(subject.getGroupMemberships(USER_URN).size() > 0);
+
+    verify(0, getRequestedFor(urlEqualTo("/user/" + UID + "/groups")).withHeader("If-None-Match", matching(".*")));
+  }
+
+  private long metric(Voot2Provider provider, String name) {
+    return provider.metrics().stream()
+      .filter(metric -> metric.getName().equals("providers.example.conditionalCache." + name))
+      .findFirst().get().getValue().longValue();
+  }
+
+  private void stubConditionalCall(String queryPart, String responseFile) throws IOException {
+    String response = StreamUtils.copyToString(new ClassPathResource(responseFile).getInputStream(), Charset.forName("UTF-8"));
+    stubFor(get(urlEqualTo("/" + queryPart)).atPriority(2)
+      .willReturn(aResponse().withStatus(200).withHeader("Content-Type", "application/json").withHeader("ETag", "\"v1\"").withBody(response)));
+    stubFor(get(urlEqualTo("/" + queryPart)).atPriority(1).withHeader("If-None-Match", equalTo("\"v1\""))
+      .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"v1\"")));
+  }
+
   private void stubCall(String queryPart, String responseFile) throws IOException {
     String response = StreamUtils.copyToString(new ClassPathResource(responseFile).getInputStream(), Charset.forName("UTF-8"));
     stubFor(get(urlEqualTo("/" + queryPart)).willReturn(aResponse().withStatus(200).withHeader("Content-Type", "application/json").withBody(response)));
@@ -0,0 +1,44 @@
+package voot.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiringSetTest {
+
+  @Test
+  public void testExpires() throws InterruptedException {
+    ExpiringSet<String> subject = new ExpiringSet<>(10, 50L);
+    subject.add("a");
+    assertTrue(subject.contains("a"));
+
+    Thread.sleep(100L);
+
+    assertFalse(subject.contains("a"));
+    assertEquals(0, subject.size());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    ExpiringSet<String> subject = new ExpiringSet<>(2, 60000L);
+    subject.add("a");
+    subject.add("b");
+    subject.contains("a");
+    subject.add("c");
+
+    assertTrue(subject.contains("a"));
+    assertFalse(subject.contains("b"));
+    assertTrue(subject.contains("c"));
+  }
+
+  @Test
+  public void testZeroTtlKeepsNothing() {
+    ExpiringSet<String> subject = new ExpiringSet<>(10, 0L);
+    subject.add("a");
+
+    assertFalse(subject.contains("a"));
+    assertEquals(0, subject.size());
+  }
+}
@@ -0,0 +1,93 @@
+package voot.util;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+  private final SingleFlight<String, Integer> subject = new SingleFlight<>();
+
+  @Test
+  public void testConcurrentCallsAreCoalesced() throws Exception {
+    AtomicInteger invocations = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+
+    CompletableFuture<Integer> leader = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> {
+      await(release);
+      return invocations.incrementAndGet();
+    }));
+    while (subject.getInFlight() == 0) {
+      Thread.sleep(5);
+    }
+    List<CompletableFuture<Integer>> followers = IntStream.range(0, 5)
+      .mapToObj(i -> CompletableFuture.supplyAsync(() -> subject.execute("key", invocations::incrementAndGet)))
+      .collect(toList());
+    while (subject.getCalls() < 6) {
+      Thread.sleep(5);
+    }
+    release.countDown();
+
+    assertEquals(1, leader.get(1, TimeUnit.SECONDS).intValue());
+    for (CompletableFuture<Integer> follower : followers) {
+      assertEquals(1, follower.get(1, TimeUnit.SECONDS).intValue());
+    }
+    assertEquals(1, invocations.get());
+    assertEquals(5L, subject.getCoalesced());
+    assertEquals(0, subject.getInFlight());
+  }
+
+  @Test
+  public void testCompletedCallsAreNotRemembered() {
+    AtomicInteger invocations = new AtomicInteger();
+    subject.execute("key", invocations::incrementAndGet);
+    subject.execute("key", invocations::incrementAndGet);
+
+    assertEquals(2, invocations.get());
+    assertEquals(0L, subject.getCoalesced());
+  }
+
+  @Test
+  public void testFailureIsSharedAndNotRemembered() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<Integer> leader = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> {
+      await(release);
+      throw new IllegalStateException("failed");
+    }));
+    while (subject.getInFlight() == 0) {
+      Thread.sleep(5);
+    }
+    CompletableFuture<Integer> follower = CompletableFuture.supplyAsync(() -> subject.execute("key", () -> 1));
+    while (subject.getCalls() < 2) {
+      Thread.sleep(5);
+    }
+    release.countDown();
+
+    try {
+      follower.get(1, TimeUnit.SECONDS);
+      fail();
+    } catch (Exception e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    assertTrue(leader.handle((result, failure) -> failure).get(1, TimeUnit.SECONDS) != null);
+    assertEquals(2, subject.execute("key", () -> 2).intValue());
+  }
+
+  private void await(CountDownLatch latch) {
+    try {
+      latch.await(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}